@@ -0,0 +1,84 @@
+package com.sky.benchmark;
+
+import com.sky.aspect.AutoFillAspect;
+import com.sky.context.BaseContext;
+import com.sky.entity.Dish;
+import com.sky.mapper.DishMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 公共字段自动填充切面的开销，reflection*是改造前每次反射的写法
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AutoFillBenchmark {
+
+    private AutoFillAspect aspect;
+    private Dish dish;
+    private StubJoinPoint insertJoinPoint;
+    private StubJoinPoint updateJoinPoint;
+    private StubJoinPoint batchJoinPoint;
+
+    @Setup
+    public void setup() throws Exception {
+        aspect = new AutoFillAspect();
+        dish = BenchmarkData.dish(1);
+        insertJoinPoint = new StubJoinPoint(DishMapper.class.getMethod("insert", Dish.class), dish);
+        updateJoinPoint = new StubJoinPoint(DishMapper.class.getMethod("update", Dish.class), dish);
+        //批量参数：10个实体的集合
+        List<Dish> dishes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            dishes.add(BenchmarkData.dish(i));
+        }
+        batchJoinPoint = new StubJoinPoint(DishMapper.class.getMethod("insert", Dish.class), dishes);
+        BaseContext.setCurrentId(1L);
+    }
+
+    @Benchmark
+    public Dish insert() {
+        aspect.autoFill(insertJoinPoint);
+        return dish;
+    }
+
+    @Benchmark
+    public Dish update() {
+        aspect.autoFill(updateJoinPoint);
+        return dish;
+    }
+
+    @Benchmark
+    public Object batchInsert() {
+        aspect.autoFill(batchJoinPoint);
+        return batchJoinPoint;
+    }
+
+    @Benchmark
+    public Dish reflectionInsert() throws Exception {
+        ReflectionAutoFill.fillInsert(dish, LocalDateTime.now(), BaseContext.getCurrentId());
+        return dish;
+    }
+
+    @Benchmark
+    public Dish reflectionUpdate() throws Exception {
+        ReflectionAutoFill.fillUpdate(dish, LocalDateTime.now(), BaseContext.getCurrentId());
+        return dish;
+    }
+}
@@ -0,0 +1,57 @@
+package com.sky.benchmark;
+
+import com.sky.entity.Dish;
+import com.sky.vo.DishVO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.BeanUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * service层大量使用的BeanUtils.copyProperties，和手写赋值对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BeanCopyBenchmark {
+
+    private Dish dish;
+
+    @Setup
+    public void setup() {
+        dish = BenchmarkData.dish(1);
+    }
+
+    @Benchmark
+    public DishVO beanUtils() {
+        DishVO dishVO = new DishVO();
+        BeanUtils.copyProperties(dish, dishVO);
+        return dishVO;
+    }
+
+    @Benchmark
+    public DishVO manual() {
+        DishVO dishVO = new DishVO();
+        dishVO.setId(dish.getId());
+        dishVO.setName(dish.getName());
+        dishVO.setCategoryId(dish.getCategoryId());
+        dishVO.setPrice(dish.getPrice());
+        dishVO.setImage(dish.getImage());
+        dishVO.setDescription(dish.getDescription());
+        dishVO.setStatus(dish.getStatus());
+        dishVO.setUpdateTime(dish.getUpdateTime());
+        return dishVO;
+    }
+}
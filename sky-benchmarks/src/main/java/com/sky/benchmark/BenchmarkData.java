@@ -0,0 +1,81 @@
+package com.sky.benchmark;
+
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.entity.SetmealDish;
+import com.sky.vo.DishVO;
+import com.sky.vo.SetmealVO;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 基准测试用的数据，尽量接近线上一个分类下的菜品和套餐
+ */
+public class BenchmarkData {
+
+    public static Dish dish(long id) {
+        return Dish.builder()
+                .id(id)
+                .name("招牌水煮鱼" + id)
+                .categoryId(11L)
+                .price(new BigDecimal("58.00"))
+                .image("https://cangqiongwaimaipbj.oss-cn-shenzhen.aliyuncs.com/dish/" + id + ".png")
+                .description("鲜嫩草鱼片，麻辣鲜香")
+                .status(1)
+                .createTime(LocalDateTime.now())
+                .updateTime(LocalDateTime.now())
+                .createUser(1L)
+                .updateUser(1L)
+                .build();
+    }
+
+    public static List<DishVO> dishVOList(int size) {
+        List<DishVO> list = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            Dish dish = dish(id);
+            list.add(DishVO.builder()
+                    .id(dish.getId())
+                    .name(dish.getName())
+                    .categoryId(dish.getCategoryId())
+                    .price(dish.getPrice())
+                    .image(dish.getImage())
+                    .description(dish.getDescription())
+                    .status(dish.getStatus())
+                    .updateTime(dish.getUpdateTime())
+                    .categoryName("特色蒸菜")
+                    .flavors(new ArrayList<>(Arrays.asList(
+                            DishFlavor.builder().id(id * 2).dishId(id).name("辣度").value("[\"不辣\",\"微辣\",\"中辣\",\"重辣\"]").build(),
+                            DishFlavor.builder().id(id * 2 + 1).dishId(id).name("忌口").value("[\"不要葱\",\"不要蒜\",\"不要香菜\",\"不要辣\"]").build())))
+                    .build());
+        }
+        return list;
+    }
+
+    public static List<SetmealVO> setmealVOList(int size) {
+        List<SetmealVO> list = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            List<SetmealDish> setmealDishes = new ArrayList<>();
+            for (long d = 1; d <= 4; d++) {
+                setmealDishes.add(SetmealDish.builder().id(id * 10 + d).setmealId(id).dishId(d)
+                        .name("招牌水煮鱼" + d).price(new BigDecimal("58.00")).copies(1).build());
+            }
+            list.add(SetmealVO.builder()
+                    .id(id)
+                    .categoryId(13L)
+                    .name("商务套餐" + id)
+                    .price(new BigDecimal("128.00"))
+                    .status(1)
+                    .description("四菜一汤")
+                    .image("https://cangqiongwaimaipbj.oss-cn-shenzhen.aliyuncs.com/setmeal/" + id + ".png")
+                    .updateTime(LocalDateTime.now())
+                    .categoryName("商务套餐")
+                    .setmealDishes(setmealDishes)
+                    .build());
+        }
+        return list;
+    }
+}
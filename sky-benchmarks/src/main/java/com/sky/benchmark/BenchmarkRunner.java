@@ -0,0 +1,44 @@
+package com.sky.benchmark;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * 运行基准测试，结果以json格式写到benchmarks.jar所在目录(即target目录)，方便前后对比
+ * 用法：java -jar sky-benchmarks/target/benchmarks.jar [jmh参数]，例如只跑序列化：java -jar sky-benchmarks/target/benchmarks.jar RedisSerializer
+ * 在哪个目录下运行都可以；需要写到别处时用jmh的 -rff 文件名 指定
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(commandLineOptions)
+                .resultFormat(ResultFormatType.JSON);
+        String resultFile;
+        if (commandLineOptions.getResult().hasValue()) {
+            resultFile = commandLineOptions.getResult().get();
+        } else {
+            resultFile = new File(jarDirectory(),
+                    "jmh-result-" + new SimpleDateFormat("yyyyMMddHHmmss").format(new Date()) + ".json").getPath();
+            builder.result(resultFile);
+        }
+        new Runner(builder.build()).run();
+        System.out.println("结果已写入 " + resultFile);
+    }
+
+    /**
+     * benchmarks.jar所在的目录；在IDE里直接运行时类在target/classes下，同样得到target目录
+     */
+    private static File jarDirectory() throws Exception {
+        File location = new File(BenchmarkRunner.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        return location.getParentFile();
+    }
+}
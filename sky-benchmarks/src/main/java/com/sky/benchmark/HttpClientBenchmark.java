@@ -0,0 +1,104 @@
+package com.sky.benchmark;
+
+import com.sky.utils.HttpClientUtil;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地桩服务器模拟微信jscode2session接口，8个线程并发请求
+ * perRequestClient是改造前的做法：每次请求新建客户端、建立连接、用完关闭；pooled共用连接池、复用长连接
+ * async是一个线程同时发出一批异步请求，等全部返回的平均每个请求耗时
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+@Threads(8)
+@State(Scope.Benchmark)
+public class HttpClientBenchmark {
+
+    private static final byte[] BODY = "{\"session_key\":\"k\",\"openid\":\"o6_bmjrPTlm6_2sgVt7hMZOPfL2M\"}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final int ASYNC_BATCH = 16;
+
+    private HttpServer server;
+    private ExecutorService serverExecutor;
+    private String url;
+    private Map<String, String> params;
+
+    @Setup
+    public void setup() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        serverExecutor = Executors.newFixedThreadPool(16);
+        server.setExecutor(serverExecutor);
+        server.createContext("/sns/jscode2session", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(BODY);
+            }
+        });
+        server.start();
+        url = "http://127.0.0.1:" + server.getAddress().getPort() + "/sns/jscode2session";
+        params = Collections.singletonMap("js_code", "code");
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public String perRequestClient() throws IOException {
+        try (CloseableHttpClient httpClient = HttpClients.createDefault();
+             CloseableHttpResponse response = httpClient.execute(new HttpGet(url + "?js_code=code"))) {
+            return EntityUtils.toString(response.getEntity(), "UTF-8");
+        }
+    }
+
+    @Benchmark
+    public String pooled() {
+        return HttpClientUtil.doGet(url, params);
+    }
+
+    @Benchmark
+    @Threads(1)
+    @OperationsPerInvocation(ASYNC_BATCH)
+    public Object async() {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[ASYNC_BATCH];
+        for (int i = 0; i < ASYNC_BATCH; i++) {
+            futures[i] = HttpClientUtil.doGetAsync(url, params);
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
@@ -0,0 +1,58 @@
+package com.sky.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sky.json.JacksonObjectMapper;
+import com.sky.result.PageResult;
+import com.sky.result.Result;
+import com.sky.vo.DishVO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口响应的json序列化
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JacksonBenchmark {
+
+    @Param({"10", "40"})
+    private int size;
+
+    private ObjectMapper objectMapper;
+    private Result<List<DishVO>> dishListResult;
+    private Result<PageResult> pageResult;
+
+    @Setup
+    public void setup() {
+        objectMapper = new JacksonObjectMapper();
+        List<DishVO> dishVOList = BenchmarkData.dishVOList(size);
+        dishListResult = Result.success(dishVOList);
+        pageResult = Result.success(new PageResult(1000, dishVOList));
+    }
+
+    @Benchmark
+    public byte[] dishList() throws Exception {
+        return objectMapper.writeValueAsBytes(dishListResult);
+    }
+
+    @Benchmark
+    public byte[] page() throws Exception {
+        return objectMapper.writeValueAsBytes(pageResult);
+    }
+}
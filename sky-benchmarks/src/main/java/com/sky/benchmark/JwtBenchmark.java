@@ -0,0 +1,64 @@
+package com.sky.benchmark;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.interceptor.JwtTokenVerifier;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 拦截器每次请求都要做的jwt校验
+ * parseJWT每次新建解析器；prebuiltParser复用解析器；cachedVerify是拦截器现在的写法，同一令牌命中缓存
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtBenchmark {
+
+    private static final String SECRET_KEY = "itheima";
+
+    private String token;
+    private JwtParser parser;
+    private JwtTokenVerifier verifier;
+
+    @Setup
+    public void setup() {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtClaimsConstant.USER_ID, 10086L);
+        token = JwtUtil.createJWT(SECRET_KEY, 7200000L, claims);
+        parser = JwtUtil.parser(SECRET_KEY);
+        verifier = new JwtTokenVerifier(SECRET_KEY, JwtClaimsConstant.USER_ID, 10000);
+    }
+
+    @Benchmark
+    public Claims parseJWT() {
+        return JwtUtil.parseJWT(SECRET_KEY, token);
+    }
+
+    @Benchmark
+    public Claims prebuiltParser() {
+        return JwtUtil.parseJWT(parser, token);
+    }
+
+    @Benchmark
+    public Long cachedVerify() {
+        return verifier.verify(token);
+    }
+}
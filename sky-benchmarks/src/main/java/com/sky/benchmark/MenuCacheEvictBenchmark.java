@@ -0,0 +1,112 @@
+package com.sky.benchmark;
+
+import com.sky.cache.CacheValueSerializer;
+import com.sky.cache.MenuCache;
+import com.sky.constant.CacheConstant;
+import com.sky.properties.MenuCacheProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 菜单缓存按前缀清理：按索引set删除 vs 改造前的KEYS扫描后删除
+ * 本地redis里先灌入keyspace个无关的key，每次清理前重新写入categories个分类缓存
+ * 索引清理的耗时只和分类数有关，KEYS随整个库的key数量线性增长
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MenuCacheEvictBenchmark {
+
+    @Param({"10000", "1000000", "3000000"})
+    private int keyspace;
+
+    @Param({"20"})
+    private int categories;
+
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate stringRedisTemplate;
+    private RedisTemplate redisTemplate;
+    private MenuCache menuCache;
+
+    @Setup
+    public void setup() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = RedisServer.builder().port(port).setting("bind 127.0.0.1").setting("save \"\"").build();
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024));
+        redisTemplate.afterPropertiesSet();
+        menuCache = new MenuCache(redisTemplate, new MenuCacheProperties());
+
+        //DEBUG POPULATE在服务端直接生成key:0..key:n-1
+        stringRedisTemplate.execute((RedisCallback<Object>) connection -> connection.execute("DEBUG",
+                "POPULATE".getBytes(StandardCharsets.UTF_8),
+                String.valueOf(keyspace).getBytes(StandardCharsets.UTF_8)));
+        System.out.println("dbsize=" + stringRedisTemplate.execute((RedisCallback<Long>) connection -> connection.dbSize()));
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    /**
+     * 和MenuCache.get回填时一样写入值并记到索引里
+     */
+    @Setup(Level.Invocation)
+    public void fillCategories() {
+        for (int i = 0; i < categories; i++) {
+            String key = CacheConstant.DISH_KEY_PREFIX + i;
+            stringRedisTemplate.opsForValue().set(key, "[]");
+            stringRedisTemplate.opsForSet().add(CacheConstant.KEY_INDEX_PREFIX + CacheConstant.DISH_KEY_PREFIX, key);
+        }
+    }
+
+    @Benchmark
+    public void indexEvict() {
+        menuCache.evictAll(CacheConstant.DISH_KEY_PREFIX);
+    }
+
+    @Benchmark
+    public Long keysEvict() {
+        Set<String> keys = stringRedisTemplate.keys(CacheConstant.DISH_KEY_PREFIX + "*");
+        return stringRedisTemplate.delete(keys);
+    }
+}
@@ -0,0 +1,92 @@
+package com.sky.benchmark;
+
+import com.sky.websocket.OrderPushSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 新订单提醒扇出：一条消息推给当前节点的所有管理端连接，从广播开始到最后一个连接发送完成的耗时
+ * 连接是只计数的桩，测的是入队、调度和发送线程池的开销，不含网络
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderPushBenchmark {
+
+    @Param({"5000"})
+    private int sessions;
+
+    @Param({"4"})
+    private int senderThreads;
+
+    private final AtomicLong delivered = new AtomicLong();
+    private ExecutorService sender;
+    private List<OrderPushSession> pushSessions;
+    private long expected;
+
+    @Setup
+    public void setup() {
+        sender = Executors.newFixedThreadPool(senderThreads);
+        pushSessions = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            pushSessions.add(new OrderPushSession(stubSession(String.valueOf(i)), sender, 64, 5000));
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        sender.shutdownNow();
+    }
+
+    @Benchmark
+    public long fanOut() {
+        expected += sessions;
+        for (OrderPushSession pushSession : pushSessions) {
+            pushSession.offer("{\"type\":1,\"orderId\":1,\"content\":\"订单号：1\"}");
+        }
+        while (delivered.get() < expected) {
+            LockSupport.parkNanos(1000);
+        }
+        return expected;
+    }
+
+    private WebSocketSession stubSession(String id) {
+        return (WebSocketSession) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{WebSocketSession.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getId":
+                            return id;
+                        case "sendMessage":
+                            delivered.incrementAndGet();
+                            return null;
+                        case "isOpen":
+                            return true;
+                        default:
+                            return null;
+                    }
+                });
+    }
+}
@@ -0,0 +1,283 @@
+package com.sky.benchmark;
+
+import com.sky.cache.CacheValueSerializer;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.order.AsyncOrderSubmitter;
+import com.sky.order.OrderDraft;
+import com.sky.order.OrderStatusCounter;
+import com.sky.order.OrderTimeoutScheduler;
+import com.sky.properties.OrderSubmitProperties;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.service.ShoppingCartService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 同步下单 vs 异步批量下单：requestThreads个请求线程同时提交orders个订单，到全部写库成功的耗时
+ * 数据库是桩：连接池poolSize个连接，每条sql耗时statementMicros，每次提交耗时commitMicros，
+ * 同步下单每单占一个连接做两条sql加一次提交，异步下单由写库线程一个事务写一批
+ * redis用本地的embedded redis，下单结果、状态计数、超时注册和线上一样都会写redis
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OrderSubmitBenchmark {
+
+    @Param({"2000"})
+    private int orders;
+
+    @Param({"64"})
+    private int requestThreads;
+
+    @Param({"10"})
+    private int poolSize;
+
+    @Param({"300"})
+    private long statementMicros;
+
+    @Param({"1500"})
+    private long commitMicros;
+
+    @Param({"2", "8"})
+    private int writerThreads;
+
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private ExecutorService requestPool;
+    private TransactionTemplate transactionTemplate;
+    private OrderMapper orderMapper;
+    private OrderDetailMapper orderDetailMapper;
+    private ShoppingCartService shoppingCartService;
+    private DailyStatsRecorder dailyStatsRecorder;
+    private OrderStatusCounter orderStatusCounter;
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    private AsyncOrderSubmitter asyncOrderSubmitter;
+    private List<OrderDraft> drafts;
+
+    @Setup
+    public void setup() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = RedisServer.builder().port(port).setting("bind 127.0.0.1").setting("save \"\"").build();
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+        RedisTemplate redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory);
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024));
+        redisTemplate.afterPropertiesSet();
+
+        transactionTemplate = new TransactionTemplate(new StubTransactionManager(new Semaphore(poolSize), commitMicros));
+        orderMapper = stub(OrderMapper.class, "insert", args -> {
+            sleepMicros(statementMicros);
+            ((Orders) args[0]).setId(ids.incrementAndGet());
+        });
+        orderDetailMapper = stub(OrderDetailMapper.class, "insertBatch", args -> sleepMicros(statementMicros));
+        shoppingCartService = stub(ShoppingCartService.class, "completeCheckout", args -> written.incrementAndGet());
+        dailyStatsRecorder = new DailyStatsRecorder(stub(DailyStatsMapper.class, "", args -> { }));
+        orderStatusCounter = new OrderStatusCounter(stringRedisTemplate, orderMapper);
+        orderTimeoutScheduler = new OrderTimeoutScheduler(stringRedisTemplate, null, new OrderTimeoutProperties());
+
+        OrderSubmitProperties orderSubmitProperties = new OrderSubmitProperties();
+        orderSubmitProperties.setQueueCapacity(orders);
+        orderSubmitProperties.setWriterThreads(writerThreads);
+        asyncOrderSubmitter = new AsyncOrderSubmitter(orderMapper, orderDetailMapper, shoppingCartService,
+                transactionTemplate, redisTemplate, orderSubmitProperties, dailyStatsRecorder, orderStatusCounter,
+                orderTimeoutScheduler);
+        asyncOrderSubmitter.start();
+        requestPool = Executors.newFixedThreadPool(requestThreads);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        requestPool.shutdownNow();
+        asyncOrderSubmitter.stop();
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Setup(Level.Invocation)
+    public void prepareDrafts() {
+        drafts = new ArrayList<>(orders);
+        for (int i = 0; i < orders; i++) {
+            drafts.add(draft(i));
+        }
+        written.set(0);
+    }
+
+    /**
+     * 改造前的submitOrder：请求线程在一个事务里插入订单和明细，提交后清购物车等
+     */
+    @Benchmark
+    public long syncSubmit() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(orders);
+        for (OrderDraft orderDraft : drafts) {
+            futures.add(requestPool.submit(() -> {
+                Orders order = orderDraft.getOrders();
+                transactionTemplate.executeWithoutResult(status -> {
+                    orderMapper.insert(order);
+                    orderDraft.getOrderDetailList().forEach(orderDetail -> orderDetail.setOrderId(order.getId()));
+                    orderDetailMapper.insertBatch(orderDraft.getOrderDetailList());
+                });
+                shoppingCartService.completeCheckout(order.getUserId(), order.getNumber());
+                dailyStatsRecorder.orderCreated(order.getOrderTime());
+                orderStatusCounter.created(order.getStatus());
+                orderTimeoutScheduler.registerPayTimeout(order);
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        return written.get();
+    }
+
+    /**
+     * 异步下单：请求线程入队后立即返回，等写库线程把这批订单全部写完
+     */
+    @Benchmark
+    public long asyncSubmit() throws Exception {
+        List<Future<?>> futures = new ArrayList<>(orders);
+        for (OrderDraft orderDraft : drafts) {
+            futures.add(requestPool.submit(() -> {
+                //队列满时和前端一样稍后重试
+                while (!asyncOrderSubmitter.submit(orderDraft)) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        while (written.get() < orders) {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        return written.get();
+    }
+
+    private OrderDraft draft(int i) {
+        Orders order = Orders.builder()
+                .number("B" + System.nanoTime() + i)
+                .userId((long) (i % 500))
+                .addressBookId(1L)
+                .status(Orders.PENDING_PAYMENT)
+                .payStatus(Orders.UN_PAID)
+                .orderTime(LocalDateTime.now())
+                .amount(new BigDecimal("128.00"))
+                .build();
+        List<OrderDetail> orderDetailList = new ArrayList<>();
+        for (long dishId = 1; dishId <= 3; dishId++) {
+            orderDetailList.add(OrderDetail.builder().dishId(dishId).name("招牌水煮鱼" + dishId)
+                    .number(1).amount(new BigDecimal("42.00")).build());
+        }
+        return new OrderDraft(order, orderDetailList);
+    }
+
+    private static void sleepMicros(long micros) {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+
+    private interface Call {
+        void run(Object[] args);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, String methodName, Call call) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getName().equals(methodName)) {
+                call.run(args);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 事务开始时占用一个连接，提交耗时commitMicros，结束后归还
+     */
+    private static class StubTransactionManager extends AbstractPlatformTransactionManager {
+
+        private final Semaphore connections;
+        private final long commitMicros;
+
+        StubTransactionManager(Semaphore connections, long commitMicros) {
+            this.connections = connections;
+            this.commitMicros = commitMicros;
+        }
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+            connections.acquireUninterruptibly();
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            sleepMicros(commitMicros);
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doCleanupAfterCompletion(Object transaction) {
+            connections.release();
+        }
+    }
+}
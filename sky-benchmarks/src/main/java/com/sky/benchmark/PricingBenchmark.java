@@ -0,0 +1,101 @@
+package com.sky.benchmark;
+
+import com.sky.entity.Dish;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.order.PriceIndex;
+import com.sky.order.PricingEngine;
+import com.sky.properties.PricingProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 下单时服务端重新计价的开销，价格从内存索引读取
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PricingBenchmark {
+
+    private static final int MENU_SIZE = 200;
+
+    @Param({"1", "10", "50"})
+    private int items;
+
+    private PricingEngine pricingEngine;
+    private List<OrderDetail> orderDetailList;
+    private BigDecimal amount;
+    private int packAmount;
+
+    @Setup
+    public void setup() {
+        List<Dish> dishes = new ArrayList<>();
+        List<Setmeal> setmeals = new ArrayList<>();
+        for (long i = 1; i <= MENU_SIZE; i++) {
+            dishes.add(Dish.builder().id(i).price(new BigDecimal("18.00").add(BigDecimal.valueOf(i))).build());
+            setmeals.add(Setmeal.builder().id(i).price(new BigDecimal("58.00").add(BigDecimal.valueOf(i))).build());
+        }
+        PricingProperties pricingProperties = new PricingProperties();
+        PriceIndex priceIndex = new PriceIndex(stubMapper(DishMapper.class, dishes), stubMapper(SetmealMapper.class, setmeals),
+                pricingProperties);
+        priceIndex.reload();
+
+        pricingEngine = new PricingEngine(priceIndex, pricingProperties);
+
+        orderDetailList = new ArrayList<>(items);
+        BigDecimal itemAmount = BigDecimal.ZERO;
+        for (int i = 0; i < items; i++) {
+            long id = i % MENU_SIZE + 1;
+            OrderDetail orderDetail = i % 2 == 0
+                    ? OrderDetail.builder().dishId(id).number(2).build()
+                    : OrderDetail.builder().setmealId(id).number(1).build();
+            BigDecimal price = i % 2 == 0 ? dishes.get((int) id - 1).getPrice() : setmeals.get((int) id - 1).getPrice();
+            itemAmount = itemAmount.add(price.multiply(BigDecimal.valueOf(orderDetail.getNumber())));
+            packAmount += orderDetail.getNumber() * pricingProperties.getPackFeePerItem();
+            orderDetailList.add(orderDetail);
+        }
+        amount = itemAmount.add(BigDecimal.valueOf(packAmount)).add(pricingProperties.getDeliveryFee());
+    }
+
+    @Benchmark
+    public Orders price() {
+        Orders orders = Orders.builder().amount(amount).packAmount(packAmount).build();
+        pricingEngine.price(orders, orderDetailList);
+        return orders;
+    }
+
+    /**
+     * 只实现listPrices的mapper，其他方法不会被调用
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T stubMapper(Class<T> mapperClass, List<?> prices) {
+        return (T) Proxy.newProxyInstance(mapperClass.getClassLoader(), new Class<?>[]{mapperClass},
+                (proxy, method, args) -> {
+                    if ("listPrices".equals(method.getName())) {
+                        return prices;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,61 @@
+package com.sky.benchmark;
+
+import com.sky.cache.CacheValueSerializer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redis value序列化：jdk、json、smile，以及是否压缩
+ * 每种组合序列化后的字节数在setup时打印
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedisSerializerBenchmark {
+
+    @Param({"jdk", "json", "smile"})
+    private String format;
+
+    //0表示不压缩
+    @Param({"0", "1024"})
+    private int compressThreshold;
+
+    @Param({"dish", "setmeal"})
+    private String payload;
+
+    private CacheValueSerializer serializer;
+    private Object value;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() {
+        serializer = new CacheValueSerializer(format, compressThreshold);
+        value = "dish".equals(payload) ? BenchmarkData.dishVOList(40) : BenchmarkData.setmealVOList(20);
+        bytes = serializer.serialize(value);
+        System.out.println(format + "/" + compressThreshold + "/" + payload + " bytes=" + bytes.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() {
+        return serializer.serialize(value);
+    }
+
+    @Benchmark
+    public Object deserialize() {
+        return serializer.deserialize(bytes);
+    }
+}
@@ -0,0 +1,30 @@
+package com.sky.benchmark;
+
+import com.sky.constant.AutoFillConstant;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+
+/**
+ * 改造前AutoFillAspect的写法：每次调用都反射查找setter再invoke，作为对比基线
+ */
+public class ReflectionAutoFill {
+
+    public static void fillInsert(Object obj, LocalDateTime localDateTime, Long currentId) throws Exception {
+        Method setCreateTime = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_CREATE_TIME, LocalDateTime.class);
+        Method setCreateUser = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_CREATE_USER, Long.class);
+        Method setUpdateTime = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
+        Method setUpdateUser = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER, Long.class);
+        setCreateTime.invoke(obj, localDateTime);
+        setCreateUser.invoke(obj, currentId);
+        setUpdateTime.invoke(obj, localDateTime);
+        setUpdateUser.invoke(obj, currentId);
+    }
+
+    public static void fillUpdate(Object obj, LocalDateTime localDateTime, Long currentId) throws Exception {
+        Method setUpdateTime = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
+        Method setUpdateUser = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER, Long.class);
+        setUpdateTime.invoke(obj, localDateTime);
+        setUpdateUser.invoke(obj, currentId);
+    }
+}
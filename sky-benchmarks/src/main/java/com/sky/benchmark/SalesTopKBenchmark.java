@@ -0,0 +1,67 @@
+package com.sky.benchmark;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.report.SalesTopK;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 销量排行回退路径：查询结果逐行进堆只保留前10，和先收集整个列表再排序对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SalesTopKBenchmark {
+
+    //分组后的商品数
+    @Param({"100", "10000", "100000"})
+    private int rows;
+
+    private GoodsSalesDTO[] salesRows;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        salesRows = new GoodsSalesDTO[rows];
+        for (int i = 0; i < rows; i++) {
+            salesRows[i] = new GoodsSalesDTO("商品" + i, random.nextInt(100000));
+        }
+    }
+
+    @Benchmark
+    public List<GoodsSalesDTO> heap() {
+        SalesTopK topK = new SalesTopK(10);
+        for (GoodsSalesDTO row : salesRows) {
+            topK.add(row);
+        }
+        return topK.result();
+    }
+
+    @Benchmark
+    public List<GoodsSalesDTO> collectAndSort() {
+        List<GoodsSalesDTO> list = new ArrayList<>();
+        for (GoodsSalesDTO row : salesRows) {
+            list.add(row);
+        }
+        list.sort(Comparator.comparingInt(GoodsSalesDTO::getNumber).reversed());
+        return new ArrayList<>(list.subList(0, Math.min(10, list.size())));
+    }
+}
@@ -0,0 +1,241 @@
+package com.sky.benchmark;
+
+import com.sky.context.BaseContext;
+import com.sky.dto.ShoppingCartDTO;
+import com.sky.entity.Dish;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.service.ShopService;
+import com.sky.service.impl.ShoppingCartServiceImpl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.beans.DirectFieldAccessor;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.net.ServerSocket;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * 加购：改造前每次加购查一次shopping_cart再update/insert，改造后在redis里HINCRBY，修改过的购物车定期写回
+ * 看加购耗时的p99(jmh的SampleTime分位数)和每秒落到数据库的sql条数(每轮结束时打印)
+ * 数据库是桩：连接池poolSize个连接，每条sql耗时statementMicros；redis用本地的embedded redis
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class ShoppingCartBenchmark {
+
+    @Param({"1000"})
+    private int users;
+
+    @Param({"20"})
+    private int dishes;
+
+    @Param({"10"})
+    private int poolSize;
+
+    @Param({"300"})
+    private long statementMicros;
+
+    //线上每5秒写回一次，这里缩短让每轮测量都包含写回
+    @Param({"1000"})
+    private long flushMillis;
+
+    private final AtomicLong statements = new AtomicLong();
+    //改造前的shopping_cart表，key为用户:菜品
+    private final Map<String, ShoppingCart> table = new ConcurrentHashMap<>();
+    private Semaphore connections;
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private ScheduledExecutorService flusher;
+    private ShoppingCartMapper shoppingCartMapper;
+    private DishMapper dishMapper;
+    private ShoppingCartServiceImpl shoppingCartService;
+    private long iterationStatements;
+    private long iterationStart;
+
+    @Setup
+    public void setup() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        server = RedisServer.builder().port(port).setting("bind 127.0.0.1").setting("save \"\"").build();
+        server.start();
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        connections = new Semaphore(poolSize);
+        dishMapper = stub(DishMapper.class, args -> Dish.builder().id((Long) args[0]).name("招牌水煮鱼")
+                .image("fish.png").price(new BigDecimal("42.00")).build());
+        shoppingCartMapper = stub(ShoppingCartMapper.class, args -> Collections.emptyList());
+
+        shoppingCartService = new ShoppingCartServiceImpl();
+        DirectFieldAccessor accessor = new DirectFieldAccessor(shoppingCartService);
+        accessor.setPropertyValue("stringRedisTemplate", stringRedisTemplate);
+        accessor.setPropertyValue("shoppingCartMapper", shoppingCartMapper);
+        accessor.setPropertyValue("dishMapper", dishMapper);
+        accessor.setPropertyValue("setmealMapper", stub(SetmealMapper.class, args -> null));
+        accessor.setPropertyValue("shopService", (ShopService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{ShopService.class}, (proxy, method, args) -> method.getName().equals("isOpen") ? true : null));
+        accessor.setPropertyValue("transactionTemplate", new TransactionTemplate(new StubTransactionManager()));
+        shoppingCartService.init();
+
+        flusher = Executors.newSingleThreadScheduledExecutor();
+        flusher.scheduleWithFixedDelay(shoppingCartService::flushDirtyCarts, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    @Setup(Level.Iteration)
+    public void startIteration() {
+        iterationStatements = statements.get();
+        iterationStart = System.nanoTime();
+    }
+
+    @TearDown(Level.Iteration)
+    public void endIteration() {
+        double seconds = (System.nanoTime() - iterationStart) / 1e9;
+        System.out.printf("%ndb statements: %.0f/s%n", (statements.get() - iterationStatements) / seconds);
+    }
+
+    /**
+     * 改造前的addShoppingCart：查出购物车里的这一项，有就update数量，没有就查菜品再insert，每条sql占一次连接
+     */
+    @Benchmark
+    public ShoppingCart mysqlAdd() {
+        long userId = ThreadLocalRandom.current().nextInt(users);
+        long dishId = ThreadLocalRandom.current().nextInt(dishes);
+        String key = userId + ":" + dishId;
+        statement();
+        ShoppingCart cart = table.get(key);
+        if (cart != null) {
+            cart.setNumber(cart.getNumber() + 1);
+            statement();
+            return cart;
+        }
+        Dish dish = dishMapper.getById(dishId);
+        cart = ShoppingCart.builder().userId(userId).dishId(dishId).name(dish.getName()).image(dish.getImage())
+                .amount(dish.getPrice()).number(1).createTime(LocalDateTime.now()).build();
+        statement();
+        table.put(key, cart);
+        return cart;
+    }
+
+    /**
+     * 改造后：一次lua脚本完成+1，第一次访问某个用户的购物车时从表里加载，后台线程定期写回
+     */
+    @Benchmark
+    public void redisAdd() {
+        long userId = ThreadLocalRandom.current().nextInt(users);
+        ShoppingCartDTO shoppingCartDTO = new ShoppingCartDTO();
+        shoppingCartDTO.setDishId((long) ThreadLocalRandom.current().nextInt(dishes));
+        BaseContext.setCurrentId(userId);
+        try {
+            shoppingCartService.addShoppingCart(shoppingCartDTO);
+        } finally {
+            BaseContext.removeCurrentId();
+        }
+    }
+
+    /**
+     * 一条sql：占用一个连接statementMicros
+     */
+    private void statement() {
+        connections.acquireUninterruptibly();
+        try {
+            sleepMicros(statementMicros);
+        } finally {
+            connections.release();
+        }
+        statements.incrementAndGet();
+    }
+
+    private static void sleepMicros(long micros) {
+        long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(micros);
+        while (System.nanoTime() < deadline) {
+            LockSupport.parkNanos(deadline - System.nanoTime());
+        }
+    }
+
+    /**
+     * mapper的每次调用都是一条sql
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> type, Function<Object[], Object> result) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            statement();
+            return result.apply(args);
+        });
+    }
+
+    /**
+     * 写回的事务：提交也算一条sql
+     */
+    private class StubTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+            statement();
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.sky.benchmark;
+
+import org.aspectj.lang.JoinPoint;
+import org.aspectj.lang.Signature;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.aspectj.lang.reflect.SourceLocation;
+
+import java.lang.reflect.Method;
+
+/**
+ * 模拟被拦截的mapper方法，直接调用切面，不经过spring代理
+ */
+public class StubJoinPoint implements JoinPoint {
+
+    private final Method method;
+    private final Object[] args;
+    private final MethodSignature signature;
+
+    public StubJoinPoint(Method method, Object... args) {
+        this.method = method;
+        this.args = args;
+        this.signature = new StubMethodSignature();
+    }
+
+    @Override
+    public Object[] getArgs() {
+        return args;
+    }
+
+    @Override
+    public Signature getSignature() {
+        return signature;
+    }
+
+    @Override
+    public String toShortString() {
+        return method.getName();
+    }
+
+    @Override
+    public String toLongString() {
+        return method.toString();
+    }
+
+    @Override
+    public Object getThis() {
+        return null;
+    }
+
+    @Override
+    public Object getTarget() {
+        return null;
+    }
+
+    @Override
+    public SourceLocation getSourceLocation() {
+        return null;
+    }
+
+    @Override
+    public String getKind() {
+        return JoinPoint.METHOD_EXECUTION;
+    }
+
+    @Override
+    public StaticPart getStaticPart() {
+        return null;
+    }
+
+    private class StubMethodSignature implements MethodSignature {
+
+        @Override
+        public Class getReturnType() {
+            return method.getReturnType();
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Class[] getParameterTypes() {
+            return method.getParameterTypes();
+        }
+
+        @Override
+        public String[] getParameterNames() {
+            return new String[0];
+        }
+
+        @Override
+        public Class[] getExceptionTypes() {
+            return method.getExceptionTypes();
+        }
+
+        @Override
+        public String toShortString() {
+            return method.getName();
+        }
+
+        @Override
+        public String toLongString() {
+            return method.toString();
+        }
+
+        @Override
+        public String getName() {
+            return method.getName();
+        }
+
+        @Override
+        public int getModifiers() {
+            return method.getModifiers();
+        }
+
+        @Override
+        public Class getDeclaringType() {
+            return method.getDeclaringClass();
+        }
+
+        @Override
+        public String getDeclaringTypeName() {
+            return method.getDeclaringClass().getName();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.sky.benchmark;
+
+import com.sky.utils.TimingWheel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单超时：已有pending个定时任务时，添加一个再取消一个的开销
+ * 时间轮是O(1)，优先队列添加是O(log n)，按对象取消是O(n)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+@State(Scope.Benchmark)
+public class TimingWheelBenchmark {
+
+    private static final long START = 1_700_000_000_000L;
+    //15分钟
+    private static final long TIMEOUT = 15 * 60 * 1000;
+
+    @Param({"1000000"})
+    private int pending;
+
+    private TimingWheel<Long, Long> wheel;
+    private PriorityQueue<Long> priorityQueue;
+    private final Random random = new Random(42);
+    private long nextKey;
+
+    @Setup
+    public void setup() {
+        wheel = new TimingWheel<>(1000, 60, START);
+        priorityQueue = new PriorityQueue<>();
+        for (nextKey = 0; nextKey < pending; nextKey++) {
+            long deadline = START + 1000 + (long) (random.nextDouble() * TIMEOUT);
+            wheel.add(nextKey, deadline, deadline);
+            priorityQueue.add(deadline);
+        }
+    }
+
+    @Benchmark
+    public boolean wheelAddCancel() {
+        long key = nextKey++;
+        long deadline = START + 1000 + (long) (random.nextDouble() * TIMEOUT);
+        wheel.add(key, deadline, deadline);
+        return wheel.cancel(key);
+    }
+
+    @Benchmark
+    public boolean priorityQueueAddCancel() {
+        Long deadline = START + 1000 + (long) (random.nextDouble() * TIMEOUT);
+        priorityQueue.add(deadline);
+        return priorityQueue.remove(deadline);
+    }
+}
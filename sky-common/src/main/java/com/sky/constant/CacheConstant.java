@@ -0,0 +1,16 @@
+package com.sky.constant;
+
+/**
+ * 缓存key相关常量
+ */
+public class CacheConstant {
+
+    //C端菜品列表，后面拼分类id
+    public static final String DISH_KEY_PREFIX = "dish_";
+
+    //C端套餐列表，后面拼分类id
+    public static final String SETMEAL_KEY_PREFIX = "setmeal_";
+
+    //记录某个前缀下写过哪些key的set，后面拼前缀
+    public static final String KEY_INDEX_PREFIX = "menu_cache_index:";
+}
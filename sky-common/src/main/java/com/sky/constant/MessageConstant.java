@@ -24,5 +24,13 @@ public class MessageConstant {
     public static final String DISH_BE_RELATED_BY_SETMEAL = "当前菜品关联了套餐,不能删除";
     public static final String ORDER_STATUS_ERROR = "订单状态错误";
     public static final String ORDER_NOT_FOUND = "订单不存在";
+    public static final String ORDER_SUBMIT_BUSY = "下单人数过多，请稍后重试";
+    public static final String ORDER_SUBMIT_TOKEN_IS_NULL = "下单令牌不能为空";
+    public static final String ORDER_SUBMIT_FAILED = "下单失败，请重试";
+    public static final String ORDER_AMOUNT_ERROR = "订单金额有误，请刷新后重新下单";
+    public static final String ORDER_ITEM_NOT_FOUND = "购物车中有商品已下架，请刷新后重新下单";
+    public static final String SHOP_CLOSED = "店铺已打烊";
+    public static final String BACKFILL_RANGE_ERROR = "重算的日期范围有误，一次最多31天";
+    public static final String BACKFILL_RUNNING = "每日统计正在重算，请稍后再试";
 
 }
@@ -0,0 +1,19 @@
+package com.sky.constant;
+
+/**
+ * 店铺营业状态相关常量
+ */
+public class ShopConstant {
+
+    //redis中保存营业状态的key
+    public static final String STATUS_KEY = "SHOP_STATUS";
+
+    //营业状态变更后通知各节点的频道
+    public static final String STATUS_CHANNEL = "shop_status_changed";
+
+    //营业中
+    public static final Integer OPEN = 1;
+
+    //打烊中
+    public static final Integer CLOSED = 0;
+}
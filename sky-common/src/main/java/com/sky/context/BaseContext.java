@@ -1,8 +1,16 @@
 package com.sky.context;
 
+import java.util.concurrent.Callable;
+import java.util.function.Supplier;
+
+/**
+ * 当前请求的用户id(管理端是员工id)，由jwt拦截器设置，请求结束时清除
+ * 线程池里的任务拿不到提交线程的ThreadLocal，需要用wrap包装任务，或者用ContextTaskDecorator装饰线程池
+ * 包装时取的是提交那一刻的值，任务执行完恢复执行线程原来的值，普通线程池、每任务一个线程(含虚拟线程)的执行器都适用
+ */
 public class BaseContext {
 
-    public static ThreadLocal<Long> threadLocal = new ThreadLocal<>();
+    private static final ThreadLocal<Long> threadLocal = new ThreadLocal<>();
 
     public static void setCurrentId(Long id) {
         threadLocal.set(id);
@@ -16,4 +24,59 @@ public class BaseContext {
         threadLocal.remove();
     }
 
+    /**
+     * 包装任务，执行时使用当前线程的用户id
+     * @param task
+     * @return
+     */
+    public static Runnable wrap(Runnable task) {
+        Long capturedId = getCurrentId();
+        return () -> {
+            Long previousId = getCurrentId();
+            restore(capturedId);
+            try {
+                task.run();
+            } finally {
+                restore(previousId);
+            }
+        };
+    }
+
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        Long capturedId = getCurrentId();
+        return () -> {
+            Long previousId = getCurrentId();
+            restore(capturedId);
+            try {
+                return task.call();
+            } finally {
+                restore(previousId);
+            }
+        };
+    }
+
+    /**
+     * 用于CompletableFuture.supplyAsync
+     */
+    public static <T> Supplier<T> wrapSupplier(Supplier<T> task) {
+        Long capturedId = getCurrentId();
+        return () -> {
+            Long previousId = getCurrentId();
+            restore(capturedId);
+            try {
+                return task.get();
+            } finally {
+                restore(previousId);
+            }
+        };
+    }
+
+    private static void restore(Long id) {
+        if (id == null) {
+            threadLocal.remove();
+        } else {
+            threadLocal.set(id);
+        }
+    }
+
 }
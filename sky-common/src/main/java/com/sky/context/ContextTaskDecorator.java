@@ -0,0 +1,14 @@
+package com.sky.context;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * 线程池任务装饰器，把提交线程的BaseContext带到执行线程
+ */
+public class ContextTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return BaseContext.wrap(runnable);
+    }
+}
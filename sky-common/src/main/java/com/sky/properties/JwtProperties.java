@@ -24,4 +24,9 @@ public class JwtProperties {
     private long userTtl;
     private String userTokenName;
 
+    /**
+     * 已校验令牌缓存的最大条数，管理端、用户端各一个
+     */
+    private long verifiedCacheSize = 10000;
+
 }
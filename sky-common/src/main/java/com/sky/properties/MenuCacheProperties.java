@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.menu-cache")
+@Data
+public class MenuCacheProperties {
+
+    /**
+     * 本地缓存(一级缓存)最多缓存的key数量
+     */
+    private long maximumSize = 1000;
+
+    /**
+     * 本地缓存写入后的过期时间(秒)，兜底防止失效消息丢失
+     */
+    private long expireSeconds = 300;
+
+    /**
+     * 缓存失效消息使用的redis频道
+     */
+    private String channel = "menu_cache_evict";
+
+}
@@ -0,0 +1,41 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-push")
+@Data
+public class OrderPushProperties {
+
+    /**
+     * 节点间转发新订单消息的redis频道
+     */
+    private String channel = "order_push";
+
+    /**
+     * 向浏览器发送消息的线程数
+     */
+    private int senderThreads = 4;
+
+    /**
+     * 每个连接最多积压的消息数，超过后合并成一条"请刷新"消息
+     */
+    private int maxPending = 64;
+
+    /**
+     * 单条消息发送超时(毫秒)，超时的连接直接关闭
+     */
+    private long sendTimeoutMillis = 5000;
+
+    /**
+     * 允许建立websocket连接的管理端页面来源，如http://admin.example.com
+     * 必须配置，为空时启动失败
+     */
+    private List<String> allowedOrigins = new ArrayList<>();
+
+}
@@ -0,0 +1,32 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-submit")
+@Data
+public class OrderSubmitProperties {
+
+    /**
+     * 异步下单队列容量，满了直接拒绝，让前端稍后重试
+     */
+    private int queueCapacity = 2000;
+
+    /**
+     * 批量写库的线程数
+     */
+    private int writerThreads = 2;
+
+    /**
+     * 一个事务最多写多少个订单
+     */
+    private int batchSize = 50;
+
+    /**
+     * 幂等令牌和下单结果在redis里保留的时间(秒)
+     */
+    private long resultTtlSeconds = 600;
+
+}
@@ -0,0 +1,42 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.order-timeout")
+@Data
+public class OrderTimeoutProperties {
+
+    /**
+     * 下单后多久未支付自动取消(分钟)
+     */
+    private long payTimeoutMinutes = 15;
+
+    /**
+     * 开始派送后多久自动完成(分钟)
+     */
+    private long deliveryTimeoutMinutes = 60;
+
+    /**
+     * 时间轮每格的时间(毫秒)，也是检查到期的间隔
+     */
+    private long tickMillis = 1000;
+
+    /**
+     * 时间轮每层的格数
+     */
+    private int wheelSize = 60;
+
+    /**
+     * 每次从redis加载未来多长时间内到期的定时任务(秒)
+     */
+    private long loadAheadSeconds = 60;
+
+    /**
+     * 一个事务最多处理多少个到期订单
+     */
+    private int batchSize = 200;
+
+}
@@ -0,0 +1,29 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+@Component
+@ConfigurationProperties(prefix = "sky.pricing")
+@Data
+public class PricingProperties {
+
+    /**
+     * 每份商品的打包费(元)
+     */
+    private int packFeePerItem = 1;
+
+    /**
+     * 配送费(元)
+     */
+    private BigDecimal deliveryFee = new BigDecimal("6");
+
+    /**
+     * 价格索引查不到商品时重新加载的最小间隔(毫秒)，间隔内的未命中直接按商品不存在处理
+     */
+    private long missReloadIntervalMillis = 5000;
+
+}
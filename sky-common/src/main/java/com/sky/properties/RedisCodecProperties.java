@@ -0,0 +1,23 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.redis-codec")
+@Data
+public class RedisCodecProperties {
+
+    /**
+     * redis value的序列化格式：jdk、json、smile(二进制json)
+     * 滚动发布时先保持jdk，所有节点升级后再切换，新格式的节点能读出旧的jdk数据
+     */
+    private String format = "jdk";
+
+    /**
+     * 序列化后超过这个字节数才用lz4压缩，小于等于0表示不压缩
+     */
+    private int compressThreshold = 1024;
+
+}
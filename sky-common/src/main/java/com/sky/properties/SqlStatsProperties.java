@@ -0,0 +1,27 @@
+package com.sky.properties;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConfigurationProperties(prefix = "sky.sql-stats")
+@Data
+public class SqlStatsProperties {
+
+    /**
+     * 是否统计sql执行耗时
+     */
+    private boolean enabled = true;
+
+    /**
+     * 慢sql阈值(毫秒)，超过的记录sql和参数
+     */
+    private long slowThresholdMillis = 200;
+
+    /**
+     * 最多保留最近多少条慢sql
+     */
+    private int slowLogSize = 100;
+
+}
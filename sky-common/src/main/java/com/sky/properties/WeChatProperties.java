@@ -19,5 +19,10 @@ public class WeChatProperties {
     private String weChatPayCertFilePath; //平台证书
     private String notifyUrl; //支付成功的回调地址
     private String refundNotifyUrl; //退款成功的回调地址
+    private int maxTotal = 50; //连接池最大连接数
+    private int maxPerRoute = 20; //每个域名的最大连接数
+    private int connectTimeout = 3000; //建立连接超时(毫秒)
+    private int readTimeout = 10000; //读取响应超时(毫秒)
+    private int connectionRequestTimeout = 1000; //从连接池获取连接超时(毫秒)
 
 }
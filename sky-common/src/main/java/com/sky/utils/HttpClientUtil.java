@@ -1,6 +1,8 @@
 package com.sky.utils;
 
 import com.alibaba.fastjson.JSONObject;
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.entity.UrlEncodedFormEntity;
@@ -8,10 +10,14 @@ import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
 import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
@@ -19,13 +25,33 @@ import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Http工具类
+ * 所有请求共用一个连接池，连接保持长连接复用，不再每次请求新建客户端、重新握手
+ * 异步方法在单独的线程池里发请求，调用方(如Tomcat线程)不用等待响应
  */
 public class HttpClientUtil {
 
     static final  int TIMEOUT_MSEC = 5 * 1000;
+    //连接池总连接数、每个域名的连接数
+    static final int MAX_TOTAL = 200;
+    static final int MAX_PER_ROUTE = 50;
+    //服务端没有返回Keep-Alive超时时间时，空闲连接保留的时间
+    static final long KEEP_ALIVE_MSEC = 30 * 1000;
+    //异步请求的线程数、排队数，排满后直接失败
+    static final int ASYNC_THREADS = MAX_PER_ROUTE;
+    static final int ASYNC_QUEUE_CAPACITY = 1000;
+
+    private static final CloseableHttpClient HTTP_CLIENT = buildHttpClient();
+    private static final ExecutorService ASYNC_EXECUTOR = buildAsyncExecutor();
 
     /**
      * 发送GET方式请求
@@ -34,11 +60,7 @@ public class HttpClientUtil {
      * @return
      */
     public static String doGet(String url,Map<String,String> paramMap){
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-
         String result = "";
-        CloseableHttpResponse response = null;
 
         try{
             URIBuilder builder = new URIBuilder(url);
@@ -53,21 +75,16 @@ public class HttpClientUtil {
             HttpGet httpGet = new HttpGet(uri);
 
             //发送请求
-            response = httpClient.execute(httpGet);
-
-            //判断响应状态
-            if(response.getStatusLine().getStatusCode() == 200){
-                result = EntityUtils.toString(response.getEntity(),"UTF-8");
+            try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpGet)) {
+                //判断响应状态，响应体读完后连接才会放回连接池
+                if(response.getStatusLine().getStatusCode() == 200){
+                    result = EntityUtils.toString(response.getEntity(),"UTF-8");
+                } else {
+                    EntityUtils.consume(response.getEntity());
+                }
             }
         }catch (Exception e){
             e.printStackTrace();
-        }finally {
-            try {
-                response.close();
-                httpClient.close();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
         }
 
         return result;
@@ -81,43 +98,24 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
-        String resultString = "";
-
-        try {
-            // 创建Http Post请求
-            HttpPost httpPost = new HttpPost(url);
-
-            // 创建参数列表
-            if (paramMap != null) {
-                List<NameValuePair> paramList = new ArrayList();
-                for (Map.Entry<String, String> param : paramMap.entrySet()) {
-                    paramList.add(new BasicNameValuePair(param.getKey(), param.getValue()));
-                }
-                // 模拟表单
-                UrlEncodedFormEntity entity = new UrlEncodedFormEntity(paramList);
-                httpPost.setEntity(entity);
-            }
-
-            httpPost.setConfig(builderRequestConfig());
-
-            // 执行http请求
-            response = httpClient.execute(httpPost);
-
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
-        } finally {
-            try {
-                response.close();
-            } catch (IOException e) {
-                e.printStackTrace();
+        // 创建Http Post请求
+        HttpPost httpPost = new HttpPost(url);
+
+        // 创建参数列表
+        if (paramMap != null) {
+            List<NameValuePair> paramList = new ArrayList();
+            for (Map.Entry<String, String> param : paramMap.entrySet()) {
+                paramList.add(new BasicNameValuePair(param.getKey(), param.getValue()));
             }
+            // 模拟表单
+            UrlEncodedFormEntity entity = new UrlEncodedFormEntity(paramList);
+            httpPost.setEntity(entity);
         }
 
-        return resultString;
+        // 执行http请求
+        try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpPost)) {
+            return EntityUtils.toString(response.getEntity(), "UTF-8");
+        }
     }
 
     /**
@@ -128,47 +126,119 @@ public class HttpClientUtil {
      * @throws IOException
      */
     public static String doPost4Json(String url, Map<String, String> paramMap) throws IOException {
-        // 创建Httpclient对象
-        CloseableHttpClient httpClient = HttpClients.createDefault();
-        CloseableHttpResponse response = null;
-        String resultString = "";
-
-        try {
-            // 创建Http Post请求
-            HttpPost httpPost = new HttpPost(url);
-
-            if (paramMap != null) {
-                //构造json格式数据
-                JSONObject jsonObject = new JSONObject();
-                for (Map.Entry<String, String> param : paramMap.entrySet()) {
-                    jsonObject.put(param.getKey(),param.getValue());
-                }
-                StringEntity entity = new StringEntity(jsonObject.toString(),"utf-8");
-                //设置请求编码
-                entity.setContentEncoding("utf-8");
-                //设置数据类型
-                entity.setContentType("application/json");
-                httpPost.setEntity(entity);
+        // 创建Http Post请求
+        HttpPost httpPost = new HttpPost(url);
+
+        if (paramMap != null) {
+            //构造json格式数据
+            JSONObject jsonObject = new JSONObject();
+            for (Map.Entry<String, String> param : paramMap.entrySet()) {
+                jsonObject.put(param.getKey(),param.getValue());
             }
+            StringEntity entity = new StringEntity(jsonObject.toString(),"utf-8");
+            //设置请求编码
+            entity.setContentEncoding("utf-8");
+            //设置数据类型
+            entity.setContentType("application/json");
+            httpPost.setEntity(entity);
+        }
 
-            httpPost.setConfig(builderRequestConfig());
+        // 执行http请求
+        try (CloseableHttpResponse response = HTTP_CLIENT.execute(httpPost)) {
+            return EntityUtils.toString(response.getEntity(), "UTF-8");
+        }
+    }
 
-            // 执行http请求
-            response = httpClient.execute(httpPost);
+    /**
+     * 异步发送GET方式请求，失败时和doGet一样返回空字符串
+     * @param url
+     * @param paramMap
+     * @return 线程池排满时以RejectedExecutionException失败
+     */
+    public static CompletableFuture<String> doGetAsync(String url, Map<String, String> paramMap) {
+        return CompletableFuture.supplyAsync(() -> doGet(url, paramMap), ASYNC_EXECUTOR);
+    }
 
-            resultString = EntityUtils.toString(response.getEntity(), "UTF-8");
-        } catch (Exception e) {
-            throw e;
-        } finally {
+    /**
+     * 异步发送POST方式请求
+     * @param url
+     * @param paramMap
+     * @return 请求失败时以CompletionException(包装IOException)失败
+     */
+    public static CompletableFuture<String> doPostAsync(String url, Map<String, String> paramMap) {
+        return CompletableFuture.supplyAsync(() -> {
             try {
-                response.close();
+                return doPost(url, paramMap);
             } catch (IOException e) {
-                e.printStackTrace();
+                throw new CompletionException(e);
             }
-        }
+        }, ASYNC_EXECUTOR);
+    }
 
-        return resultString;
+    /**
+     * 异步发送json格式的POST请求
+     * @param url
+     * @param paramMap
+     * @return 请求失败时以CompletionException(包装IOException)失败
+     */
+    public static CompletableFuture<String> doPost4JsonAsync(String url, Map<String, String> paramMap) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return doPost4Json(url, paramMap);
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            }
+        }, ASYNC_EXECUTOR);
     }
+
+    private static CloseableHttpClient buildHttpClient() {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_PER_ROUTE);
+        //空闲超过2秒的连接使用前先检查是否还可用
+        connectionManager.setValidateAfterInactivity(2000);
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(builderRequestConfig())
+                .setKeepAliveStrategy(keepAliveStrategy())
+                //后台线程定期关闭过期和空闲太久的连接
+                .evictExpiredConnections()
+                .evictIdleConnections(KEEP_ALIVE_MSEC, TimeUnit.MILLISECONDS)
+                .build();
+    }
+
+    /**
+     * 按服务端返回的Keep-Alive: timeout=n保留连接，没有返回时保留KEEP_ALIVE_MSEC
+     */
+    private static ConnectionKeepAliveStrategy keepAliveStrategy() {
+        return (response, context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement element = it.nextElement();
+                if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(element.getValue()) * 1000, KEEP_ALIVE_MSEC);
+                    } catch (NumberFormatException ignored) {
+                        break;
+                    }
+                }
+            }
+            return KEEP_ALIVE_MSEC;
+        };
+    }
+
+    private static ExecutorService buildAsyncExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(ASYNC_THREADS, ASYNC_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(ASYNC_QUEUE_CAPACITY), runnable -> {
+            Thread thread = new Thread(runnable, "http-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private static RequestConfig builderRequestConfig() {
         return RequestConfig.custom()
                 .setConnectTimeout(TIMEOUT_MSEC)
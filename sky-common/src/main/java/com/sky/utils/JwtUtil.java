@@ -2,6 +2,7 @@ package com.sky.utils;
 
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import java.nio.charset.StandardCharsets;
@@ -55,4 +56,25 @@ public class JwtUtil {
         return claims;
     }
 
+    /**
+     * 创建解析器，秘钥固定时可以只创建一次重复使用
+     *
+     * @param secretKey jwt秘钥
+     * @return
+     */
+    public static JwtParser parser(String secretKey) {
+        return Jwts.parser().setSigningKey(secretKey.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 使用已创建的解析器解密Token
+     *
+     * @param parser 由parser(secretKey)创建
+     * @param token  加密后的token
+     * @return
+     */
+    public static Claims parseJWT(JwtParser parser, String token) {
+        return parser.parseClaimsJws(token).getBody();
+    }
+
 }
@@ -0,0 +1,71 @@
+package com.sky.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 雪花算法id生成器：41位毫秒时间戳 + 10位机器id + 12位序列号
+ * 时间戳和序列号放在一个AtomicLong里用CAS更新，不加锁
+ * 时钟回拨时继续沿用上一次的时间戳递增，不会生成重复id也不会阻塞
+ */
+public class SnowflakeIdGenerator {
+
+    //时间戳起点 2024-01-01 00:00:00 UTC
+    public static final long EPOCH = 1704067200000L;
+
+    public static final int WORKER_ID_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final long MAX_WORKER_ID = (1L << WORKER_ID_BITS) - 1;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    //高位是上次使用的时间戳，低12位是序列号
+    private final AtomicLong state = new AtomicLong();
+
+    private volatile long workerId;
+
+    public SnowflakeIdGenerator(long workerId) {
+        setWorkerId(workerId);
+    }
+
+    public void setWorkerId(long workerId) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId超出范围：" + workerId);
+        }
+        this.workerId = workerId;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public long nextId() {
+        while (true) {
+            long prev = state.get();
+            long prevTimestamp = prev >>> SEQUENCE_BITS;
+            long prevSequence = prev & SEQUENCE_MASK;
+            long now = currentTimeMillis() - EPOCH;
+
+            long timestamp;
+            long sequence;
+            if (now > prevTimestamp) {
+                timestamp = now;
+                sequence = 0;
+            } else if (prevSequence < SEQUENCE_MASK) {
+                //同一毫秒内，或者时钟回拨了，沿用上次的时间戳
+                timestamp = prevTimestamp;
+                sequence = prevSequence + 1;
+            } else {
+                //这一毫秒的序列号用完了，借用下一毫秒
+                timestamp = prevTimestamp + 1;
+                sequence = 0;
+            }
+
+            if (state.compareAndSet(prev, (timestamp << SEQUENCE_BITS) | sequence)) {
+                return (timestamp << (WORKER_ID_BITS + SEQUENCE_BITS)) | (workerId << SEQUENCE_BITS) | sequence;
+            }
+        }
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+}
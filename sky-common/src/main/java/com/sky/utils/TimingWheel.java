@@ -0,0 +1,224 @@
+package com.sky.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.BiConsumer;
+
+/**
+ * 分层时间轮，添加、取消定时任务都是O(1)
+ * 第一层每格tickMillis，转一圈wheelSize格，超出一圈的任务放到上一层(每格是下一层一圈的时间)，层数按需增加
+ * 只有非空的格子进优先队列，推进时间时只处理到期的格子，不会空转；上层格子到期后把任务重新放到下层
+ * 时间由调用方通过advance传入，方便用可控的时钟测试
+ * 不是线程安全的，由一个线程添加、取消、推进
+ */
+public class TimingWheel<K, V> {
+
+    private final Map<K, Entry<K, V>> entries = new HashMap<>();
+    private final PriorityQueue<Bucket<K, V>> queue = new PriorityQueue<>();
+    private final Level<K, V> root;
+
+    /**
+     * @param tickMillis 第一层每格的时间
+     * @param wheelSize 每层格数
+     * @param startMillis 开始时间
+     */
+    public TimingWheel(long tickMillis, int wheelSize, long startMillis) {
+        this.root = new Level<>(tickMillis, wheelSize, startMillis, queue);
+    }
+
+    /**
+     * 添加定时任务，同一个key已存在时先取消旧的
+     * @param key
+     * @param deadlineMillis 到期时间
+     * @param value
+     * @return 已经到期(不到一格)时不添加，返回false，由调用方立即处理
+     */
+    public boolean add(K key, long deadlineMillis, V value) {
+        cancel(key);
+        Entry<K, V> entry = new Entry<>(key, deadlineMillis, value);
+        if (!root.add(entry)) {
+            return false;
+        }
+        entries.put(key, entry);
+        return true;
+    }
+
+    /**
+     * 取消定时任务
+     * @param key
+     * @return 任务不存在返回false
+     */
+    public boolean cancel(K key) {
+        Entry<K, V> entry = entries.remove(key);
+        if (entry == null) {
+            return false;
+        }
+        entry.unlink();
+        return true;
+    }
+
+    public boolean contains(K key) {
+        return entries.containsKey(key);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 推进到nowMillis，到期的任务按到期时间顺序交给expired处理
+     * @param nowMillis
+     * @param expired
+     * @return 到期的任务数
+     */
+    public int advance(long nowMillis, BiConsumer<K, V> expired) {
+        List<Entry<K, V>> due = new ArrayList<>();
+        Bucket<K, V> bucket;
+        while ((bucket = queue.peek()) != null && bucket.expiration <= nowMillis) {
+            queue.poll();
+            root.advanceClock(bucket.expiration);
+            for (Entry<K, V> entry : bucket.drain()) {
+                //上层的任务放回下层，放不进去说明已到期
+                if (!root.add(entry)) {
+                    due.add(entry);
+                }
+            }
+        }
+        root.advanceClock(nowMillis);
+        for (Entry<K, V> entry : due) {
+            entries.remove(entry.key);
+            expired.accept(entry.key, entry.value);
+        }
+        return due.size();
+    }
+
+    private static final class Level<K, V> {
+        private final long tickMillis;
+        private final int wheelSize;
+        private final long interval;
+        private final Bucket<K, V>[] buckets;
+        private final PriorityQueue<Bucket<K, V>> queue;
+        private long currentTime;
+        private Level<K, V> overflow;
+
+        @SuppressWarnings("unchecked")
+        Level(long tickMillis, int wheelSize, long startMillis, PriorityQueue<Bucket<K, V>> queue) {
+            this.tickMillis = tickMillis;
+            this.wheelSize = wheelSize;
+            this.interval = tickMillis * wheelSize;
+            this.buckets = new Bucket[wheelSize];
+            for (int i = 0; i < wheelSize; i++) {
+                buckets[i] = new Bucket<>();
+            }
+            this.queue = queue;
+            this.currentTime = startMillis - startMillis % tickMillis;
+        }
+
+        boolean add(Entry<K, V> entry) {
+            long deadline = entry.deadline;
+            if (deadline < currentTime + tickMillis) {
+                return false;
+            }
+            if (deadline < currentTime + interval) {
+                long virtualId = deadline / tickMillis;
+                Bucket<K, V> bucket = buckets[(int) (virtualId % wheelSize)];
+                bucket.link(entry);
+                //格子被复用(过期时间变了)时重新进队列
+                if (bucket.setExpiration(virtualId * tickMillis)) {
+                    queue.offer(bucket);
+                }
+                return true;
+            }
+            if (overflow == null) {
+                overflow = new Level<>(interval, wheelSize, currentTime, queue);
+            }
+            return overflow.add(entry);
+        }
+
+        void advanceClock(long timeMillis) {
+            if (timeMillis >= currentTime + tickMillis) {
+                currentTime = timeMillis - timeMillis % tickMillis;
+                if (overflow != null) {
+                    overflow.advanceClock(currentTime);
+                }
+            }
+        }
+    }
+
+    private static final class Bucket<K, V> implements Comparable<Bucket<K, V>> {
+        //双向循环链表的哨兵
+        private final Entry<K, V> head = new Entry<>(null, 0, null);
+        private long expiration = -1;
+
+        Bucket() {
+            head.prev = head;
+            head.next = head;
+        }
+
+        void link(Entry<K, V> entry) {
+            entry.bucket = this;
+            entry.prev = head.prev;
+            entry.next = head;
+            head.prev.next = entry;
+            head.prev = entry;
+        }
+
+        boolean setExpiration(long expiration) {
+            if (this.expiration == expiration) {
+                return false;
+            }
+            this.expiration = expiration;
+            return true;
+        }
+
+        List<Entry<K, V>> drain() {
+            List<Entry<K, V>> list = new ArrayList<>();
+            for (Entry<K, V> entry = head.next; entry != head; ) {
+                Entry<K, V> next = entry.next;
+                entry.prev = null;
+                entry.next = null;
+                entry.bucket = null;
+                list.add(entry);
+                entry = next;
+            }
+            head.prev = head;
+            head.next = head;
+            expiration = -1;
+            return list;
+        }
+
+        @Override
+        public int compareTo(Bucket<K, V> other) {
+            return Long.compare(expiration, other.expiration);
+        }
+    }
+
+    private static final class Entry<K, V> {
+        private final K key;
+        private final long deadline;
+        private final V value;
+        private Bucket<K, V> bucket;
+        private Entry<K, V> prev;
+        private Entry<K, V> next;
+
+        Entry(K key, long deadline, V value) {
+            this.key = key;
+            this.deadline = deadline;
+            this.value = value;
+        }
+
+        void unlink() {
+            if (bucket == null) {
+                return;
+            }
+            prev.next = next;
+            next.prev = prev;
+            prev = null;
+            next = null;
+            bucket = null;
+        }
+    }
+}
@@ -5,21 +5,31 @@ import com.alibaba.fastjson.JSONObject;
 import com.sky.properties.WeChatProperties;
 import com.wechat.pay.contrib.apache.httpclient.WechatPayHttpClientBuilder;
 import com.wechat.pay.contrib.apache.httpclient.util.PemUtil;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.DnsResolver;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.conn.SystemDefaultDnsResolver;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.util.EntityUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.security.PrivateKey;
 import java.security.Signature;
@@ -28,11 +38,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * 微信支付工具类
  */
 @Component
+@Slf4j
 public class WeChatPayUtil {
 
     //微信支付下单接口地址
@@ -41,34 +53,120 @@ public class WeChatPayUtil {
     //申请退款接口地址
     public static final String REFUNDS = "https://api.mch.weixin.qq.com/v3/refund/domestic/refunds";
 
+    //检查私钥、证书文件是否更新的间隔
+    private static final long RELOAD_CHECK_INTERVAL_MILLIS = 60 * 1000;
+
     @Autowired
     private WeChatProperties weChatProperties;
 
+    private volatile PayClient payClient;
+    //被替换下来的客户端，下次替换时再关闭，避免关掉正在使用的连接
+    private PayClient retiredClient;
+    private volatile long nextCheckTime;
+
     /**
      * 获取调用微信接口的客户端工具对象
+     * 客户端带连接池，创建一次后复用，连接保持长连接，不用每次请求都读文件、解析私钥、重新握手
+     * 私钥或平台证书文件更新后重新创建；新文件读取失败(不存在、只写了一半)时继续用原来的客户端，下个检查周期再试
      *
      * @return
      */
-    private CloseableHttpClient getClient() {
-        PrivateKey merchantPrivateKey = null;
-        try {
-            //merchantPrivateKey商户API私钥，如何加载商户API私钥请看常见问题
-            merchantPrivateKey = PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath())));
-            //加载平台证书文件
-            X509Certificate x509Certificate = PemUtil.loadCertificate(new FileInputStream(new File(weChatProperties.getWeChatPayCertFilePath())));
-            //wechatPayCertificates微信支付平台证书列表。你也可以使用后面章节提到的“定时更新平台证书功能”，而不需要关心平台证书的来龙去脉
-            List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
-
-            WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
-                    .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
-                    .withWechatPay(wechatPayCertificates);
-
-            // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
-            CloseableHttpClient httpClient = builder.build();
-            return httpClient;
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-            return null;
+    private PayClient getClient() throws IOException {
+        PayClient client = payClient;
+        long now = currentTimeMillis();
+        if (client != null && now < nextCheckTime) {
+            return client;
+        }
+        synchronized (this) {
+            client = payClient;
+            if (client != null && now < nextCheckTime) {
+                return client;
+            }
+            File privateKeyFile = new File(weChatProperties.getPrivateKeyFilePath());
+            File certFile = new File(weChatProperties.getWeChatPayCertFilePath());
+            if (client == null) {
+                client = createClient(privateKeyFile, certFile);
+                payClient = client;
+            } else if (client.isStale(privateKeyFile, certFile)) {
+                try {
+                    PayClient newClient = createClient(privateKeyFile, certFile);
+                    if (retiredClient != null) {
+                        retiredClient.close();
+                    }
+                    retiredClient = client;
+                    payClient = newClient;
+                    client = newClient;
+                } catch (IOException | RuntimeException e) {
+                    log.warn("微信支付私钥或平台证书文件更新后读取失败，继续使用原来的客户端：{}", e.getMessage());
+                }
+            }
+            nextCheckTime = now + RELOAD_CHECK_INTERVAL_MILLIS;
+            return client;
+        }
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 只有*.mch.weixin.qq.com的请求会签名、验签，测试时把这个域名解析到本地的替身服务
+     */
+    protected DnsResolver dnsResolver() {
+        return SystemDefaultDnsResolver.INSTANCE;
+    }
+
+    private PayClient createClient(File privateKeyFile, File certFile) throws IOException {
+        long privateKeyModified = privateKeyFile.lastModified();
+        long certModified = certFile.lastModified();
+        PrivateKey merchantPrivateKey;
+        X509Certificate x509Certificate;
+        //merchantPrivateKey商户API私钥
+        try (FileInputStream in = new FileInputStream(privateKeyFile)) {
+            merchantPrivateKey = PemUtil.loadPrivateKey(in);
+        }
+        //加载平台证书文件
+        try (FileInputStream in = new FileInputStream(certFile)) {
+            x509Certificate = PemUtil.loadCertificate(in);
+        }
+        //wechatPayCertificates微信支付平台证书列表
+        List<X509Certificate> wechatPayCertificates = Arrays.asList(x509Certificate);
+
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                RegistryBuilder.<ConnectionSocketFactory>create()
+                        .register("http", PlainConnectionSocketFactory.getSocketFactory())
+                        .register("https", SSLConnectionSocketFactory.getSocketFactory())
+                        .build(),
+                dnsResolver());
+        connectionManager.setMaxTotal(weChatProperties.getMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(weChatProperties.getMaxPerRoute());
+        //空闲超过2秒的连接使用前先检查是否还可用
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(weChatProperties.getConnectTimeout())
+                .setSocketTimeout(weChatProperties.getReadTimeout())
+                .setConnectionRequestTimeout(weChatProperties.getConnectionRequestTimeout())
+                .build();
+
+        // 通过WechatPayHttpClientBuilder构造的HttpClient，会自动的处理签名和验签
+        WechatPayHttpClientBuilder builder = WechatPayHttpClientBuilder.create()
+                .withMerchant(weChatProperties.getMchid(), weChatProperties.getMchSerialNo(), merchantPrivateKey)
+                .withWechatPay(wechatPayCertificates);
+        builder.setConnectionManager(connectionManager);
+        builder.setDefaultRequestConfig(requestConfig);
+        builder.evictIdleConnections(30, TimeUnit.SECONDS);
+        return new PayClient(builder.build(), merchantPrivateKey, privateKeyModified, certModified);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        if (payClient != null) {
+            payClient.close();
+            payClient = null;
+        }
+        if (retiredClient != null) {
+            retiredClient.close();
+            retiredClient = null;
         }
     }
 
@@ -79,8 +177,8 @@ public class WeChatPayUtil {
      * @param body
      * @return
      */
-    private String post(String url, String body) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+    String post(String url, String body) throws Exception {
+        CloseableHttpClient httpClient = getClient().httpClient;
 
         HttpPost httpPost = new HttpPost(url);
         httpPost.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
@@ -88,13 +186,9 @@ public class WeChatPayUtil {
         httpPost.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
         httpPost.setEntity(new StringEntity(body, "UTF-8"));
 
-        CloseableHttpResponse response = httpClient.execute(httpPost);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
+        //关闭响应时连接还回连接池，客户端不关闭
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            return EntityUtils.toString(response.getEntity());
         }
     }
 
@@ -105,20 +199,15 @@ public class WeChatPayUtil {
      * @return
      */
     private String get(String url) throws Exception {
-        CloseableHttpClient httpClient = getClient();
+        CloseableHttpClient httpClient = getClient().httpClient;
 
         HttpGet httpGet = new HttpGet(url);
         httpGet.addHeader(HttpHeaders.ACCEPT, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader(HttpHeaders.CONTENT_TYPE, ContentType.APPLICATION_JSON.toString());
         httpGet.addHeader("Wechatpay-Serial", weChatProperties.getMchSerialNo());
 
-        CloseableHttpResponse response = httpClient.execute(httpGet);
-        try {
-            String bodyAsString = EntityUtils.toString(response.getEntity());
-            return bodyAsString;
-        } finally {
-            httpClient.close();
-            response.close();
+        try (CloseableHttpResponse response = httpClient.execute(httpGet)) {
+            return EntityUtils.toString(response.getEntity());
         }
     }
 
@@ -188,7 +277,7 @@ public class WeChatPayUtil {
             byte[] message = signMessage.getBytes();
 
             Signature signature = Signature.getInstance("SHA256withRSA");
-            signature.initSign(PemUtil.loadPrivateKey(new FileInputStream(new File(weChatProperties.getPrivateKeyFilePath()))));
+            signature.initSign(getClient().merchantPrivateKey);
             signature.update(message);
             String packageSign = Base64.getEncoder().encodeToString(signature.sign());
 
@@ -232,4 +321,32 @@ public class WeChatPayUtil {
         //调用申请退款接口
         return post(REFUNDS, body);
     }
+
+    /**
+     * 带连接池的客户端和创建它时的私钥、文件修改时间
+     */
+    private static final class PayClient {
+        private final CloseableHttpClient httpClient;
+        private final PrivateKey merchantPrivateKey;
+        private final long privateKeyModified;
+        private final long certModified;
+
+        PayClient(CloseableHttpClient httpClient, PrivateKey merchantPrivateKey, long privateKeyModified, long certModified) {
+            this.httpClient = httpClient;
+            this.merchantPrivateKey = merchantPrivateKey;
+            this.privateKeyModified = privateKeyModified;
+            this.certModified = certModified;
+        }
+
+        boolean isStale(File privateKeyFile, File certFile) {
+            return privateKeyFile.lastModified() != privateKeyModified || certFile.lastModified() != certModified;
+        }
+
+        void close() {
+            try {
+                httpClient.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
 }
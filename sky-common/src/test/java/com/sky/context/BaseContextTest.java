@@ -0,0 +1,120 @@
+package com.sky.context;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BaseContextTest {
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void wrapCapturesSubmitterIdAndRestoresWorkerId() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            //执行线程上残留了别的id
+            pool.submit(() -> BaseContext.setCurrentId(99L)).get();
+
+            BaseContext.setCurrentId(1L);
+            Long seen = pool.submit(BaseContext.wrap(BaseContext::getCurrentId)).get();
+            assertThat(seen).isEqualTo(1L);
+            assertThat(pool.submit(BaseContext::getCurrentId).get()).isEqualTo(99L);
+
+            //匿名请求不会看到执行线程上残留的id
+            BaseContext.removeCurrentId();
+            assertThat(pool.submit(BaseContext.wrap(BaseContext::getCurrentId)).get()).isNull();
+            assertThat(pool.submit(BaseContext::getCurrentId).get()).isEqualTo(99L);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void wrapRestoresWhenTaskThrows() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            BaseContext.setCurrentId(1L);
+            Future<?> failed = pool.submit(BaseContext.wrap((Runnable) () -> {
+                throw new IllegalStateException();
+            }));
+            assertThat(failed).failsWithin(Duration.ofSeconds(5));
+
+            assertThat(pool.submit(BaseContext::getCurrentId).get()).isNull();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void tenThousandInterleavedRequestsSeeTheirOwnId() throws Exception {
+        int requests = 10_000;
+        ExecutorService tomcat = Executors.newFixedThreadPool(8);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        ThreadPoolTaskExecutor decorated = new ThreadPoolTaskExecutor();
+        decorated.setCorePoolSize(4);
+        decorated.setTaskDecorator(new ContextTaskDecorator());
+        decorated.initialize();
+        AtomicInteger mismatches = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>(requests);
+            for (int i = 0; i < requests; i++) {
+                //每7个请求有一个未登录
+                Long id = i % 7 == 0 ? null : (long) i;
+                futures.add(tomcat.submit(() -> {
+                    if (id != null) {
+                        BaseContext.setCurrentId(id);
+                    }
+                    try {
+                        check(id, pool.submit(BaseContext.wrap(BaseContext::getCurrentId)).get(), mismatches);
+                        check(id, decorated.submit(BaseContext::getCurrentId).get(), mismatches);
+                        check(id, CompletableFuture.supplyAsync(BaseContext.wrapSupplier(BaseContext::getCurrentId), pool).get(),
+                                mismatches);
+                    } finally {
+                        //和拦截器afterCompletion一样
+                        BaseContext.removeCurrentId();
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            assertThat(mismatches).hasValue(0);
+
+            //执行线程上没有残留的id
+            List<Future<Long>> leftovers = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                leftovers.add(pool.submit(BaseContext::getCurrentId));
+                leftovers.add(decorated.submit(BaseContext::getCurrentId));
+                leftovers.add(tomcat.submit(BaseContext::getCurrentId));
+            }
+            for (Future<Long> leftover : leftovers) {
+                assertThat(leftover.get()).isNull();
+            }
+        } finally {
+            tomcat.shutdown();
+            pool.shutdown();
+            decorated.shutdown();
+        }
+    }
+
+    private static void check(Long expected, Long actual, AtomicInteger mismatches) {
+        if (expected == null ? actual != null : !expected.equals(actual)) {
+            mismatches.incrementAndGet();
+        }
+    }
+}
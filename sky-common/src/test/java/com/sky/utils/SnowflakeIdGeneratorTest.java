@@ -0,0 +1,149 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SnowflakeIdGeneratorTest {
+
+    @Test
+    void millionsOfIdsFromManyThreadsAreUnique() throws InterruptedException {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(5);
+        int threads = 8;
+        int perThread = 500_000;
+        long[] ids = generate(generator, threads, perThread);
+
+        assertUniqueAndWorker(ids, 5);
+    }
+
+    @Test
+    void clockMovingBackwardsDoesNotRepeatOrDecrease() {
+        ManualClockGenerator generator = new ManualClockGenerator(3);
+        generator.now.set(SnowflakeIdGenerator.EPOCH + 10_000);
+        long last = 0;
+        for (int i = 0; i < 100; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(last);
+            last = id;
+        }
+        //回拨5秒，期间生成的id仍然递增
+        generator.now.set(SnowflakeIdGenerator.EPOCH + 5_000);
+        for (int i = 0; i < 50_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(last);
+            last = id;
+        }
+        //时钟追上后继续递增
+        generator.now.set(SnowflakeIdGenerator.EPOCH + 20_000);
+        assertThat(generator.nextId()).isGreaterThan(last);
+    }
+
+    @Test
+    void sequenceOverflowBorrowsNextMillisecond() {
+        ManualClockGenerator generator = new ManualClockGenerator(1);
+        generator.now.set(SnowflakeIdGenerator.EPOCH + 1_000);
+        long first = generator.nextId();
+        long last = first;
+        //一毫秒内超过4096个
+        for (int i = 1; i < 10_000; i++) {
+            long id = generator.nextId();
+            assertThat(id).isGreaterThan(last);
+            last = id;
+        }
+        long timestampShift = SnowflakeIdGenerator.WORKER_ID_BITS + SnowflakeIdGenerator.SEQUENCE_BITS;
+        assertThat((last >>> timestampShift) - (first >>> timestampShift)).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentIdsStayUniqueWhileClockJumpsAround() throws InterruptedException {
+        ManualClockGenerator generator = new ManualClockGenerator(1023);
+        long base = SnowflakeIdGenerator.EPOCH + 1_000_000;
+        generator.now.set(base);
+        Thread clock = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                //前后随机跳动，包括回拨
+                generator.now.set(base + ThreadLocalRandom.current().nextLong(-2_000, 2_000));
+            }
+        });
+        clock.setDaemon(true);
+        clock.start();
+        long[] ids;
+        try {
+            ids = generate(generator, 8, 250_000);
+        } finally {
+            clock.interrupt();
+        }
+
+        assertUniqueAndWorker(ids, 1023);
+    }
+
+    @Test
+    void rejectsWorkerIdOutOfRange() {
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER_ID + 1))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static long[] generate(SnowflakeIdGenerator generator, int threads, int perThread) throws InterruptedException {
+        long[] ids = new long[threads * perThread];
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int offset = t * perThread;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < perThread; i++) {
+                    ids[offset + i] = generator.nextId();
+                }
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return ids;
+    }
+
+    private static void assertUniqueAndWorker(long[] ids, long workerId) {
+        long[] sorted = ids.clone();
+        Arrays.sort(sorted);
+        for (int i = 1; i < sorted.length; i++) {
+            if (sorted[i] == sorted[i - 1]) {
+                throw new AssertionError("重复的id：" + sorted[i]);
+            }
+        }
+        assertThat(sorted[0]).isPositive();
+        for (long id : ids) {
+            if (((id >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_WORKER_ID) != workerId) {
+                throw new AssertionError("机器id不对：" + id);
+            }
+        }
+    }
+
+    /**
+     * 时钟由测试控制
+     */
+    private static class ManualClockGenerator extends SnowflakeIdGenerator {
+        private final AtomicLong now = new AtomicLong();
+
+        ManualClockGenerator(long workerId) {
+            super(workerId);
+        }
+
+        @Override
+        protected long currentTimeMillis() {
+            return now.get();
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.sky.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+    private static final long TICK = 1000;
+    private static final int WHEEL_SIZE = 60;
+    private static final long START = 1_760_000_000_123L;
+
+    @Test
+    void firesWithinOneTickOfDeadlineAcrossLevels() {
+        TimingWheel<String, Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, START);
+        //第一层、第二层(1分钟以上)、第三层(1小时以上)
+        long[] delays = {1500, 59_000, 61_000, 3_599_000, 3_601_000, 5 * 3_600_000L};
+        for (long delay : delays) {
+            assertThat(wheel.add("t" + delay, START + delay, START + delay)).isTrue();
+        }
+        Map<String, Long> firedAt = new HashMap<>();
+        for (long now = START; now <= START + 5 * 3_600_000L + TICK; now += TICK) {
+            long at = now;
+            wheel.advance(now, (key, deadline) -> firedAt.put(key, at));
+        }
+
+        assertThat(firedAt).hasSize(delays.length);
+        for (long delay : delays) {
+            long deadline = START + delay;
+            assertThat(firedAt.get("t" + delay)).isBetween(deadline - TICK + 1, deadline + TICK - 1);
+        }
+        assertThat(wheel.size()).isZero();
+    }
+
+    @Test
+    void cancelledAndReplacedTimersDoNotFire() {
+        TimingWheel<String, Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, START);
+        wheel.add("a", START + 5000, 1L);
+        wheel.add("b", START + 120_000, 2L);
+        wheel.add("c", START + 5000, 3L);
+        //同一个key再次添加会替换旧的
+        wheel.add("c", START + 10_000, 4L);
+
+        assertThat(wheel.cancel("a")).isTrue();
+        assertThat(wheel.cancel("b")).isTrue();
+        assertThat(wheel.cancel("b")).isFalse();
+        assertThat(wheel.contains("a")).isFalse();
+        assertThat(wheel.size()).isEqualTo(1);
+
+        List<Long> fired = new ArrayList<>();
+        assertThat(wheel.advance(START + 9000, (key, value) -> fired.add(value))).isZero();
+        assertThat(wheel.advance(START + 200_000, (key, value) -> fired.add(value))).isEqualTo(1);
+        assertThat(fired).containsExactly(4L);
+    }
+
+    @Test
+    void alreadyDueTimerIsRejected() {
+        TimingWheel<String, Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, START);
+
+        assertThat(wheel.add("past", START - 1, 0L)).isFalse();
+        assertThat(wheel.contains("past")).isFalse();
+
+        wheel.advance(START + 10_000, (key, value) -> {
+        });
+        assertThat(wheel.add("within-tick", START + 10_000, 0L)).isFalse();
+    }
+
+    /**
+     * 100万个任务分布在两小时内，取消三分之一，时钟有时逐格走、有时一次跳过几十格
+     * 其余的任务都恰好到期一次，不早于所在格、不晚于推进到的时间，并按格的顺序到期
+     */
+    @Test
+    void millionPendingTimersFireExactlyOnceInOrder() {
+        int timers = 1_000_000;
+        long span = 2 * 3_600_000L;
+        Random random = new Random(42);
+        TimingWheel<Integer, Long> wheel = new TimingWheel<>(TICK, WHEEL_SIZE, START);
+        long[] deadlines = new long[timers];
+        for (int i = 0; i < timers; i++) {
+            deadlines[i] = START + TICK + (long) (random.nextDouble() * span);
+            assertThat(wheel.add(i, deadlines[i], deadlines[i])).isTrue();
+        }
+        assertThat(wheel.size()).isEqualTo(timers);
+        int cancelled = 0;
+        for (int i = 0; i < timers; i += 3) {
+            assertThat(wheel.cancel(i)).isTrue();
+            cancelled++;
+        }
+
+        boolean[] fired = new boolean[timers];
+        int[] duplicates = new int[1];
+        long[] lastBucket = {Long.MIN_VALUE};
+        int[] outOfOrder = new int[1];
+        int[] outOfWindow = new int[1];
+        long end = START + span + 2 * TICK;
+        long now = START;
+        long previous = START;
+        int total = 0;
+        while (previous < end) {
+            long from = previous;
+            long to = now;
+            total += wheel.advance(now, (key, deadline) -> {
+                if (fired[key]) {
+                    duplicates[0]++;
+                }
+                fired[key] = true;
+                long bucket = deadline / TICK;
+                if (bucket < lastBucket[0]) {
+                    outOfOrder[0]++;
+                }
+                lastBucket[0] = bucket;
+                //在上一次推进之后才进入所在的格，且不晚于本次推进的时间
+                if (bucket * TICK <= from || bucket * TICK > to) {
+                    outOfWindow[0]++;
+                }
+            });
+            previous = now;
+            //大多数时候逐格推进，偶尔停顿后一次跳过最多90格
+            now = Math.min(end, now + (random.nextInt(20) == 0 ? TICK * (1 + random.nextInt(90)) : TICK));
+        }
+
+        assertThat(duplicates[0]).isZero();
+        assertThat(outOfOrder[0]).isZero();
+        assertThat(outOfWindow[0]).isZero();
+        assertThat(total).isEqualTo(timers - cancelled);
+        for (int i = 0; i < timers; i++) {
+            if (fired[i] == (i % 3 == 0)) {
+                throw new AssertionError("timer " + i + (fired[i] ? " fired after cancel" : " never fired"));
+            }
+        }
+        assertThat(wheel.size()).isZero();
+    }
+}
@@ -0,0 +1,268 @@
+package com.sky.utils;
+
+import com.sky.properties.WeChatProperties;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+import org.apache.http.conn.DnsResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * 用本地的https服务代替微信支付接口：自签名的tls证书，响应用生成的平台私钥签名，和微信支付的做法一样
+ * 客户端只对*.mch.weixin.qq.com签名、验签，测试里把api.mch.weixin.qq.com解析到本地
+ * 证书和私钥都在测试时用keytool生成，不放进仓库
+ */
+class WeChatPayUtilTest {
+
+    private static final String PASSWORD = "changeit";
+    private static final String HOST = "api.mch.weixin.qq.com";
+    private static final String RESPONSE = "{\"prepay_id\":\"wx201410272009395522657a690389285100\"}";
+
+    @TempDir
+    Path dir;
+
+    private HttpsServer server;
+    private String url;
+    //平台证书，stand-in用对应的私钥签名响应
+    private volatile KeyStore.PrivateKeyEntry platform;
+    private String oldTrustStore;
+    private String oldTrustStorePassword;
+
+    private final long[] now = {1_000_000L};
+    private WeChatPayUtil weChatPayUtil;
+    private File privateKeyFile;
+    private File certFile;
+    private int writes;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        KeyStore serverStore = generate("server", "CN=" + HOST, "SAN=dns:" + HOST);
+        //客户端信任stand-in的自签名证书
+        KeyStore trustStore = KeyStore.getInstance("PKCS12");
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("server", serverStore.getCertificate("server"));
+        File trustFile = dir.resolve("trust.p12").toFile();
+        try (FileOutputStream out = new FileOutputStream(trustFile)) {
+            trustStore.store(out, PASSWORD.toCharArray());
+        }
+        oldTrustStore = System.getProperty("javax.net.ssl.trustStore");
+        oldTrustStorePassword = System.getProperty("javax.net.ssl.trustStorePassword");
+        System.setProperty("javax.net.ssl.trustStore", trustFile.getPath());
+        System.setProperty("javax.net.ssl.trustStorePassword", PASSWORD);
+
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(serverStore, PASSWORD.toCharArray());
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+        server = HttpsServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setHttpsConfigurator(new HttpsConfigurator(sslContext));
+        server.createContext("/", exchange -> {
+            readAll(exchange.getRequestBody());
+            byte[] body = RESPONSE.getBytes(StandardCharsets.UTF_8);
+            KeyStore.PrivateKeyEntry signer = platform;
+            String timestamp = String.valueOf(System.currentTimeMillis() / 1000);
+            String nonce = UUID.randomUUID().toString().replace("-", "");
+            Headers headers = exchange.getResponseHeaders();
+            headers.add("Content-Type", "application/json");
+            headers.add("Request-ID", nonce);
+            headers.add("Wechatpay-Serial", serial(signer));
+            headers.add("Wechatpay-Timestamp", timestamp);
+            headers.add("Wechatpay-Nonce", nonce);
+            headers.add("Wechatpay-Signature", sign(signer.getPrivateKey(), timestamp + "\n" + nonce + "\n" + RESPONSE + "\n"));
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        url = "https://" + HOST + ":" + server.getAddress().getPort() + "/v3/pay/transactions/jsapi";
+
+        platform = platform("platform-a");
+        privateKeyFile = dir.resolve("apiclient_key.pem").toFile();
+        certFile = dir.resolve("platform_cert.pem").toFile();
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        write(privateKeyFile, pem("PRIVATE KEY", generator.generateKeyPair().getPrivate().getEncoded()));
+        writeCert(platform);
+
+        WeChatProperties weChatProperties = new WeChatProperties();
+        weChatProperties.setMchid("1900000000");
+        weChatProperties.setMchSerialNo("ABCDEF");
+        weChatProperties.setPrivateKeyFilePath(privateKeyFile.getPath());
+        weChatProperties.setWeChatPayCertFilePath(certFile.getPath());
+        weChatPayUtil = new WeChatPayUtil() {
+            @Override
+            protected long currentTimeMillis() {
+                return now[0];
+            }
+
+            @Override
+            protected DnsResolver dnsResolver() {
+                return host -> {
+                    assertThat(host).isEqualTo(HOST);
+                    return new InetAddress[]{InetAddress.getLoopbackAddress()};
+                };
+            }
+        };
+        ReflectionTestUtils.setField(weChatPayUtil, "weChatProperties", weChatProperties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        weChatPayUtil.close();
+        server.stop(0);
+        restore("javax.net.ssl.trustStore", oldTrustStore);
+        restore("javax.net.ssl.trustStorePassword", oldTrustStorePassword);
+    }
+
+    @Test
+    void verifiesSignedResponsesFromStandIn() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertThat(weChatPayUtil.post(url, "{}")).isEqualTo(RESPONSE);
+        }
+    }
+
+    @Test
+    void keepsOldClientWhenRotatedCertIsHalfWritten() throws Exception {
+        assertThat(weChatPayUtil.post(url, "{}")).isEqualTo(RESPONSE);
+
+        //证书文件正在被替换，只写了一半
+        String pem = new String(Files.readAllBytes(certFile.toPath()), StandardCharsets.US_ASCII);
+        write(certFile, pem.substring(0, pem.length() / 2));
+        now[0] += TimeUnit.MINUTES.toMillis(1);
+        assertThat(weChatPayUtil.post(url, "{}")).isEqualTo(RESPONSE);
+
+        //写完新证书、平台也换了签名私钥，一分钟内还用原来的客户端，不会每次请求都去读文件
+        KeyStore.PrivateKeyEntry rotated = platform("platform-b");
+        writeCert(rotated);
+        platform = rotated;
+        now[0] += 1000;
+        assertThatThrownBy(() -> weChatPayUtil.post(url, "{}")).isInstanceOf(Exception.class);
+
+        //下一个检查周期换成新证书
+        now[0] += TimeUnit.MINUTES.toMillis(1);
+        assertThat(weChatPayUtil.post(url, "{}")).isEqualTo(RESPONSE);
+    }
+
+    @Test
+    void keepsOldClientWhenKeyFileIsMissing() throws Exception {
+        assertThat(weChatPayUtil.post(url, "{}")).isEqualTo(RESPONSE);
+
+        assertThat(privateKeyFile.delete()).isTrue();
+        now[0] += TimeUnit.MINUTES.toMillis(1);
+        assertThat(weChatPayUtil.post(url, "{}")).isEqualTo(RESPONSE);
+    }
+
+    @Test
+    void firstClientStillFailsWithoutKeyFile() {
+        assertThat(privateKeyFile.delete()).isTrue();
+
+        assertThatThrownBy(() -> weChatPayUtil.post(url, "{}")).isInstanceOf(IOException.class);
+    }
+
+    private KeyStore.PrivateKeyEntry platform(String alias) throws Exception {
+        KeyStore store = generate(alias, "CN=" + alias, null);
+        return (KeyStore.PrivateKeyEntry) store.getEntry(alias, new KeyStore.PasswordProtection(PASSWORD.toCharArray()));
+    }
+
+    private void writeCert(KeyStore.PrivateKeyEntry entry) throws Exception {
+        write(certFile, pem("CERTIFICATE", entry.getCertificate().getEncoded()));
+    }
+
+    /**
+     * keytool生成RSA密钥对和自签名证书
+     */
+    private KeyStore generate(String alias, String dname, String extension) throws Exception {
+        File file = dir.resolve(alias + ".p12").toFile();
+        String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+        ProcessBuilder builder = extension == null
+                ? new ProcessBuilder(keytool, "-genkeypair", "-alias", alias, "-keyalg", "RSA", "-keysize", "2048",
+                        "-dname", dname, "-validity", "30", "-storetype", "PKCS12", "-keystore", file.getPath(),
+                        "-storepass", PASSWORD, "-keypass", PASSWORD)
+                : new ProcessBuilder(keytool, "-genkeypair", "-alias", alias, "-keyalg", "RSA", "-keysize", "2048",
+                        "-dname", dname, "-validity", "30", "-ext", extension, "-storetype", "PKCS12",
+                        "-keystore", file.getPath(), "-storepass", PASSWORD, "-keypass", PASSWORD);
+        Process process = builder.redirectErrorStream(true).start();
+        String output = new String(readAll(process.getInputStream()), StandardCharsets.UTF_8);
+        assertThat(process.waitFor(60, TimeUnit.SECONDS)).isTrue();
+        assertThat(process.exitValue()).as(output).isZero();
+        KeyStore store = KeyStore.getInstance("PKCS12");
+        try (FileInputStream in = new FileInputStream(file)) {
+            store.load(in, PASSWORD.toCharArray());
+        }
+        return store;
+    }
+
+    private static String serial(KeyStore.PrivateKeyEntry entry) {
+        return ((X509Certificate) entry.getCertificate()).getSerialNumber().toString(16).toUpperCase();
+    }
+
+    private static String sign(PrivateKey privateKey, String message) throws IOException {
+        try {
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(privateKey);
+            signature.update(message.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(signature.sign());
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static String pem(String type, byte[] der) {
+        return "-----BEGIN " + type + "-----\n"
+                + Base64.getMimeEncoder(64, new byte[]{'\n'}).encodeToString(der)
+                + "\n-----END " + type + "-----\n";
+    }
+
+    private void write(File file, String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.US_ASCII));
+        //文件修改时间的精度可能只有1秒，每次写入后显式改成不同的时间
+        assertThat(file.setLastModified(System.currentTimeMillis() + ++writes * 10_000L)).isTrue();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    private static void restore(String key, String value) {
+        if (value == null) {
+            System.clearProperty(key);
+        } else {
+            System.setProperty(key, value);
+        }
+    }
+}
@@ -27,4 +27,10 @@ public class OrdersPageQueryDTO implements Serializable {
 
     private Long userId;
 
+    //游标分页：上一页最后一条订单的id
+    private Long lastId;
+
+    //lastId对应订单的下单时间，由服务端查出
+    private LocalDateTime lastOrderTime;
+
 }
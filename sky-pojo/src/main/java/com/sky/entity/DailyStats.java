@@ -0,0 +1,43 @@
+package com.sky.entity;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 每日统计，报表只读这张表，一天一行
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyStats implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //日期，订单按下单日期、用户按注册日期统计
+    private LocalDate statDate;
+
+    //营业额，已完成订单的金额
+    private BigDecimal turnover;
+
+    //订单数
+    private Integer orderCount;
+
+    //有效订单数，即已完成订单数
+    private Integer validOrderCount;
+
+    //已取消订单数
+    private Integer cancelledOrderCount;
+
+    //新增用户数
+    private Integer newUserCount;
+
+    private LocalDateTime updateTime;
+}
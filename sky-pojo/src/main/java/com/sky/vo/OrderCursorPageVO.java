@@ -0,0 +1,28 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * 用户端历史订单的游标分页结果，不查总数，用hasMore和lastId翻下一页
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderCursorPageVO implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    //当前页订单
+    private List<OrderVO> records;
+    //是否还有下一页
+    private Boolean hasMore;
+    //本页最后一条订单的id，作为下一页的lastId，本页为空时为null
+    private Long lastId;
+}
@@ -0,0 +1,36 @@
+package com.sky.vo;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 异步下单的处理结果
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSubmitStatusVO implements Serializable {
+
+    /**
+     * 处理状态 0排队中 1下单成功 2下单失败
+     */
+    public static final Integer PENDING = 0;
+    public static final Integer SUCCESS = 1;
+    public static final Integer FAILED = 2;
+
+    private static final long serialVersionUID = 1L;
+
+    //订单号
+    private String orderNumber;
+    //处理状态
+    private Integer status;
+    //订单id，下单成功后才有
+    private Long id;
+    //失败原因
+    private String msg;
+}
@@ -1,7 +1,6 @@
 package com.sky.aspect;
 
 import com.sky.annotation.AutoFill;
-import com.sky.constant.AutoFillConstant;
 import com.sky.context.BaseContext;
 import com.sky.enumeration.OperationType;
 import lombok.extern.slf4j.Slf4j;
@@ -12,8 +11,8 @@ import org.aspectj.lang.annotation.Pointcut;
 import org.aspectj.lang.reflect.MethodSignature;
 import org.springframework.stereotype.Component;
 
-import java.lang.reflect.Method;
 import java.time.LocalDateTime;
+import java.util.Collection;
 
 /**
  * 自定义切面，实现公共字段自动填充
@@ -48,7 +47,6 @@ public class AutoFillAspect {
      */
     @Before("autoFillPointCut()") //定义在什么方法前
     public void autoFill(JoinPoint joinPoint){//joinPoint是什么？？
-        log.info("开始测试公共字段自动填充");
         //先获取当前被拦截的方法的数据库操作类型，是枚举类型中哪个
         MethodSignature methodSignature = (MethodSignature) joinPoint.getSignature();//方法签名对象
         /**
@@ -65,42 +63,39 @@ public class AutoFillAspect {
         OperationType operationType = autoFill.value();//获得数据库操作类型
         //获取被拦截方法的参数，实体对象
         Object[] args= joinPoint.getArgs();//获得了所有的参数
-        if(args==null || args.length == 0){//防止空指针
+        if(args==null || args.length == 0 || args[0] == null){//防止空指针
             return;
         }
-        Object obj = args[0];
-        //为实体对象的属性来统一赋值，通过反射来赋值
+        //为实体对象的属性来统一赋值，setter按实体类缓存
         LocalDateTime localDateTime = LocalDateTime.now();
         Long currentId = BaseContext.getCurrentId();
-        if(operationType==OperationType.INSERT){
-            //为4个字段赋值，通过反射赋值
-            try {
-                Method setCreateTime = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_CREATE_TIME,LocalDateTime.class);
-                Method setCreateUser = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_CREATE_USER,Long.class);
-                Method setUpdateTime = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME,LocalDateTime.class);
-                Method setUpdateUser = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER,Long.class);
-                //通过反射为对象属性赋值
-                setCreateTime.invoke(obj,localDateTime);
-                setCreateUser.invoke(obj,currentId);
-                setUpdateTime.invoke(obj,localDateTime);
-                setUpdateUser.invoke(obj,currentId);
-            } catch (Exception e) {
-                e.printStackTrace();
+        Object arg = args[0];
+        if (arg instanceof Collection) {
+            //批量插入、更新时参数是实体集合
+            for (Object obj : (Collection<?>) arg) {
+                fill(obj, operationType, localDateTime, currentId);
             }
-
-        }else if(operationType==OperationType.UPDATE){
-            //为2个字段赋值，通过反射赋值
-            try {
-                Method setUpdateTime = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_TIME,LocalDateTime.class);
-                Method setUpdateUser = obj.getClass().getDeclaredMethod(AutoFillConstant.SET_UPDATE_USER,Long.class);
-                //通过反射为对象属性赋值
-                setUpdateTime.invoke(obj,localDateTime);
-                setUpdateUser.invoke(obj,currentId);
-            } catch (Exception e) {
-                e.printStackTrace();
+        } else if (arg instanceof Object[]) {
+            for (Object obj : (Object[]) arg) {
+                fill(obj, operationType, localDateTime, currentId);
             }
-
+        } else {
+            fill(arg, operationType, localDateTime, currentId);
         }
+        log.debug("公共字段自动填充：{} {}", operationType, methodSignature.getName());
+    }
 
+    private void fill(Object obj, OperationType operationType, LocalDateTime localDateTime, Long currentId) {
+        if (obj == null) {
+            return;
+        }
+        AutoFillSetters setters = AutoFillSetters.of(obj.getClass());
+        if(operationType==OperationType.INSERT){
+            //为4个字段赋值
+            setters.fillInsert(obj, localDateTime, currentId);
+        }else if(operationType==OperationType.UPDATE){
+            //为2个字段赋值
+            setters.fillUpdate(obj, localDateTime, currentId);
+        }
     }
 }
@@ -0,0 +1,85 @@
+package com.sky.aspect;
+
+import com.sky.constant.AutoFillConstant;
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 实体类公共字段的setter，每个实体类只解析一次
+ * setter通过LambdaMetafactory生成BiConsumer，调用开销和直接调用setter差不多，不再每次反射查找、invoke
+ */
+@Slf4j
+final class AutoFillSetters {
+
+    private static final Map<Class<?>, AutoFillSetters> CACHE = new ConcurrentHashMap<>();
+
+    private final BiConsumer<Object, LocalDateTime> setCreateTime;
+    private final BiConsumer<Object, Long> setCreateUser;
+    private final BiConsumer<Object, LocalDateTime> setUpdateTime;
+    private final BiConsumer<Object, Long> setUpdateUser;
+
+    private AutoFillSetters(Class<?> entityClass) {
+        this.setCreateTime = setter(entityClass, AutoFillConstant.SET_CREATE_TIME, LocalDateTime.class);
+        this.setCreateUser = setter(entityClass, AutoFillConstant.SET_CREATE_USER, Long.class);
+        this.setUpdateTime = setter(entityClass, AutoFillConstant.SET_UPDATE_TIME, LocalDateTime.class);
+        this.setUpdateUser = setter(entityClass, AutoFillConstant.SET_UPDATE_USER, Long.class);
+    }
+
+    static AutoFillSetters of(Class<?> entityClass) {
+        return CACHE.computeIfAbsent(entityClass, AutoFillSetters::new);
+    }
+
+    void fillInsert(Object entity, LocalDateTime now, Long currentId) {
+        setCreateTime.accept(entity, now);
+        setCreateUser.accept(entity, currentId);
+        fillUpdate(entity, now, currentId);
+    }
+
+    void fillUpdate(Object entity, LocalDateTime now, Long currentId) {
+        setUpdateTime.accept(entity, now);
+        setUpdateUser.accept(entity, currentId);
+    }
+
+    /**
+     * 生成setter，实体类没有这个字段时返回空操作
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> BiConsumer<Object, T> setter(Class<?> entityClass, String name, Class<T> type) {
+        MethodHandle target;
+        try {
+            target = MethodHandles.publicLookup().findVirtual(entityClass, name, MethodType.methodType(void.class, type));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            log.warn("{}没有公共字段方法{}，跳过自动填充", entityClass.getName(), name);
+            return (entity, value) -> {
+            };
+        }
+        try {
+            CallSite callSite = LambdaMetafactory.metafactory(MethodHandles.lookup(), "accept",
+                    MethodType.methodType(BiConsumer.class),
+                    MethodType.methodType(void.class, Object.class, Object.class),
+                    target,
+                    MethodType.methodType(void.class, entityClass, type));
+            return (BiConsumer<Object, T>) callSite.getTarget().invokeExact();
+        } catch (Throwable e) {
+            //实体类和切面不在同一个类加载器等情况下生成失败，退回到直接调用MethodHandle
+            log.debug("{}.{}生成setter失败，使用MethodHandle", entityClass.getName(), name, e);
+            MethodHandle handle = target.asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return (entity, value) -> {
+                try {
+                    handle.invokeExact(entity, (Object) value);
+                } catch (Throwable t) {
+                    throw new IllegalStateException(t);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.sky.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.jsontype.BasicPolymorphicTypeValidator;
+import com.fasterxml.jackson.databind.jsontype.PolymorphicTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.sky.json.JacksonObjectMapper;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * redis value序列化器，可选json或smile(二进制json)格式，超过阈值用lz4压缩
+ *
+ * 数据格式：[魔数][版本][格式][标记][原始长度(仅压缩时)][数据]
+ * 不以魔数开头的数据当作旧的jdk序列化数据读取，保证滚动发布期间旧缓存还能读
+ */
+public class CacheValueSerializer implements RedisSerializer<Object> {
+
+    public static final String FORMAT_JDK = "jdk";
+    public static final String FORMAT_JSON = "json";
+    public static final String FORMAT_SMILE = "smile";
+
+    //jdk序列化数据以0xACED开头，魔数不能与之冲突
+    private static final byte MAGIC = (byte) 0xC5;
+    private static final byte VERSION = 1;
+    private static final byte CODEC_JSON = 1;
+    private static final byte CODEC_SMILE = 2;
+    private static final byte FLAG_LZ4 = 1;
+    private static final int HEADER_LENGTH = 4;
+
+    private static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+    private static final LZ4FastDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
+
+    private final JdkSerializationRedisSerializer jdkSerializer = new JdkSerializationRedisSerializer();
+    private final ObjectMapper jsonMapper = typedMapper(new JacksonObjectMapper());
+    private final ObjectMapper smileMapper = typedMapper(new JacksonObjectMapper(new SmileFactory()));
+
+    private final String format;
+    private final int compressThreshold;
+
+    public CacheValueSerializer(String format, int compressThreshold) {
+        if (!FORMAT_JDK.equals(format) && !FORMAT_JSON.equals(format) && !FORMAT_SMILE.equals(format)) {
+            throw new IllegalArgumentException("不支持的redis序列化格式：" + format);
+        }
+        this.format = format;
+        this.compressThreshold = compressThreshold;
+    }
+
+    /**
+     * 缓存里存的是List<DishVO>这类对象，需要记录类型才能反序列化回来
+     * 只允许项目自己的类和jdk常用类型，防止反序列化任意类
+     */
+    private static ObjectMapper typedMapper(ObjectMapper mapper) {
+        PolymorphicTypeValidator validator = BasicPolymorphicTypeValidator.builder()
+                .allowIfSubType("com.sky.")
+                .allowIfSubType("java.util.")
+                .allowIfSubType("java.math.")
+                .allowIfSubType("java.time.")
+                .allowIfSubType("java.lang.")
+                .build();
+        mapper.activateDefaultTyping(validator, ObjectMapper.DefaultTyping.NON_FINAL, JsonTypeInfo.As.PROPERTY);
+        return mapper;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (FORMAT_JDK.equals(format)) {
+            return jdkSerializer.serialize(value);
+        }
+
+        byte codec = FORMAT_SMILE.equals(format) ? CODEC_SMILE : CODEC_JSON;
+        byte[] data;
+        try {
+            data = (codec == CODEC_SMILE ? smileMapper : jsonMapper).writeValueAsBytes(value);
+        } catch (Exception e) {
+            throw new SerializationException("redis value序列化失败", e);
+        }
+
+        if (compressThreshold <= 0 || data.length <= compressThreshold) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + data.length);
+            buffer.put(MAGIC).put(VERSION).put(codec).put((byte) 0).put(data);
+            return buffer.array();
+        }
+
+        byte[] compressed = COMPRESSOR.compress(data);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + 4 + compressed.length);
+        buffer.put(MAGIC).put(VERSION).put(codec).put(FLAG_LZ4).putInt(data.length).put(compressed);
+        return buffer.array();
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            //旧的jdk序列化数据
+            return jdkSerializer.deserialize(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH || bytes[1] != VERSION) {
+            throw new SerializationException("无法识别的redis value版本：" + (bytes.length > 1 ? bytes[1] : -1));
+        }
+
+        byte codec = bytes[2];
+        byte flags = bytes[3];
+        byte[] data;
+        int offset;
+        int length;
+        if ((flags & FLAG_LZ4) != 0) {
+            int originalLength = ByteBuffer.wrap(bytes, HEADER_LENGTH, 4).getInt();
+            data = new byte[originalLength];
+            DECOMPRESSOR.decompress(bytes, HEADER_LENGTH + 4, data, 0, originalLength);
+            offset = 0;
+            length = originalLength;
+        } else {
+            data = bytes;
+            offset = HEADER_LENGTH;
+            length = bytes.length - HEADER_LENGTH;
+        }
+
+        try {
+            if (codec == CODEC_SMILE) {
+                return smileMapper.readValue(data, offset, length, Object.class);
+            } else if (codec == CODEC_JSON) {
+                return jsonMapper.readValue(data, offset, length, Object.class);
+            }
+        } catch (Exception e) {
+            throw new SerializationException("redis value反序列化失败", e);
+        }
+        throw new SerializationException("无法识别的redis value格式：" + codec);
+    }
+}
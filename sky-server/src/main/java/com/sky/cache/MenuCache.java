@@ -0,0 +1,210 @@
+package com.sky.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sky.constant.CacheConstant;
+import com.sky.properties.MenuCacheProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * C端菜单二级缓存：一级是本机的Caffeine，二级是redis
+ * 管理端修改菜品、套餐后通过redis发布订阅通知所有节点删除本地缓存
+ * 每个前缀写过的key记录在一个set里，按前缀清理时只删set里的key，不再用KEYS扫描整个库
+ */
+@Component
+@Slf4j
+public class MenuCache implements MessageListener, MeterBinder {
+
+    //失效消息中以此结尾的表示按前缀删除
+    private static final String PREFIX_WILDCARD = "*";
+
+    //按前缀清理时每条DEL、SREM命令最多带的key数量
+    private static final int EVICT_BATCH_SIZE = 500;
+
+    private final RedisTemplate redisTemplate;
+    private final MenuCacheProperties menuCacheProperties;
+    private final Cache<String, Object> localCache;
+    private final Map<String, CacheCounters> countersMap = new ConcurrentHashMap<>();
+
+    public MenuCache(RedisTemplate redisTemplate, MenuCacheProperties menuCacheProperties) {
+        this.redisTemplate = redisTemplate;
+        this.menuCacheProperties = menuCacheProperties;
+        this.localCache = Caffeine.newBuilder()
+                .maximumSize(menuCacheProperties.getMaximumSize())
+                .expireAfterWrite(menuCacheProperties.getExpireSeconds(), TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * 依次查本地缓存、redis，都没有再查数据库并回填两级缓存
+     * @param prefix key前缀，如CacheConstant.DISH_KEY_PREFIX
+     * @param id 分类id
+     * @param loader 查数据库
+     * @return
+     */
+    public <T> T get(String prefix, Object id, Supplier<T> loader) {
+        CacheCounters counters = counters(prefix);
+        counters.requests.increment();
+        Object value = localCache.get(prefix + id, key -> {
+            counters.localMisses.increment();
+            Object cached = redisTemplate.opsForValue().get(key);
+            if (cached != null) {
+                return cached;
+            }
+            counters.redisMisses.increment();
+            Object loaded = loader.get();
+            if (loaded != null) {
+                //先写值再记索引，redis里的key都能按索引清理
+                redisTemplate.opsForValue().set(key, loaded);
+                redisTemplate.execute((RedisCallback<Long>) connection ->
+                        connection.sAdd(raw(indexKey(prefix)), raw(key)));
+            }
+            return loaded;
+        });
+        return (T) value;
+    }
+
+    /**
+     * 删除某一个key的两级缓存，并通知其他节点
+     * @param prefix
+     * @param id
+     */
+    public void evict(String prefix, Object id) {
+        String key = prefix + id;
+        redisTemplate.delete(key);
+        redisTemplate.execute((RedisCallback<Long>) connection -> connection.sRem(raw(indexKey(prefix)), raw(key)));
+        publish(key);
+    }
+
+    /**
+     * 按前缀删除两级缓存，并通知其他节点
+     * @param prefix
+     */
+    public void evictAll(String prefix) {
+        //先取出索引里的key，再分批DEL、SREM，每条命令只操作声明的key，集群和按key路由的代理下都能用
+        byte[] indexKey = raw(indexKey(prefix));
+        Set<byte[]> members = (Set<byte[]>) redisTemplate.execute((RedisCallback<Set<byte[]>>) connection ->
+                connection.sMembers(indexKey));
+        List<byte[]> keys = members == null ? Collections.emptyList() : new ArrayList<>(members);
+        for (int i = 0; i < keys.size(); i += EVICT_BATCH_SIZE) {
+            byte[][] batch = keys.subList(i, Math.min(keys.size(), i + EVICT_BATCH_SIZE)).toArray(new byte[0][]);
+            redisTemplate.execute((RedisCallback<Long>) connection -> {
+                connection.del(batch);
+                //只删除取出的成员，清理期间新写入的key还留在索引里
+                return connection.sRem(indexKey, batch);
+            });
+        }
+        log.info("清理菜单缓存{}，共{}个key", prefix, keys.size());
+        publish(prefix + PREFIX_WILDCARD);
+    }
+
+    /**
+     * 本地缓存的命中、未命中、淘汰统计
+     * @return
+     */
+    public CacheStats stats() {
+        return localCache.stats();
+    }
+
+    public long size() {
+        return localCache.estimatedSize();
+    }
+
+    /**
+     * 暴露监控指标：本地缓存的Caffeine统计，以及按前缀区分的请求数、本地未命中数、redis未命中数
+     * 命中率 = 1 - 未命中数 / 请求数
+     * @param registry
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, localCache, "menuCache");
+        for (String prefix : Arrays.asList(CacheConstant.DISH_KEY_PREFIX, CacheConstant.SETMEAL_KEY_PREFIX)) {
+            CacheCounters counters = counters(prefix);
+            Tags tags = Tags.of("cache", prefix);
+            FunctionCounter.builder("menu.cache.requests", counters.requests, LongAdder::sum)
+                    .tags(tags)
+                    .description("菜单缓存请求数")
+                    .register(registry);
+            FunctionCounter.builder("menu.cache.misses", counters.localMisses, LongAdder::sum)
+                    .tags(tags.and("level", "local"))
+                    .description("本地缓存未命中数")
+                    .register(registry);
+            FunctionCounter.builder("menu.cache.misses", counters.redisMisses, LongAdder::sum)
+                    .tags(tags.and("level", "redis"))
+                    .description("redis未命中、查数据库的次数")
+                    .register(registry);
+        }
+    }
+
+    private CacheCounters counters(String prefix) {
+        return countersMap.computeIfAbsent(prefix, key -> new CacheCounters());
+    }
+
+    private String indexKey(String prefix) {
+        return CacheConstant.KEY_INDEX_PREFIX + prefix;
+    }
+
+    private static byte[] raw(String key) {
+        return RedisSerializer.string().serialize(key);
+    }
+
+    private void publish(String pattern) {
+        //先删自己的，再通知别的节点
+        invalidateLocal(pattern);
+        redisTemplate.convertAndSend(menuCacheProperties.getChannel(), pattern);
+    }
+
+    private void invalidateLocal(String pattern) {
+        if (pattern.endsWith(PREFIX_WILDCARD)) {
+            String prefix = pattern.substring(0, pattern.length() - PREFIX_WILDCARD.length());
+            localCache.asMap().keySet().removeIf(key -> key.startsWith(prefix));
+        } else {
+            localCache.invalidate(pattern);
+        }
+    }
+
+    /**
+     * 收到其他节点(包括自己)发布的失效消息
+     * @param message
+     * @param pattern
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Object body = redisTemplate.getValueSerializer().deserialize(message.getBody());
+        if (body == null) {
+            return;
+        }
+        log.debug("收到菜单缓存失效消息：{}", body);
+        invalidateLocal(body.toString());
+    }
+
+    private static class CacheCounters {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder localMisses = new LongAdder();
+        private final LongAdder redisMisses = new LongAdder();
+    }
+}
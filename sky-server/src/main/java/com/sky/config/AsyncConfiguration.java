@@ -0,0 +1,25 @@
+package com.sky.config;
+
+import com.sky.context.ContextTaskDecorator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.annotation.EnableAsync;
+
+/**
+ * 异步任务配置
+ * spring boot自动配置的applicationTaskExecutor会使用容器里的TaskDecorator，@Async方法里也能拿到当前用户id
+ * 自己创建线程池时用BaseContext.wrap包装任务
+ */
+@Configuration
+@EnableAsync
+@Slf4j
+public class AsyncConfiguration {
+
+    @Bean
+    public TaskDecorator contextTaskDecorator() {
+        log.info("注册异步任务上下文传递装饰器");
+        return new ContextTaskDecorator();
+    }
+}
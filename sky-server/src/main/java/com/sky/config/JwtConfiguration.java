@@ -0,0 +1,27 @@
+package com.sky.config;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.interceptor.JwtTokenVerifier;
+import com.sky.properties.JwtProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * jwt令牌校验器，管理端、用户端各一个
+ * 管理端的接口拦截器和websocket握手共用同一个校验器，同一个令牌只需要验签一次
+ */
+@Configuration
+public class JwtConfiguration {
+
+    @Bean
+    public JwtTokenVerifier adminTokenVerifier(JwtProperties jwtProperties) {
+        return new JwtTokenVerifier(jwtProperties.getAdminSecretKey(), JwtClaimsConstant.EMP_ID,
+                jwtProperties.getVerifiedCacheSize());
+    }
+
+    @Bean
+    public JwtTokenVerifier userTokenVerifier(JwtProperties jwtProperties) {
+        return new JwtTokenVerifier(jwtProperties.getUserSecretKey(), JwtClaimsConstant.USER_ID,
+                jwtProperties.getVerifiedCacheSize());
+    }
+}
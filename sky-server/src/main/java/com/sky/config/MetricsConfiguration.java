@@ -0,0 +1,57 @@
+package com.sky.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监控指标配置
+ * http请求(http.server.requests)、redis命令(lettuce.command.*)、jvm gc和内存分配(jvm.gc.*)由spring boot自动采集，
+ * 这里补充druid连接池的指标；菜单缓存、sql语句的指标由MenuCache、SqlStatsInterceptor自己注册
+ */
+@Configuration
+@Slf4j
+public class MetricsConfiguration {
+
+    /**
+     * druid连接池：活跃连接、空闲连接、等待线程数，以及获取连接时等待的次数和时间
+     * @param dataSource
+     * @return
+     */
+    @Bean
+    public MeterBinder druidMetrics(DruidDataSource dataSource) {
+        log.info("注册druid连接池监控指标");
+        return registry -> {
+            Gauge.builder("druid.connections.active", dataSource, DruidDataSource::getActiveCount)
+                    .description("正在使用的连接数")
+                    .register(registry);
+            Gauge.builder("druid.connections.idle", dataSource, DruidDataSource::getPoolingCount)
+                    .description("池中空闲的连接数")
+                    .register(registry);
+            Gauge.builder("druid.connections.max", dataSource, DruidDataSource::getMaxActive)
+                    .description("最大连接数")
+                    .register(registry);
+            Gauge.builder("druid.connections.pending", dataSource, DruidDataSource::getWaitThreadCount)
+                    .description("正在等待连接的线程数")
+                    .register(registry);
+            FunctionCounter.builder("druid.connections.borrowed", dataSource, DruidDataSource::getConnectCount)
+                    .description("获取连接的总次数")
+                    .register(registry);
+            FunctionCounter.builder("druid.connections.errors", dataSource, DruidDataSource::getConnectErrorCount)
+                    .description("获取连接失败的次数")
+                    .register(registry);
+            //池里没有空闲连接时需要等待，次数和累计等待时间
+            FunctionTimer.builder("druid.connections.wait", dataSource,
+                            DruidDataSource::getNotEmptyWaitCount, DruidDataSource::getNotEmptyWaitMillis, TimeUnit.MILLISECONDS)
+                    .description("等待空闲连接的时间")
+                    .register(registry);
+        };
+    }
+}
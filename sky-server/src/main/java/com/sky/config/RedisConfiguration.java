@@ -1,10 +1,24 @@
 package com.sky.config;
 
+import com.sky.cache.CacheValueSerializer;
+import com.sky.cache.MenuCache;
+import com.sky.constant.ShopConstant;
+import com.sky.order.PriceIndex;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.properties.OrderPushProperties;
+import com.sky.properties.RedisCodecProperties;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.service.impl.ShopServiceImpl;
+import com.sky.websocket.OrderPushHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 @Configuration
@@ -13,14 +27,60 @@ public class RedisConfiguration {
 
     @Bean //这个是方法的注解，方法返回的对象交给容器管理
     //像@Component注解，这是让Spring自己去new一个对象出来
-    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory) {
+    public RedisTemplate redisTemplate(RedisConnectionFactory redisConnectionFactory,
+                                       CacheValueSerializer cacheValueSerializer) {
         log.info("redisTemplate创建呢～");
         RedisTemplate redisTemplate= new RedisTemplate();
         // 设置连接工厂对象
         redisTemplate.setConnectionFactory(redisConnectionFactory);
         // 设置redis key的序列化器
         redisTemplate.setKeySerializer(new StringRedisSerializer());
-//        redisTemplate.setValueSerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        // 设置redis value的序列化器，代替默认的jdk序列化
+        redisTemplate.setValueSerializer(cacheValueSerializer);
+        redisTemplate.setHashValueSerializer(cacheValueSerializer);
         return redisTemplate;
     }
+
+    /**
+     * redis value序列化器，格式和压缩阈值可配置
+     */
+    @Bean
+    public CacheValueSerializer cacheValueSerializer(RedisCodecProperties redisCodecProperties) {
+        log.info("redis value序列化格式：{}，压缩阈值：{}", redisCodecProperties.getFormat(), redisCodecProperties.getCompressThreshold());
+        return new CacheValueSerializer(redisCodecProperties.getFormat(), redisCodecProperties.getCompressThreshold());
+    }
+
+    /**
+     * Spring Cache(@Cacheable)写入redis时也使用同样的序列化器
+     */
+    @Bean
+    public RedisCacheConfiguration redisCacheConfiguration(CacheValueSerializer cacheValueSerializer) {
+        return RedisCacheConfiguration.defaultCacheConfig()
+                .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(cacheValueSerializer));
+    }
+
+    /**
+     * redis消息监听容器，订阅菜单缓存失效消息、店铺营业状态变更消息、新订单提醒、每日统计重算通知
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory redisConnectionFactory,
+                                                                       MenuCache menuCache,
+                                                                       PriceIndex priceIndex,
+                                                                       ShopServiceImpl shopService,
+                                                                       OrderPushHandler orderPushHandler,
+                                                                       DailyStatsRecorder dailyStatsRecorder,
+                                                                       MenuCacheProperties menuCacheProperties,
+                                                                       OrderPushProperties orderPushProperties) {
+        log.info("订阅菜单缓存失效频道：{}", menuCacheProperties.getChannel());
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(redisConnectionFactory);
+        container.addMessageListener(menuCache, new ChannelTopic(menuCacheProperties.getChannel()));
+        // 菜单有变化时价格索引也重新加载
+        container.addMessageListener(priceIndex, new ChannelTopic(menuCacheProperties.getChannel()));
+        container.addMessageListener(shopService, new ChannelTopic(ShopConstant.STATUS_CHANNEL));
+        container.addMessageListener(orderPushHandler, new ChannelTopic(orderPushProperties.getChannel()));
+        container.addMessageListener(dailyStatsRecorder, new ChannelTopic(DailyStatsRecorder.RECOMPUTE_CHANNEL));
+        return container;
+    }
 }
@@ -0,0 +1,40 @@
+package com.sky.config;
+
+import com.sky.interceptor.WebSocketAuthInterceptor;
+import com.sky.properties.OrderPushProperties;
+import com.sky.websocket.OrderPushHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.socket.config.annotation.EnableWebSocket;
+import org.springframework.web.socket.config.annotation.WebSocketConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketHandlerRegistry;
+
+import java.util.List;
+
+/**
+ * websocket配置，管理端通过/ws/admin/order?token=xxx接收新订单提醒
+ * 只接受配置的管理端页面来源，其他网站的页面即使拿到令牌也不能建立连接
+ */
+@Configuration
+@EnableWebSocket
+public class WebSocketConfiguration implements WebSocketConfigurer {
+
+    @Autowired
+    private OrderPushHandler orderPushHandler;
+    @Autowired
+    private WebSocketAuthInterceptor webSocketAuthInterceptor;
+    @Autowired
+    private OrderPushProperties orderPushProperties;
+
+    @Override
+    public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
+        //没配置来源时不放行任何页面，启动时直接报错，不要等管理端连不上才发现
+        List<String> allowedOrigins = orderPushProperties.getAllowedOrigins();
+        if (allowedOrigins == null || allowedOrigins.stream().allMatch(origin -> origin == null || origin.trim().isEmpty())) {
+            throw new IllegalStateException("未配置sky.order-push.allowed-origins，管理端页面无法建立新订单提醒连接");
+        }
+        registry.addHandler(orderPushHandler, "/ws/admin/order")
+                .addInterceptors(webSocketAuthInterceptor)
+                .setAllowedOrigins(allowedOrigins.toArray(new String[0]));
+    }
+}
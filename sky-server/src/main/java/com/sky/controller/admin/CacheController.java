@@ -0,0 +1,42 @@
+package com.sky.controller.admin;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.sky.cache.MenuCache;
+import com.sky.result.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/cache")
+@Api(tags = "缓存相关接口")
+@Slf4j
+public class CacheController {
+    @Autowired
+    private MenuCache menuCache;
+
+    /**
+     * 查询菜单本地缓存的命中统计
+     * @return
+     */
+    @GetMapping("/stats")
+    @ApiOperation("菜单本地缓存统计")
+    public Result<Map<String, Object>> stats() {
+        CacheStats stats = menuCache.stats();
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("size", menuCache.size());
+        map.put("hitCount", stats.hitCount());
+        map.put("missCount", stats.missCount());
+        map.put("hitRate", stats.hitRate());
+        map.put("evictionCount", stats.evictionCount());
+        map.put("loadFailureCount", stats.loadFailureCount());
+        return Result.success(map);
+    }
+}
@@ -1,6 +1,8 @@
 package com.sky.controller.admin;
 
 
+import com.sky.cache.MenuCache;
+import com.sky.constant.CacheConstant;
 import com.sky.dto.DishDTO;
 import com.sky.dto.DishPageQueryDTO;
 import com.sky.entity.Dish;
@@ -13,11 +15,9 @@ import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.ibatis.annotations.Select;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
-import java.util.Set;
 
 @RestController
 @RequestMapping("/admin/dish")
@@ -27,7 +27,7 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuCache menuCache;
 
     /**
      * 新增菜品
@@ -41,8 +41,7 @@ public class DishController {
         dishService.saveWithFlavor(dishDTO);
 
         //清理缓存
-        String key = "dish:" + dishDTO.getCategoryId();
-        cleanCache(key);
+        menuCache.evict(CacheConstant.DISH_KEY_PREFIX, dishDTO.getCategoryId());
         return Result.success();
     }
 
@@ -70,7 +69,7 @@ public class DishController {
         log.info("菜品批量删除{}", ids);
         dishService.deleteBatch(ids);
         //删缓存
-        cleanCache("dish_*");
+        menuCache.evictAll(CacheConstant.DISH_KEY_PREFIX);
         return Result.success();
     }
 
@@ -88,7 +87,7 @@ public class DishController {
         log.info("修改菜品");
         dishService.updateWithFlavor(dishDTO);
         //删缓存
-        cleanCache("dish_*");
+        menuCache.evictAll(CacheConstant.DISH_KEY_PREFIX);
         return Result.success();
     }
     @GetMapping("/list")
@@ -103,17 +102,7 @@ public class DishController {
     public Result startOrStop(@PathVariable Integer status, Long id) {
         dishService.startOrStop(status, id);
         //清理缓存
-        cleanCache("dish_*");
+        menuCache.evictAll(CacheConstant.DISH_KEY_PREFIX);
         return Result.success();
     }
-
-    /**
-     *  清理缓存数据
-     * @param pattern
-     */
-
-    private void cleanCache(String pattern) {
-        Set keys = redisTemplate.keys(pattern);
-        redisTemplate.delete(keys);
-    }
 }
@@ -0,0 +1,132 @@
+package com.sky.controller.admin;
+
+import com.sky.report.DailyStatsBackfill;
+import com.sky.result.Result;
+import com.sky.service.ReportService;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.OrderReportVO;
+import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TurnoverReportVO;
+import com.sky.vo.UserReportVO;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.LocalDate;
+
+/**
+ * 数据统计
+ */
+@RestController
+@RequestMapping("/admin/report")
+@Api(tags = "数据统计相关接口")
+@Slf4j
+public class ReportController {
+
+    @Autowired
+    private ReportService reportService;
+    @Autowired
+    private DailyStatsBackfill dailyStatsBackfill;
+
+    /**
+     * 营业额统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/turnoverStatistics")
+    @ApiOperation("营业额统计")
+    public Result<TurnoverReportVO> turnoverStatistics(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                                       @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("营业额统计：{} ~ {}", begin, end);
+        return Result.success(reportService.getTurnoverStatistics(begin, end));
+    }
+
+    /**
+     * 用户统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/userStatistics")
+    @ApiOperation("用户统计")
+    public Result<UserReportVO> userStatistics(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                               @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("用户统计：{} ~ {}", begin, end);
+        return Result.success(reportService.getUserStatistics(begin, end));
+    }
+
+    /**
+     * 订单统计
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/ordersStatistics")
+    @ApiOperation("订单统计")
+    public Result<OrderReportVO> ordersStatistics(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                                  @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("订单统计：{} ~ {}", begin, end);
+        return Result.success(reportService.getOrderStatistics(begin, end));
+    }
+
+    /**
+     * 销量排名top10
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/top10")
+    @ApiOperation("销量排名top10")
+    public Result<SalesTop10ReportVO> top10(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                            @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        log.info("销量排名top10：{} ~ {}", begin, end);
+        return Result.success(reportService.getSalesTop10(begin, end));
+    }
+
+    /**
+     * 运营数据汇总
+     * @param begin
+     * @param end
+     * @return
+     */
+    @GetMapping("/businessData")
+    @ApiOperation("运营数据汇总")
+    public Result<BusinessDataVO> businessData(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                                               @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        return Result.success(reportService.getBusinessData(begin, end));
+    }
+
+    /**
+     * 导出最近30天的运营数据excel
+     * @param response
+     */
+    @GetMapping("/export")
+    @ApiOperation("导出运营数据")
+    public void export(HttpServletResponse response) throws IOException {
+        log.info("导出运营数据");
+        reportService.exportBusinessData(response);
+    }
+
+    /**
+     * 按订单表、用户表重算每日统计，上线时补历史数据用，一次最多31天
+     * @param begin
+     * @param end
+     * @return
+     */
+    @PostMapping("/backfill")
+    @ApiOperation("重算每日统计")
+    public Result backfill(@DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate begin,
+                           @DateTimeFormat(pattern = "yyyy-MM-dd") LocalDate end) {
+        dailyStatsBackfill.backfill(begin, end);
+        return Result.success();
+    }
+}
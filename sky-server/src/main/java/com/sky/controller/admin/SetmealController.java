@@ -1,5 +1,7 @@
 package com.sky.controller.admin;
 
+import com.sky.cache.MenuCache;
+import com.sky.constant.CacheConstant;
 import com.sky.dto.SetmealDTO;
 import com.sky.dto.SetmealPageQueryDTO;
 import com.sky.result.PageResult;
@@ -10,7 +12,6 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
@@ -26,6 +27,8 @@ public class SetmealController {
 
     @Autowired
     private SetmealService setmealService;
+    @Autowired
+    private MenuCache menuCache;
 
     /**
      * 新增套餐
@@ -34,9 +37,9 @@ public class SetmealController {
      */
     @PostMapping
     @ApiOperation("新增套餐")
-    @CacheEvict(cacheNames = "setmealCache",key = "#setmealDTO.categoryId")
     public Result save(@RequestBody SetmealDTO setmealDTO) {
         setmealService.saveWithDish(setmealDTO);
+        menuCache.evict(CacheConstant.SETMEAL_KEY_PREFIX, setmealDTO.getCategoryId());
         return Result.success();
     }
     /**
@@ -57,9 +60,9 @@ public class SetmealController {
      */
     @DeleteMapping
     @ApiOperation("批量删除套餐")
-    @CacheEvict(cacheNames = "setmealCache",allEntries = true)
     public Result delete(@RequestParam List<Long> ids){
         setmealService.deleteBatch(ids);
+        menuCache.evictAll(CacheConstant.SETMEAL_KEY_PREFIX);
         return Result.success();
     }
     /**
@@ -85,6 +88,8 @@ public class SetmealController {
     @ApiOperation("修改套餐")
     public Result update(@RequestBody SetmealDTO setmealDTO) {
         setmealService.update(setmealDTO);
+        //分类可能被修改，全部清理
+        menuCache.evictAll(CacheConstant.SETMEAL_KEY_PREFIX);
         return Result.success();
     }
     /**
@@ -95,10 +100,10 @@ public class SetmealController {
      */
     @PostMapping("/status/{status}")
     @ApiOperation("套餐起售停售")
-    @CacheEvict(cacheNames = "setmealCache", allEntries = true)
     public Result startOrStop(@PathVariable Integer status, Long id) {
 //        log.info("<UNK>id<UNK>{}<UNK>{}<UNK>", id, status);
         setmealService.startOrStop(status, id);
+        menuCache.evictAll(CacheConstant.SETMEAL_KEY_PREFIX);
         return Result.success();
     }
 }
\ No newline at end of file
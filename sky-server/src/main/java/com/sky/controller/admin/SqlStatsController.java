@@ -0,0 +1,56 @@
+package com.sky.controller.admin;
+
+import com.sky.interceptor.SqlStatsInterceptor;
+import com.sky.result.Result;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/admin/sql")
+@Api(tags = "sql统计相关接口")
+@Slf4j
+public class SqlStatsController {
+    @Autowired
+    private SqlStatsInterceptor sqlStatsInterceptor;
+
+    /**
+     * 查询各mapper方法的执行次数、耗时分布
+     * @return
+     */
+    @GetMapping("/stats")
+    @ApiOperation("sql执行统计")
+    public Result<List<Map<String, Object>>> stats() {
+        return Result.success(sqlStatsInterceptor.stats());
+    }
+
+    /**
+     * 查询最近的慢sql
+     * @return
+     */
+    @GetMapping("/slow")
+    @ApiOperation("慢sql")
+    public Result<List<Map<String, Object>>> slow() {
+        return Result.success(sqlStatsInterceptor.slowLog());
+    }
+
+    /**
+     * 清空统计
+     * @return
+     */
+    @DeleteMapping("/stats")
+    @ApiOperation("清空sql统计")
+    public Result reset() {
+        log.info("清空sql统计");
+        sqlStatsInterceptor.reset();
+        return Result.success();
+    }
+}
@@ -1,5 +1,7 @@
 package com.sky.controller.user;
 
+import com.sky.cache.MenuCache;
+import com.sky.constant.CacheConstant;
 import com.sky.constant.StatusConstant;
 import com.sky.entity.Dish;
 import com.sky.result.Result;
@@ -9,7 +11,6 @@ import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
@@ -23,7 +24,7 @@ public class DishController {
     @Autowired
     private DishService dishService;
     @Autowired
-    private RedisTemplate redisTemplate;
+    private MenuCache menuCache;
 
     /**
      * 根据分类id查询菜品
@@ -35,25 +36,13 @@ public class DishController {
     @ApiOperation("根据分类id查询菜品")
     public Result<List<DishVO>> list(Long categoryId) {
 
-        //构造key
-        String key = "dish_" +categoryId;
-        // 查询redis是否有
-        List<DishVO> list = (List<DishVO>)redisTemplate.opsForValue().get(key);
-
-        //有的话直接返回
-        if(list != null && list.size() > 0) {
-            return Result.success(list);
-        }
-
-        //没有的话，查sql，再返回
-
-        Dish dish = new Dish();
-        dish.setCategoryId(categoryId);
-        dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
-
-        list = dishService.listWithFlavor(dish);
-        //存入redis
-        redisTemplate.opsForValue().set(key,list);
+        // 先查本地缓存再查redis，都没有的话，查sql，再存入缓存
+        List<DishVO> list = menuCache.get(CacheConstant.DISH_KEY_PREFIX, categoryId, () -> {
+            Dish dish = new Dish();
+            dish.setCategoryId(categoryId);
+            dish.setStatus(StatusConstant.ENABLE);//查询起售中的菜品
+            return dishService.listWithFlavor(dish);
+        });
         return Result.success(list);
     }
 
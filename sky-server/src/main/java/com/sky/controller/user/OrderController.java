@@ -5,6 +5,8 @@ import com.sky.dto.OrdersSubmitDTO;
 import com.sky.result.PageResult;
 import com.sky.result.Result;
 import com.sky.service.OrderService;
+import com.sky.vo.OrderCursorPageVO;
+import com.sky.vo.OrderSubmitStatusVO;
 import com.sky.vo.OrderSubmitVO;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -28,6 +30,32 @@ public class OrderController {
         return Result.success(orderSubmitVO);
 
     }
+
+    /**
+     * 异步下单，高峰期使用，先返回排队中的订单号，再通过submitStatus查询结果
+     * @param token 前端为每次下单生成的幂等令牌，重试时带同一个
+     * @param ordersSubmitDTO
+     * @return
+     */
+    @PostMapping("/submitAsync")
+    @ApiOperation("用户异步下单")
+    public Result<OrderSubmitVO> submitAsync(@RequestHeader("Idempotency-Token") String token,
+                                             @RequestBody OrdersSubmitDTO ordersSubmitDTO) {
+        log.info("用户异步下单，token:{}，ordersSubmitDTO:{}", token, ordersSubmitDTO);
+        OrderSubmitVO orderSubmitVO = orderService.submitOrderAsync(ordersSubmitDTO, token);
+        return Result.success(orderSubmitVO);
+    }
+
+    /**
+     * 查询异步下单结果
+     * @param number 订单号
+     * @return
+     */
+    @GetMapping("/submitStatus/{number}")
+    @ApiOperation("查询异步下单结果")
+    public Result<OrderSubmitStatusVO> submitStatus(@PathVariable String number) {
+        return Result.success(orderService.getSubmitStatus(number));
+    }
     /**
      * 历史订单查询
      *
@@ -42,4 +70,30 @@ public class OrderController {
         PageResult pageResult = orderService.pageQuery4User(page, pageSize, status);
         return Result.success(pageResult);
     }
+
+    /**
+     * 历史订单游标分页查询，不count也没有offset，没有总数，按hasMore和lastId翻页
+     *
+     * @param lastId   上一页返回的lastId，第一页不传
+     * @param pageSize
+     * @param status   订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消
+     * @return
+     */
+    @GetMapping("/historyOrders/cursor")
+    @ApiOperation("历史订单游标分页查询")
+    public Result<OrderCursorPageVO> cursorPage(Long lastId, int pageSize, Integer status) {
+        return Result.success(orderService.cursorQuery4User(lastId, pageSize, status));
+    }
+
+    /**
+     * 取消订单，只能取消未支付的订单
+     * @param id
+     * @return
+     */
+    @PutMapping("/cancel/{id}")
+    @ApiOperation("取消订单")
+    public Result cancel(@PathVariable Long id) {
+        orderService.userCancelById(id);
+        return Result.success();
+    }
 }
@@ -1,12 +1,12 @@
 package com.sky.controller.user;
 
+import com.sky.constant.ShopConstant;
 import com.sky.result.Result;
+import com.sky.service.ShopService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ValueOperations;
 import org.springframework.web.bind.annotation.*;
 
 @Slf4j
@@ -15,15 +15,13 @@ import org.springframework.web.bind.annotation.*;
 @Api(tags = "店铺相关的接口呢")
 public class ShopController {
     @Autowired
-    private RedisTemplate redisTemplate;
-    private static final String STATUS_KEY = "SHOP_STATUS";
+    private ShopService shopService;
     @ApiOperation("获取店铺营业状态")
     @GetMapping("/status")
     public Result<Integer> getStatus(){
-
-        ValueOperations valueOperations = redisTemplate.opsForValue();
-        Integer status = (Integer) valueOperations.get(STATUS_KEY);
-        log.info("获取营业状态为{}",status == 1?"营业中":"打烊中");
+        //每次打开小程序都会调用，直接读内存
+        Integer status = shopService.getStatus();
+        log.debug("获取营业状态为{}",ShopConstant.OPEN.equals(status)?"营业中":"打烊中");
 
         return Result.success(status);
     }
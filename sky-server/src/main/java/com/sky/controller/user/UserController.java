@@ -16,6 +16,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/user/user")
@@ -29,18 +30,20 @@ public class UserController {
 
     @PostMapping("/login")
     @ApiOperation("微信登陆")
-    public Result<UserLoginVO> login(@RequestBody UserLoginDTO userLoginDTO){
+    public CompletableFuture<Result<UserLoginVO>> login(@RequestBody UserLoginDTO userLoginDTO){
         log.info("微信用户登录{}",userLoginDTO);
-        User user = userService.wxLogin(userLoginDTO);
-        //需要为微信用户生成jwt令牌
-        Map<String,Object> claims = new HashMap<>();
-        claims.put(JwtClaimsConstant.USER_ID,user.getId());
-        String token = JwtUtil.createJWT(jwtProperties.getUserSecretKey(),jwtProperties.getUserTtl(),claims);
+        //异步处理，等待微信接口响应时不占用Tomcat线程
+        return userService.wxLogin(userLoginDTO).thenApply(user -> {
+            //需要为微信用户生成jwt令牌
+            Map<String,Object> claims = new HashMap<>();
+            claims.put(JwtClaimsConstant.USER_ID,user.getId());
+            String token = JwtUtil.createJWT(jwtProperties.getUserSecretKey(),jwtProperties.getUserTtl(),claims);
 
-        UserLoginVO userLoginVO = UserLoginVO.builder()
-                .id(user.getId())
-                .openid(user.getOpenid())
-                .token(token).build();
-        return Result.success(userLoginVO);
+            UserLoginVO userLoginVO = UserLoginVO.builder()
+                    .id(user.getId())
+                    .openid(user.getOpenid())
+                    .token(token).build();
+            return Result.success(userLoginVO);
+        });
     }
 }
@@ -1,12 +1,10 @@
 package com.sky.interceptor;
 
-import com.sky.constant.JwtClaimsConstant;
 import com.sky.context.BaseContext;
 import com.sky.properties.JwtProperties;
-import com.sky.utils.JwtUtil;
-import io.jsonwebtoken.Claims;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
 import org.springframework.web.method.HandlerMethod;
 import org.springframework.web.servlet.HandlerInterceptor;
@@ -24,6 +22,10 @@ public class JwtTokenUserInterceptor implements HandlerInterceptor {
     @Autowired
     private JwtProperties jwtProperties;
 
+    @Autowired
+    @Qualifier("userTokenVerifier")
+    private JwtTokenVerifier tokenVerifier;
+
     /**
      * 校验jwt
      *
@@ -45,17 +47,10 @@ public class JwtTokenUserInterceptor implements HandlerInterceptor {
 
         //2、校验令牌
         try {
-            // 记录日志：开始校验JWT令牌
-            log.info("jwt校验:{}", token);
-            
-            // 使用JWT工具类解析令牌，获取载荷信息（Claims）
-            // 如果令牌无效、过期或被篡改，parseJWT方法会抛出异常
-            Claims claims = JwtUtil.parseJWT(jwtProperties.getUserSecretKey(), token);
-            
-            // 从载荷中提取用户ID
-            // Claims中存储的是Object类型，需要先转为字符串，再转为Long类型
-            Long userId = Long.valueOf(claims.get(JwtClaimsConstant.USER_ID).toString());
-            log.info("当前用户的id：", userId);
+            // 校验令牌并取出用户ID，令牌无效、过期或被篡改时会抛出异常
+            // 校验通过的令牌会被缓存，同一令牌再次请求时不再验签、解析
+            Long userId = tokenVerifier.verify(token);
+            log.debug("当前用户的id：{}", userId);
             
             // 将用户ID存储到ThreadLocal中
             // 这样在后续的Controller、Service等方法中都可以通过BaseContext获取当前用户ID
@@ -70,4 +65,12 @@ public class JwtTokenUserInterceptor implements HandlerInterceptor {
             return false;
         }
     }
+
+    /**
+     * 请求结束后清除当前用户id，tomcat线程复用时不会带到下一个请求
+     */
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        BaseContext.removeCurrentId();
+    }
 }
@@ -0,0 +1,117 @@
+package com.sky.interceptor;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * jwt令牌校验，校验通过的令牌按摘要缓存id和过期时间
+ * 同一个令牌再次请求时不再验签、解析json；令牌被篡改后摘要不同，会重新完整校验
+ * 缓存条目最晚在令牌过期时失效，命中时也会再检查一次过期时间
+ */
+public class JwtTokenVerifier {
+
+    //没有过期时间的令牌最多缓存这么久
+    private static final long MAX_CACHE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final JwtParser parser;
+    private final String claimName;
+    private final Cache<ByteBuffer, VerifiedToken> cache;
+
+    /**
+     * @param secretKey jwt秘钥
+     * @param claimName 存放id的声明，如JwtClaimsConstant.EMP_ID
+     * @param maximumSize 缓存的最大条数
+     */
+    public JwtTokenVerifier(String secretKey, String claimName, long maximumSize) {
+        this.parser = JwtUtil.parser(secretKey);
+        this.claimName = claimName;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<ByteBuffer, VerifiedToken>() {
+                    @Override
+                    public long expireAfterCreate(ByteBuffer key, VerifiedToken value, long currentTime) {
+                        long millis = Math.min(value.expireAt - System.currentTimeMillis(), MAX_CACHE_MILLIS);
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(millis, 0));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * 校验令牌
+     * @param token
+     * @return 令牌中的id
+     * @throws JwtException 令牌无效、过期或被篡改
+     */
+    public Long verify(String token) {
+        if (token == null || token.isEmpty()) {
+            throw new JwtException("令牌为空");
+        }
+        ByteBuffer key = digest(token);
+        VerifiedToken verified = cache.getIfPresent(key);
+        if (verified == null) {
+            verified = parse(token);
+            cache.put(key, verified);
+        }
+        if (verified.expireAt <= System.currentTimeMillis()) {
+            cache.invalidate(key);
+            throw new JwtException("令牌已过期");
+        }
+        return verified.id;
+    }
+
+    private VerifiedToken parse(String token) {
+        Claims claims = JwtUtil.parseJWT(parser, token);
+        Object id = claims.get(claimName);
+        if (id == null) {
+            throw new JwtException("令牌中没有" + claimName);
+        }
+        Date expiration = claims.getExpiration();
+        long expireAt = expiration != null
+                ? expiration.getTime()
+                : System.currentTimeMillis() + MAX_CACHE_MILLIS;
+        return new VerifiedToken(Long.valueOf(id.toString()), expireAt);
+    }
+
+    private static ByteBuffer digest(String token) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            return ByteBuffer.wrap(messageDigest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class VerifiedToken {
+
+        private final Long id;
+        private final long expireAt;
+
+        VerifiedToken(Long id, long expireAt) {
+            this.id = id;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package com.sky.interceptor;
+
+import com.sky.properties.SqlStatsProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cache.CacheKey;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * mybatis拦截器，按mapper方法统计sql执行次数、耗时分布和影响行数，超过阈值的慢sql连同参数记录下来
+ * pagehelper的count查询id带_COUNT后缀，单独统计
+ * 正常路径只有两次nanoTime和几次LongAdder累加，参数只在慢sql时才取
+ * 每条语句的次数、耗时、错误数、行数同时注册成sql.statements.*指标，按statement标签区分，prometheus直接抓取
+ */
+@Component
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class, CacheKey.class, BoundSql.class}),
+        @Signature(type = Executor.class, method = "update",
+                args = {MappedStatement.class, Object.class})
+})
+@Slf4j
+public class SqlStatsInterceptor implements Interceptor, MeterBinder {
+
+    //耗时分布的桶上界(毫秒)，最后一个桶放超过5秒的
+    private static final long[] BUCKET_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000};
+
+    private final SqlStatsProperties sqlStatsProperties;
+    private final Map<String, StatementStats> statsMap = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> slowLog = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger slowLogCount = new AtomicInteger();
+    private volatile MeterRegistry registry;
+
+    public SqlStatsInterceptor(SqlStatsProperties sqlStatsProperties) {
+        this.sqlStatsProperties = sqlStatsProperties;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!sqlStatsProperties.isEnabled()) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        Object result = null;
+        boolean success = false;
+        try {
+            result = invocation.proceed();
+            success = true;
+            return result;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            Object[] args = invocation.getArgs();
+            MappedStatement ms = (MappedStatement) args[0];
+            statsMap.computeIfAbsent(shortId(ms.getId()), this::newStats)
+                    .record(elapsed, rows(result), success);
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsed);
+            if (elapsedMillis >= sqlStatsProperties.getSlowThresholdMillis()) {
+                BoundSql boundSql = args.length == 6 ? (BoundSql) args[5] : ms.getBoundSql(args[1]);
+                recordSlow(ms, boundSql, elapsedMillis);
+            }
+        }
+    }
+
+    /**
+     * 各语句的统计，按总耗时倒序
+     * @return
+     */
+    public List<Map<String, Object>> stats() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        statsMap.forEach((id, stats) -> list.add(stats.toMap(id)));
+        list.sort(Comparator.comparing((Map<String, Object> map) -> (Double) map.get("totalMillis")).reversed());
+        return list;
+    }
+
+    /**
+     * 最近的慢sql，新的在前
+     * @return
+     */
+    public List<Map<String, Object>> slowLog() {
+        return new ArrayList<>(slowLog);
+    }
+
+    /**
+     * 清零统计；已注册的指标还引用着这些语句的统计对象，所以只清零不删除
+     */
+    public void reset() {
+        statsMap.values().forEach(StatementStats::reset);
+        slowLog.clear();
+        slowLogCount.set(0);
+    }
+
+    /**
+     * 注册已经出现过的语句，之后第一次执行的语句在newStats里注册
+     * @param registry
+     */
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        statsMap.forEach((id, stats) -> register(registry, id, stats));
+        this.registry = registry;
+    }
+
+    private StatementStats newStats(String id) {
+        StatementStats stats = new StatementStats();
+        MeterRegistry current = registry;
+        if (current != null) {
+            register(current, id, stats);
+        }
+        return stats;
+    }
+
+    private static void register(MeterRegistry registry, String id, StatementStats stats) {
+        Tags tags = Tags.of("statement", id);
+        FunctionTimer.builder("sql.statements", stats, s -> s.count.sum(), s -> s.totalNanos.sum(), TimeUnit.NANOSECONDS)
+                .tags(tags)
+                .description("sql执行次数和耗时")
+                .register(registry);
+        FunctionCounter.builder("sql.statements.errors", stats, s -> s.errors.sum())
+                .tags(tags)
+                .description("sql执行失败次数")
+                .register(registry);
+        FunctionCounter.builder("sql.statements.rows", stats, s -> s.rows.sum())
+                .tags(tags)
+                .description("查询返回或更新影响的行数")
+                .register(registry);
+        TimeGauge.builder("sql.statements.max", stats, TimeUnit.NANOSECONDS, s -> s.maxNanos.get())
+                .tags(tags)
+                .description("最大耗时")
+                .register(registry);
+    }
+
+    private void recordSlow(MappedStatement ms, BoundSql boundSql, long elapsedMillis) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("id", shortId(ms.getId()));
+        entry.put("millis", elapsedMillis);
+        entry.put("sql", boundSql.getSql().replaceAll("\\s+", " ").trim());
+        entry.put("parameters", parameters(ms.getConfiguration(), boundSql));
+        entry.put("time", LocalDateTime.now().toString());
+        slowLog.addFirst(entry);
+        if (slowLogCount.incrementAndGet() > sqlStatsProperties.getSlowLogSize()) {
+            slowLog.pollLast();
+            slowLogCount.decrementAndGet();
+        }
+        log.warn("慢sql {} 耗时{}ms", entry.get("id"), elapsedMillis);
+    }
+
+    /**
+     * 按占位符顺序取出绑定的参数值
+     */
+    private List<Object> parameters(Configuration configuration, BoundSql boundSql) {
+        List<Object> values = new ArrayList<>();
+        Object parameterObject = boundSql.getParameterObject();
+        MetaObject metaObject = null;
+        for (ParameterMapping parameterMapping : boundSql.getParameterMappings()) {
+            String property = parameterMapping.getProperty();
+            Object value;
+            if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (parameterObject == null) {
+                value = null;
+            } else if (configuration.getTypeHandlerRegistry().hasTypeHandler(parameterObject.getClass())) {
+                value = parameterObject;
+            } else {
+                if (metaObject == null) {
+                    metaObject = configuration.newMetaObject(parameterObject);
+                }
+                value = metaObject.getValue(property);
+            }
+            values.add(value == null ? null : value.toString());
+        }
+        return values;
+    }
+
+    private static long rows(Object result) {
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Integer) {
+            return Math.max((Integer) result, 0);
+        }
+        return 0;
+    }
+
+    /**
+     * com.sky.mapper.OrderMapper.pageQuery -> OrderMapper.pageQuery
+     */
+    private static String shortId(String id) {
+        int methodDot = id.lastIndexOf('.');
+        int classDot = methodDot > 0 ? id.lastIndexOf('.', methodDot - 1) : -1;
+        return classDot >= 0 ? id.substring(classDot + 1) : id;
+    }
+
+    private static class StatementStats {
+
+        private final LongAdder count = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKET_MILLIS.length + 1];
+
+        StatementStats() {
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+
+        void reset() {
+            count.reset();
+            errors.reset();
+            totalNanos.reset();
+            rows.reset();
+            maxNanos.reset();
+            for (LongAdder bucket : buckets) {
+                bucket.reset();
+            }
+        }
+
+        void record(long nanos, long rowCount, boolean success) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            rows.add(rowCount);
+            if (!success) {
+                errors.increment();
+            }
+            long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+            int i = 0;
+            while (i < BUCKET_MILLIS.length && millis >= BUCKET_MILLIS[i]) {
+                i++;
+            }
+            buckets[i].increment();
+        }
+
+        Map<String, Object> toMap(String id) {
+            long total = count.sum();
+            long[] bucketCounts = new long[buckets.length];
+            for (int i = 0; i < buckets.length; i++) {
+                bucketCounts[i] = buckets[i].sum();
+            }
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", id);
+            map.put("count", total);
+            map.put("errors", errors.sum());
+            map.put("rows", rows.sum());
+            map.put("totalMillis", totalNanos.sum() / 1e6);
+            map.put("avgMillis", total == 0 ? 0 : totalNanos.sum() / 1e6 / total);
+            map.put("maxMillis", maxNanos.get() / 1e6);
+            //分位数取所在桶的上界
+            map.put("p50Millis", percentile(bucketCounts, total, 0.50));
+            map.put("p95Millis", percentile(bucketCounts, total, 0.95));
+            map.put("p99Millis", percentile(bucketCounts, total, 0.99));
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int i = 0; i < bucketCounts.length; i++) {
+                histogram.put(i < BUCKET_MILLIS.length ? "<" + BUCKET_MILLIS[i] + "ms" : ">=" + BUCKET_MILLIS[i - 1] + "ms",
+                        bucketCounts[i]);
+            }
+            map.put("histogram", histogram);
+            return map;
+        }
+
+        private long percentile(long[] bucketCounts, long total, double quantile) {
+            long target = (long) Math.ceil(total * quantile);
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= target && seen > 0) {
+                    //最后一个桶没有上界，取最大值
+                    return i < BUCKET_MILLIS.length ? BUCKET_MILLIS[i] : TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+                }
+            }
+            return 0;
+        }
+    }
+}
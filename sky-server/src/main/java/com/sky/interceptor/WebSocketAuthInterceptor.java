@@ -0,0 +1,50 @@
+package com.sky.interceptor;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.properties.JwtProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.util.Map;
+
+/**
+ * 管理端websocket握手时校验jwt，浏览器建立websocket连接不能带请求头，令牌放在查询参数里
+ */
+@Component
+@Slf4j
+public class WebSocketAuthInterceptor implements HandshakeInterceptor {
+
+    @Autowired
+    private JwtProperties jwtProperties;
+
+    @Autowired
+    @Qualifier("adminTokenVerifier")
+    private JwtTokenVerifier tokenVerifier;
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+        String token = UriComponentsBuilder.fromUri(request.getURI()).build()
+                .getQueryParams().getFirst(jwtProperties.getAdminTokenName());
+        try {
+            attributes.put(JwtClaimsConstant.EMP_ID, tokenVerifier.verify(token));
+            return true;
+        } catch (Exception ex) {
+            response.setStatusCode(HttpStatus.UNAUTHORIZED);
+            return false;
+        }
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                               WebSocketHandler wsHandler, Exception exception) {
+    }
+}
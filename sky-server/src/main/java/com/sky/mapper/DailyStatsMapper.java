@@ -0,0 +1,80 @@
+package com.sky.mapper;
+
+import com.sky.entity.DailyStats;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Mapper
+public interface DailyStatsMapper {
+
+    /**
+     * 在当天的统计上累加，当天没有记录时插入
+     * @param dailyStats 各字段是增量
+     */
+    void increment(DailyStats dailyStats);
+
+    /**
+     * 用重算的订单统计覆盖当天的订单相关字段
+     * @param dailyStats
+     */
+    void replaceOrderStats(DailyStats dailyStats);
+
+    /**
+     * 用重算的新增用户数覆盖当天的值
+     * @param dailyStats
+     */
+    void replaceUserStats(DailyStats dailyStats);
+
+    /**
+     * 查询日期范围内的统计，包含首尾两天
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select * from daily_stats where stat_date between #{begin} and #{end} order by stat_date")
+    List<DailyStats> listByRange(LocalDate begin, LocalDate end);
+
+    /**
+     * 从订单表统计一天的订单数、有效订单数、营业额
+     * @param begin 当天0点
+     * @param end 第二天0点
+     * @return
+     */
+    DailyStats aggregateOrders(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 统计注册时间在[begin, end)内的用户数
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select count(*) from user where create_time >= #{begin} and create_time < #{end}")
+    Integer countUsers(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 某天之前的用户总数：累加之前每天的新增用户数，每天一行，不扫描用户表
+     * @param date
+     * @return
+     */
+    @Select("select ifnull(sum(new_user_count), 0) from daily_stats where stat_date < #{date}")
+    Integer sumNewUsersBefore(LocalDate date);
+
+    /**
+     * 日期范围内已有统计的天数，包含首尾两天
+     * @param begin
+     * @param end
+     * @return
+     */
+    @Select("select count(*) from daily_stats where stat_date between #{begin} and #{end}")
+    Integer countDays(LocalDate begin, LocalDate end);
+
+    /**
+     * 最早的下单或注册日期，补算每日统计从这一天开始，走下单时间、注册时间的索引
+     * @return 没有订单和用户时返回null
+     */
+    LocalDate firstActivityDate();
+}
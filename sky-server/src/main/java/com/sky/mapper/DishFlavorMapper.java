@@ -23,4 +23,11 @@ public interface DishFlavorMapper {
     @Select("SELECT * from dish_flavor where dish_id = #{dishId}")
     List<DishFlavor> getByDishId(Long dishId);
 
+    /**
+     * 根据菜品id批量查询口味，一条sql查出多个菜品的口味
+     * @param dishIds
+     * @return
+     */
+    List<DishFlavor> getByDishIds(List<Long> dishIds);
+
 }
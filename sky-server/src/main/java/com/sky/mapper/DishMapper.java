@@ -59,4 +59,11 @@ public interface DishMapper {
      */
     @Select("select a.* from dish a left join setmeal_dish b on a.id = b.dish_id where b.setmeal_id = #{setmealId}")
     List<Dish> getBySetmealId(Long setmealId);
+
+    /**
+     * 查询起售中菜品的价格，用于构建价格索引，停售的不能下单
+     * @return
+     */
+    @Select("select id, price from dish where status = 1 and price is not null")
+    List<Dish> listPrices();
 }
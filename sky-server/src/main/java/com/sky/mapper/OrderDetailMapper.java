@@ -1,10 +1,13 @@
 package com.sky.mapper;
 
+import com.sky.dto.GoodsSalesDTO;
 import com.sky.entity.OrderDetail;
 import com.sky.entity.ShoppingCart;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Mapper
@@ -22,4 +25,19 @@ public interface OrderDetailMapper {
      */
     @Select("select * from order_detail where order_id = #{orderId}")
     List<OrderDetail> getByOrderId(Long orderId);
+
+    /**
+     * 根据订单id批量查询订单明细
+     * @param orderIds
+     * @return
+     */
+    List<OrderDetail> getByOrderIds(List<Long> orderIds);
+
+    /**
+     * 统计时间范围内已完成订单的商品销量，每行通过resultHandler交给调用方，不返回整个列表
+     * @param begin
+     * @param end
+     * @param resultHandler
+     */
+    void streamSales(LocalDateTime begin, LocalDateTime end, ResultHandler<GoodsSalesDTO> resultHandler);
 }
@@ -4,6 +4,13 @@ import com.github.pagehelper.Page;
 import com.sky.dto.OrdersPageQueryDTO;
 import com.sky.entity.Orders;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface OrderMapper {
@@ -13,4 +20,57 @@ public interface OrderMapper {
      * @param ordersPageQueryDTO
      */
     Page<Orders> pageQuery(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 游标分页：按(下单时间, id)倒序取lastId之后的pageSize条，不查总数也没有offset
+     * @param ordersPageQueryDTO
+     * @return
+     */
+    List<Orders> cursorQuery(OrdersPageQueryDTO ordersPageQueryDTO);
+
+    /**
+     * 按下单时间顺序逐行读取时间范围内的订单，用于导出，调用方需要在事务内遍历
+     * @param begin
+     * @param end
+     * @return
+     */
+    Cursor<Orders> cursorByOrderTime(LocalDateTime begin, LocalDateTime end);
+
+    /**
+     * 各状态的订单数，对账用
+     * @return 每行包含status、count
+     */
+    @Select("select status, count(*) as count from orders group by status")
+    List<Map<String, Object>> countByStatus();
+
+    /**
+     * 根据id查询订单
+     * @param id
+     * @return
+     */
+    @Select("select * from orders where id = #{id}")
+    Orders getById(Long id);
+
+    /**
+     * 根据订单号查询订单
+     * @param number
+     * @return
+     */
+    @Select("select * from orders where number = #{number}")
+    Orders getByNumber(String number);
+
+    /**
+     * 条件更新订单状态：只有当前状态在fromStatuses里才更新，并发时由影响行数决定谁成功
+     * @param orders 要更新的字段，id必填，userId不为空时只更新该用户的订单
+     * @param fromStatuses 允许的当前状态
+     * @return 影响行数，0表示状态已被改变
+     */
+    int updateStatus(Orders orders, Collection<Integer> fromStatuses);
+
+    /**
+     * 根据id批量查询订单
+     * @param ids
+     * @return
+     */
+    List<Orders> getByIds(Collection<Long> ids);
 }
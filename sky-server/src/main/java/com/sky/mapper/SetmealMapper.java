@@ -68,4 +68,11 @@ public interface SetmealMapper {
             "from setmeal_dish sd left join dish d on sd.dish_id = d.id " +
             "where sd.setmeal_id = #{setmealId}")
     List<DishItemVO> getDishItemBySetmealId(Long setmealId);
+
+    /**
+     * 查询起售中套餐的价格，用于构建价格索引，停售的不能下单
+     * @return
+     */
+    @Select("select id, price from setmeal where status = 1 and price is not null")
+    List<Setmeal> listPrices();
 }
@@ -32,4 +32,16 @@ public interface ShoppingCartMapper {
 
     @Delete("delete from shopping_cart where user_id = #{userId}")
     void clean(Long userId);
+
+    /**
+     * 删除一批用户的购物车，写回redis里的购物车时用
+     * @param userIds
+     */
+    void deleteByUserIds(List<Long> userIds);
+
+    /**
+     * 批量插入购物车数据
+     * @param shoppingCarts
+     */
+    void insertBatch(List<ShoppingCart> shoppingCarts);
 }
@@ -0,0 +1,214 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderSubmitProperties;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.service.ShoppingCartService;
+import com.sky.vo.OrderSubmitStatusVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步下单：请求线程只做校验和入队，写库线程从队列里批量取订单，一个事务写入多个订单
+ * 队列有界，满了直接拒绝，避免高峰期把数据库连接池占满
+ */
+@Component
+@Slf4j
+public class AsyncOrderSubmitter {
+
+    private static final String STATUS_KEY_PREFIX = "order_submit:";
+
+    private final OrderMapper orderMapper;
+    private final OrderDetailMapper orderDetailMapper;
+    private final ShoppingCartService shoppingCartService;
+    private final TransactionTemplate transactionTemplate;
+    private final RedisTemplate redisTemplate;
+    private final OrderSubmitProperties orderSubmitProperties;
+    private final DailyStatsRecorder dailyStatsRecorder;
+    private final OrderStatusCounter orderStatusCounter;
+    private final OrderTimeoutScheduler orderTimeoutScheduler;
+
+    private final BlockingQueue<OrderDraft> queue;
+    private final List<Thread> writers = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public AsyncOrderSubmitter(OrderMapper orderMapper, OrderDetailMapper orderDetailMapper,
+                               ShoppingCartService shoppingCartService, TransactionTemplate transactionTemplate,
+                               RedisTemplate redisTemplate, OrderSubmitProperties orderSubmitProperties,
+                               DailyStatsRecorder dailyStatsRecorder, OrderStatusCounter orderStatusCounter,
+                               OrderTimeoutScheduler orderTimeoutScheduler) {
+        this.orderMapper = orderMapper;
+        this.orderDetailMapper = orderDetailMapper;
+        this.shoppingCartService = shoppingCartService;
+        this.transactionTemplate = transactionTemplate;
+        this.redisTemplate = redisTemplate;
+        this.orderSubmitProperties = orderSubmitProperties;
+        this.dailyStatsRecorder = dailyStatsRecorder;
+        this.orderStatusCounter = orderStatusCounter;
+        this.orderTimeoutScheduler = orderTimeoutScheduler;
+        this.queue = new ArrayBlockingQueue<>(orderSubmitProperties.getQueueCapacity());
+    }
+
+    @PostConstruct
+    public void start() {
+        for (int i = 0; i < orderSubmitProperties.getWriterThreads(); i++) {
+            Thread writer = new Thread(this::drain, "order-writer-" + i);
+            writer.setDaemon(true);
+            writer.start();
+            writers.add(writer);
+        }
+    }
+
+    /**
+     * 停机时把队列里剩下的订单写完再退出
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        for (Thread writer : writers) {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * 订单入队
+     * @param orderDraft
+     * @return 队列已满或正在停机返回false
+     */
+    public boolean submit(OrderDraft orderDraft) {
+        if (!running) {
+            return false;
+        }
+        Orders orders = orderDraft.getOrders();
+        saveStatus(orders.getUserId(), OrderSubmitStatusVO.builder()
+                .orderNumber(orders.getNumber())
+                .status(OrderSubmitStatusVO.PENDING)
+                .build());
+        //入队和停机同时发生时，写库线程可能已经退出，还在队列里就撤回，已被取走的会正常写完
+        if (!queue.offer(orderDraft) || (!running && queue.remove(orderDraft))) {
+            redisTemplate.delete(statusKey(orders.getUserId(), orders.getNumber()));
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 查询异步下单结果
+     * @param userId
+     * @param number
+     * @return
+     */
+    public OrderSubmitStatusVO getStatus(Long userId, String number) {
+        return (OrderSubmitStatusVO) redisTemplate.opsForValue().get(statusKey(userId, number));
+    }
+
+    private void drain() {
+        List<OrderDraft> batch = new ArrayList<>(orderSubmitProperties.getBatchSize());
+        while (running || !queue.isEmpty()) {
+            try {
+                OrderDraft first = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, orderSubmitProperties.getBatchSize() - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("批量写入订单失败", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 一个事务写入一批订单，整批失败时逐个重试，只让有问题的订单失败
+     */
+    private void writeBatch(List<OrderDraft> batch) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(batch));
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                log.error("订单{}写入失败", batch.get(0).getOrders().getNumber(), e);
+                onFailure(batch.get(0));
+                return;
+            }
+            log.warn("{}个订单批量写入失败，逐个重试", batch.size(), e);
+            batch.forEach(orderDraft -> writeBatch(Collections.singletonList(orderDraft)));
+            return;
+        }
+        //整批订单写库后的redis操作放在一个pipeline里，写库线程不用每单等好几次往返
+        redisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            public Object execute(RedisOperations operations) {
+                batch.forEach(AsyncOrderSubmitter.this::onSuccess);
+                return null;
+            }
+        });
+    }
+
+    private void insert(List<OrderDraft> batch) {
+        List<OrderDetail> orderDetailList = new ArrayList<>();
+        for (OrderDraft orderDraft : batch) {
+            Orders orders = orderDraft.getOrders();
+            orderMapper.insert(orders);
+            orderDraft.getOrderDetailList().forEach(orderDetail -> orderDetail.setOrderId(orders.getId()));
+            orderDetailList.addAll(orderDraft.getOrderDetailList());
+        }
+        // 所有订单的明细一条sql插入
+        orderDetailMapper.insertBatch(orderDetailList);
+    }
+
+    private void onSuccess(OrderDraft orderDraft) {
+        Orders orders = orderDraft.getOrders();
+        shoppingCartService.completeCheckout(orders.getUserId(), orders.getNumber());
+        dailyStatsRecorder.orderCreated(orders.getOrderTime());
+        orderStatusCounter.created(orders.getStatus());
+        orderTimeoutScheduler.registerPayTimeout(orders);
+        saveStatus(orders.getUserId(), OrderSubmitStatusVO.builder()
+                .orderNumber(orders.getNumber())
+                .status(OrderSubmitStatusVO.SUCCESS)
+                .id(orders.getId())
+                .build());
+    }
+
+    private void onFailure(OrderDraft orderDraft) {
+        Orders orders = orderDraft.getOrders();
+        //订单没写进去，下单时取走的商品放回购物车
+        shoppingCartService.restoreCheckout(orders.getUserId(), orders.getNumber());
+        saveStatus(orders.getUserId(), OrderSubmitStatusVO.builder()
+                .orderNumber(orders.getNumber())
+                .status(OrderSubmitStatusVO.FAILED)
+                .msg(MessageConstant.ORDER_SUBMIT_FAILED)
+                .build());
+    }
+
+    private void saveStatus(Long userId, OrderSubmitStatusVO statusVO) {
+        redisTemplate.opsForValue().set(statusKey(userId, statusVO.getOrderNumber()), statusVO,
+                orderSubmitProperties.getResultTtlSeconds(), TimeUnit.SECONDS);
+    }
+
+    private String statusKey(Long userId, String number) {
+        return STATUS_KEY_PREFIX + userId + ":" + number;
+    }
+}
@@ -0,0 +1,65 @@
+package com.sky.order;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于redis租约的选主：持有key的节点是leader，需要在租约到期前续期
+ * 续期失败(比如进程卡顿超过租约时间)后其他节点可以抢到，短时间内可能两个节点都认为自己是leader，调用方要能容忍
+ */
+public class LeaderLease {
+
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('PEXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String key;
+    private final long leaseMillis;
+    private final String owner = UUID.randomUUID().toString();
+    private boolean held;
+
+    public LeaderLease(StringRedisTemplate stringRedisTemplate, String key, long leaseMillis) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.key = key;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 是leader就续期，不是就尝试抢占
+     * @return 当前是否是leader
+     */
+    public synchronized boolean hold() {
+        if (held) {
+            Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key),
+                    owner, String.valueOf(leaseMillis));
+            held = renewed != null && renewed == 1;
+            if (held) {
+                return true;
+            }
+        }
+        held = Boolean.TRUE.equals(stringRedisTemplate.opsForValue()
+                .setIfAbsent(key, owner, leaseMillis, TimeUnit.MILLISECONDS));
+        return held;
+    }
+
+    public synchronized void release() {
+        if (held) {
+            stringRedisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(key), owner);
+            held = false;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 校验通过、还没写入数据库的订单
+ */
+@Data
+@AllArgsConstructor
+public class OrderDraft {
+
+    private Orders orders;
+
+    //订单明细，写库时再设置订单id
+    private List<OrderDetail> orderDetailList;
+}
@@ -0,0 +1,87 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * 订单状态变更事件，每个事件定义允许的当前状态、变更后的状态以及要一起更新的字段
+ * 新增状态变更只需要在这里加一行
+ */
+public enum OrderEvent {
+
+    //支付成功
+    PAY(Orders.TO_BE_CONFIRMED, (orders, now) -> {
+        orders.setPayStatus(Orders.PAID);
+        orders.setCheckoutTime(now);
+    }, Orders.PENDING_PAYMENT),
+
+    //商家接单
+    CONFIRM(Orders.CONFIRMED, (orders, now) -> {
+    }, Orders.TO_BE_CONFIRMED),
+
+    //商家拒单
+    REJECT(Orders.CANCELLED, (orders, now) -> orders.setCancelTime(now), Orders.TO_BE_CONFIRMED),
+
+    //商家取消，已完成、已取消的订单不能取消
+    CANCEL(Orders.CANCELLED, (orders, now) -> orders.setCancelTime(now),
+            Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED, Orders.DELIVERY_IN_PROGRESS),
+
+    //用户取消，只能取消未支付的订单，已支付的需要联系商家
+    USER_CANCEL(Orders.CANCELLED, (orders, now) -> {
+        orders.setCancelReason("用户取消");
+        orders.setCancelTime(now);
+    }, Orders.PENDING_PAYMENT),
+
+    //开始派送
+    DELIVER(Orders.DELIVERY_IN_PROGRESS, (orders, now) -> {
+    }, Orders.CONFIRMED),
+
+    //送达
+    COMPLETE(Orders.COMPLETED, (orders, now) -> orders.setDeliveryTime(now), Orders.DELIVERY_IN_PROGRESS),
+
+    //超时未支付
+    PAY_TIMEOUT(Orders.CANCELLED, (orders, now) -> {
+        orders.setCancelReason("订单超时，自动取消");
+        orders.setCancelTime(now);
+    }, Orders.PENDING_PAYMENT),
+
+    //派送超时自动完成
+    DELIVERY_TIMEOUT(Orders.COMPLETED, (orders, now) -> orders.setDeliveryTime(now), Orders.DELIVERY_IN_PROGRESS);
+
+    private final Integer to;
+    private final BiConsumer<Orders, LocalDateTime> fields;
+    private final List<Integer> from;
+
+    OrderEvent(Integer to, BiConsumer<Orders, LocalDateTime> fields, Integer... from) {
+        this.to = to;
+        this.fields = fields;
+        this.from = Collections.unmodifiableList(Arrays.asList(from));
+    }
+
+    public Integer getTo() {
+        return to;
+    }
+
+    public List<Integer> getFrom() {
+        return from;
+    }
+
+    public boolean allows(Integer status) {
+        return from.contains(status);
+    }
+
+    /**
+     * 设置变更后的状态和事件对应的字段
+     * @param orders
+     * @param now
+     */
+    public void apply(Orders orders, LocalDateTime now) {
+        orders.setStatus(to);
+        fields.accept(orders, now);
+    }
+}
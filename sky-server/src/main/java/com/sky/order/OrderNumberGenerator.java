@@ -0,0 +1,126 @@
+package com.sky.order;
+
+import com.sky.utils.SnowflakeIdGenerator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 订单号生成器
+ * 每个节点启动时在redis里租用一个机器id(0~1023)，定时续租，保证集群内机器id不重复
+ * 续租一直失败(redis不可用、进程长时间卡顿)时租约可能已经到期并被别的节点拿走，
+ * 所以距离上次续租成功接近租约时间后就停止发号，先重新确认或申请机器id
+ */
+@Component
+@Slf4j
+public class OrderNumberGenerator {
+
+    private static final String WORKER_KEY_PREFIX = "order_worker:";
+    //租约时间，续租间隔是它的三分之一
+    private static final long LEASE_SECONDS = 60;
+    //距离上次续租成功超过这个时间就不再用当前机器id发号，留出15秒余量给进程卡顿和时钟误差
+    private static final long FENCE_NANOS = TimeUnit.SECONDS.toNanos(LEASE_SECONDS - 15);
+
+    //只有租约还是自己的才续期
+    private static final RedisScript<Long> RENEW_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('EXPIRE', KEYS[1], ARGV[2]) " +
+            "end " +
+            "return 0", Long.class);
+
+    private static final RedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then " +
+            "  return redis.call('DEL', KEYS[1]) " +
+            "end " +
+            "return 0", Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    //当前节点的标识，作为租约的值
+    private final String owner = UUID.randomUUID().toString();
+    private SnowflakeIdGenerator idGenerator;
+    //最近一次续租成功的时间，取的是发出请求之前的时间，比redis里租约实际开始的时间早
+    private volatile long lastRenewedNanos;
+
+    public OrderNumberGenerator(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        long start = nanoTime();
+        idGenerator = new SnowflakeIdGenerator(acquireWorkerId());
+        lastRenewedNanos = start;
+    }
+
+    /**
+     * 生成订单号，租约可能已经失效时先续租，续租失败就抛出异常，不会用可能重复的机器id发号
+     * @return
+     */
+    public String nextNumber() {
+        if (nanoTime() - lastRenewedNanos >= FENCE_NANOS) {
+            renewLease(true);
+        }
+        return String.valueOf(idGenerator.nextId());
+    }
+
+    /**
+     * 定时续租，租约丢了(比如redis主从切换)就重新申请一个机器id
+     */
+    @Scheduled(fixedDelay = LEASE_SECONDS * 1000 / 3)
+    public void renew() {
+        try {
+            renewLease(false);
+        } catch (Exception e) {
+            log.error("订单号机器id{}续租失败", idGenerator.getWorkerId(), e);
+        }
+    }
+
+    /**
+     * @param onlyIfFenced 发号时调用，其他线程已经续租成功的话不再重复续租
+     */
+    private synchronized void renewLease(boolean onlyIfFenced) {
+        long start = nanoTime();
+        if (onlyIfFenced && start - lastRenewedNanos < FENCE_NANOS) {
+            return;
+        }
+        long workerId = idGenerator.getWorkerId();
+        Long renewed = stringRedisTemplate.execute(RENEW_SCRIPT,
+                Collections.singletonList(WORKER_KEY_PREFIX + workerId), owner, String.valueOf(LEASE_SECONDS));
+        if (renewed == null || renewed == 0) {
+            log.warn("订单号机器id{}租约已失效，重新申请", workerId);
+            idGenerator.setWorkerId(acquireWorkerId());
+        }
+        lastRenewedNanos = start;
+    }
+
+    @PreDestroy
+    public void release() {
+        stringRedisTemplate.execute(RELEASE_SCRIPT,
+                Collections.singletonList(WORKER_KEY_PREFIX + idGenerator.getWorkerId()), owner);
+    }
+
+    private long acquireWorkerId() {
+        for (long workerId = 0; workerId <= SnowflakeIdGenerator.MAX_WORKER_ID; workerId++) {
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(WORKER_KEY_PREFIX + workerId, owner, LEASE_SECONDS, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                log.info("订单号机器id：{}", workerId);
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有可用的订单号机器id");
+    }
+
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+}
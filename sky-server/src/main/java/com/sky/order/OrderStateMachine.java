@@ -0,0 +1,171 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.report.SalesRanking;
+import com.sky.websocket.OrderPushHandler;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 订单状态机：合法的状态变更定义在OrderEvent里
+ * 每次变更是一条条件更新 update orders set status = ? ... where id = ? and status = 读到的状态，不加行锁
+ * 商家操作、支付回调、超时取消并发修改同一个订单时，只有一个能更新成功，其余的重新读取后按新状态判断
+ * 更新成功后(有事务时在提交后)更新状态计数、每日统计、销量排行
+ */
+@Component
+@Slf4j
+public class OrderStateMachine {
+
+    //当前状态被并发修改、但新状态仍允许这个事件时，最多重试的次数
+    private static final int MAX_RETRIES = 3;
+
+    private final OrderMapper orderMapper;
+    private final OrderDetailMapper orderDetailMapper;
+    private final SqlSessionTemplate batchSqlSession;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderStatusCounter orderStatusCounter;
+    private final DailyStatsRecorder dailyStatsRecorder;
+    private final SalesRanking salesRanking;
+    private final OrderPushHandler orderPushHandler;
+
+    public OrderStateMachine(OrderMapper orderMapper, OrderDetailMapper orderDetailMapper,
+                             SqlSessionFactory sqlSessionFactory, TransactionTemplate transactionTemplate,
+                             OrderStatusCounter orderStatusCounter, DailyStatsRecorder dailyStatsRecorder,
+                             SalesRanking salesRanking, OrderPushHandler orderPushHandler) {
+        this.orderMapper = orderMapper;
+        this.orderDetailMapper = orderDetailMapper;
+        //批量执行器，一批条件更新一次发给数据库，并能拿到每条的影响行数
+        this.batchSqlSession = new SqlSessionTemplate(sqlSessionFactory, ExecutorType.BATCH);
+        this.transactionTemplate = transactionTemplate;
+        this.orderStatusCounter = orderStatusCounter;
+        this.dailyStatsRecorder = dailyStatsRecorder;
+        this.salesRanking = salesRanking;
+        this.orderPushHandler = orderPushHandler;
+    }
+
+    /**
+     * 变更一个订单的状态
+     * @param event
+     * @param changes id必填；userId不为空时只能修改该用户的订单；可以带取消原因、拒单原因
+     * @return 变更前的订单
+     */
+    public Orders fire(OrderEvent event, Orders changes) {
+        for (int attempt = 0; ; attempt++) {
+            Orders current = orderMapper.getById(changes.getId());
+            if (current == null || (changes.getUserId() != null && !changes.getUserId().equals(current.getUserId()))) {
+                throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+            }
+            if (!event.allows(current.getStatus())) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            event.apply(changes, LocalDateTime.now());
+            if (orderMapper.updateStatus(changes, Collections.singletonList(current.getStatus())) == 1) {
+                afterCommit(() -> applied(event, current.getStatus(), current, null));
+                return current;
+            }
+            if (attempt == MAX_RETRIES) {
+                throw new OrderBusinessException(MessageConstant.ORDER_STATUS_ERROR);
+            }
+            log.debug("订单{}状态已被修改，重新读取后重试{}", changes.getId(), event);
+        }
+    }
+
+    /**
+     * 批量变更，只用于只有一个允许状态的事件(超时处理)，一个事务里批量条件更新
+     * @param event
+     * @param ids
+     * @return 更新成功的订单id
+     */
+    public List<Long> fireBatch(OrderEvent event, List<Long> ids) {
+        if (event.getFrom().size() != 1) {
+            throw new IllegalArgumentException(event + "有多个允许的状态，不能批量处理");
+        }
+        Integer from = event.getFrom().get(0);
+        LocalDateTime now = LocalDateTime.now();
+        List<Long> updated = transactionTemplate.execute(status -> {
+            OrderMapper batchMapper = batchSqlSession.getMapper(OrderMapper.class);
+            for (Long id : ids) {
+                Orders orders = new Orders();
+                orders.setId(id);
+                event.apply(orders, now);
+                batchMapper.updateStatus(orders, event.getFrom());
+            }
+            List<Long> list = new ArrayList<>();
+            for (BatchResult batchResult : batchSqlSession.flushStatements()) {
+                int[] updateCounts = batchResult.getUpdateCounts();
+                List<Object> parameters = batchResult.getParameterObjects();
+                for (int i = 0; i < updateCounts.length; i++) {
+                    if (updateCounts[i] > 0) {
+                        list.add(((Orders) ((Map<?, ?>) parameters.get(i)).get("orders")).getId());
+                    }
+                }
+            }
+            return list;
+        });
+        if (updated == null || updated.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Orders> ordersList = orderMapper.getByIds(updated);
+        Map<Long, List<OrderDetail>> detailMap = Orders.COMPLETED.equals(event.getTo())
+                ? orderDetailMapper.getByOrderIds(updated).stream().collect(Collectors.groupingBy(OrderDetail::getOrderId))
+                : Collections.emptyMap();
+        for (Orders orders : ordersList) {
+            applied(event, from, orders, detailMap.getOrDefault(orders.getId(), Collections.emptyList()));
+        }
+        return updated;
+    }
+
+    /**
+     * 状态变更成功后更新统计
+     * @param orderDetailList 变更为已完成时的订单明细，为null时查询
+     */
+    private void applied(OrderEvent event, Integer from, Orders orders, List<OrderDetail> orderDetailList) {
+        Integer to = event.getTo();
+        orderStatusCounter.transition(from, to);
+        if (Orders.CANCELLED.equals(to)) {
+            dailyStatsRecorder.orderCancelled(orders.getOrderTime());
+        } else if (Orders.COMPLETED.equals(to)) {
+            dailyStatsRecorder.orderCompleted(orders.getOrderTime(), orders.getAmount());
+            salesRanking.orderCompleted(orders.getOrderTime(),
+                    orderDetailList != null ? orderDetailList : orderDetailMapper.getByOrderId(orders.getId()));
+        }
+        if (event == OrderEvent.PAY) {
+            //支付成功后提醒商家来单
+            orderPushHandler.newOrder(orders);
+        }
+    }
+
+    private static void afterCommit(Runnable runnable) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            runnable.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runnable.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,198 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.vo.OrderStatisticsVO;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 各状态的订单数，存在redis的一个hash里(字段是状态，值是订单数)
+ * 订单写库、状态变更的事务提交后更新计数，管理端工作台直接读计数，不再对订单表count
+ * 计数可能因为进程在提交后、更新计数前退出而出现偏差，由定时对账修正
+ * hash不存在时(首次上线、redis清空)由对账按订单表的count(*)重新写入
+ */
+@Component
+@Slf4j
+public class OrderStatusCounter {
+
+    private static final String COUNT_KEY = "order_status_count";
+    private static final String RECONCILE_LOCK_KEY = "order_status_count:reconcile";
+    //上一次对账发现的偏差，字段是状态，值是偏差
+    private static final String LAST_DRIFT_KEY = "order_status_count:last_drift";
+    //比两个对账周期略长，隔了太久的偏差不再拿来比较
+    private static final long LAST_DRIFT_TTL_MINUTES = 12;
+
+    //一次状态变更原子地把旧状态减一、新状态加一
+    private static final RedisScript<Long> TRANSITION_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HINCRBY', KEYS[1], ARGV[1], -1) " +
+            "redis.call('HINCRBY', KEYS[1], ARGV[2], 1) " +
+            "return 1", Long.class);
+
+    //hash不存在时才写入，ARGV是 状态,订单数 成对出现；返回0表示hash已经存在
+    private static final RedisScript<Long> SEED_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "for i = 1, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "return 1", Long.class);
+
+    private static final List<Object> STATISTICS_FIELDS = Arrays.asList(
+            String.valueOf(Orders.TO_BE_CONFIRMED),
+            String.valueOf(Orders.CONFIRMED),
+            String.valueOf(Orders.DELIVERY_IN_PROGRESS));
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderMapper orderMapper;
+
+    public OrderStatusCounter(StringRedisTemplate stringRedisTemplate, OrderMapper orderMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderMapper = orderMapper;
+    }
+
+    /**
+     * 新订单写库成功
+     * @param status 订单的初始状态
+     */
+    public void created(Integer status) {
+        stringRedisTemplate.opsForHash().increment(COUNT_KEY, String.valueOf(status), 1);
+    }
+
+    /**
+     * 订单状态变更成功
+     * @param from
+     * @param to
+     */
+    public void transition(Integer from, Integer to) {
+        stringRedisTemplate.execute(TRANSITION_SCRIPT, Collections.singletonList(COUNT_KEY),
+                String.valueOf(from), String.valueOf(to));
+    }
+
+    /**
+     * 待接单、待派送、派送中的订单数，一次HMGET
+     * @return
+     */
+    public OrderStatisticsVO statistics() {
+        List<Object> values = stringRedisTemplate.opsForHash().multiGet(COUNT_KEY, STATISTICS_FIELDS);
+        OrderStatisticsVO orderStatisticsVO = new OrderStatisticsVO();
+        orderStatisticsVO.setToBeConfirmed(toInt(values.get(0)));
+        orderStatisticsVO.setConfirmed(toInt(values.get(1)));
+        orderStatisticsVO.setDeliveryInProgress(toInt(values.get(2)));
+        return orderStatisticsVO;
+    }
+
+    /**
+     * 和订单表对账，锁的有效期比对账间隔略短，每个周期只有一个节点执行
+     * 修正时按偏差做HINCRBY而不是直接覆盖，对账期间发生的状态变更不会被冲掉
+     * 连续两次偏差相同才修正，避免把刚提交、还没来得及更新计数的订单当成偏差；上一次的偏差存在redis里，
+     * 两次对账落在不同节点上也能比较
+     */
+    @Scheduled(fixedDelay = 5 * 60 * 1000, initialDelay = 60 * 1000)
+    public synchronized void reconcile() {
+        Boolean locked = stringRedisTemplate.opsForValue().setIfAbsent(RECONCILE_LOCK_KEY, "1", 4, TimeUnit.MINUTES);
+        if (!Boolean.TRUE.equals(locked)) {
+            return;
+        }
+        Map<Integer, Long> actual = countByStatus();
+        if (seed(actual)) {
+            log.info("订单状态计数不存在，按订单表写入：{}", actual);
+            stringRedisTemplate.delete(LAST_DRIFT_KEY);
+            return;
+        }
+        Map<Integer, Long> drift = drift(actual);
+        if (drift.isEmpty() || !drift.equals(lastDrift())) {
+            saveLastDrift(drift);
+            return;
+        }
+        log.warn("订单状态计数和订单表不一致，修正：{}", drift);
+        drift.forEach((status, delta) ->
+                stringRedisTemplate.opsForHash().increment(COUNT_KEY, String.valueOf(status), delta));
+        stringRedisTemplate.delete(LAST_DRIFT_KEY);
+    }
+
+    private Map<Integer, Long> countByStatus() {
+        Map<Integer, Long> actual = new HashMap<>();
+        for (Map<String, Object> row : orderMapper.countByStatus()) {
+            actual.put(((Number) row.get("status")).intValue(), ((Number) row.get("count")).longValue());
+        }
+        return actual;
+    }
+
+    /**
+     * hash不存在时按订单表的计数写入
+     * @return 是否写入了
+     */
+    private boolean seed(Map<Integer, Long> actual) {
+        if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(COUNT_KEY))) {
+            return false;
+        }
+        List<String> args = new ArrayList<>();
+        actual.forEach((status, count) -> {
+            args.add(String.valueOf(status));
+            args.add(String.valueOf(count));
+        });
+        if (args.isEmpty()) {
+            //还没有订单，写一个0占位，下次不再重复写入
+            args.add(String.valueOf(Orders.PENDING_PAYMENT));
+            args.add("0");
+        }
+        Long seeded = stringRedisTemplate.execute(SEED_SCRIPT, Collections.singletonList(COUNT_KEY), args.toArray());
+        return seeded != null && seeded == 1;
+    }
+
+    private Map<Integer, Long> lastDrift() {
+        Map<Integer, Long> lastDrift = new HashMap<>();
+        stringRedisTemplate.opsForHash().entries(LAST_DRIFT_KEY)
+                .forEach((status, delta) -> lastDrift.put(Integer.valueOf((String) status), Long.valueOf((String) delta)));
+        return lastDrift;
+    }
+
+    private void saveLastDrift(Map<Integer, Long> drift) {
+        stringRedisTemplate.delete(LAST_DRIFT_KEY);
+        if (drift.isEmpty()) {
+            return;
+        }
+        Map<String, String> fields = new HashMap<>();
+        drift.forEach((status, delta) -> fields.put(String.valueOf(status), String.valueOf(delta)));
+        stringRedisTemplate.opsForHash().putAll(LAST_DRIFT_KEY, fields);
+        stringRedisTemplate.expire(LAST_DRIFT_KEY, LAST_DRIFT_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 订单表的计数减去redis里的计数，只包含不相等的状态
+     */
+    private Map<Integer, Long> drift(Map<Integer, Long> actual) {
+        Map<Integer, Long> counted = new HashMap<>();
+        stringRedisTemplate.opsForHash().entries(COUNT_KEY)
+                .forEach((status, count) -> counted.put(Integer.valueOf((String) status), Long.valueOf((String) count)));
+
+        Map<Integer, Long> drift = new HashMap<>();
+        actual.forEach((status, count) -> {
+            long delta = count - counted.getOrDefault(status, 0L);
+            if (delta != 0) {
+                drift.put(status, delta);
+            }
+        });
+        counted.forEach((status, count) -> {
+            if (!actual.containsKey(status) && count != 0) {
+                drift.put(status, -count);
+            }
+        });
+        return drift;
+    }
+
+    private static int toInt(Object value) {
+        return value == null ? 0 : Integer.parseInt(Objects.toString(value));
+    }
+}
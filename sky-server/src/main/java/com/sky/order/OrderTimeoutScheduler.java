@@ -0,0 +1,244 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.utils.TimingWheel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 订单超时：未支付自动取消、派送中自动完成
+ * 定时任务存在redis有序集合里(成员是"类型:订单id"，分数是到期时间)，重启不丢
+ * 只有leader节点处理到期：每一格从redis加载新进入预读窗口的任务放进时间轮，时间轮到期的任务交给状态机批量条件更新
+ * 条件更新只改仍处于原状态的订单，任务已失效(订单已支付、已被取消)或被两个节点重复处理都没有影响
+ */
+@Component
+@Slf4j
+public class OrderTimeoutScheduler {
+
+    private static final String TIMER_KEY = "order_timeout";
+    private static final String LEADER_KEY = "order_timeout:leader";
+    private static final String PAY_TIMEOUT = "p";
+    private static final String DELIVERY_TIMEOUT = "d";
+    //每次从redis读取的条数
+    private static final int LOAD_PAGE_SIZE = 5000;
+    //每隔多少格检查一次漏掉的到期任务
+    private static final int OVERDUE_CHECK_TICKS = 10;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderStateMachine orderStateMachine;
+    private final OrderTimeoutProperties orderTimeoutProperties;
+    private final LeaderLease leaderLease;
+
+    //本节点新注册的任务，由定时线程放进时间轮
+    private final Queue<Timer> registered = new ConcurrentLinkedQueue<>();
+    private ScheduledExecutorService executor;
+
+    //以下字段只在定时线程里访问，不是leader时wheel为null
+    private TimingWheel<String, Long> wheel;
+    private long loadedUntil;
+    private long ticks;
+
+    public OrderTimeoutScheduler(StringRedisTemplate stringRedisTemplate, OrderStateMachine orderStateMachine,
+                                 OrderTimeoutProperties orderTimeoutProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderStateMachine = orderStateMachine;
+        this.orderTimeoutProperties = orderTimeoutProperties;
+        //租约时间是10格，续期每格一次
+        this.leaderLease = new LeaderLease(stringRedisTemplate, LEADER_KEY, orderTimeoutProperties.getTickMillis() * 10);
+    }
+
+    @PostConstruct
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "order-timeout");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long tickMillis = orderTimeoutProperties.getTickMillis();
+        executor.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        leaderLease.release();
+    }
+
+    /**
+     * 下单后注册未支付超时
+     * @param orders
+     */
+    public void registerPayTimeout(Orders orders) {
+        long orderTime = orders.getOrderTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        register(PAY_TIMEOUT, orders.getId(), orderTime + TimeUnit.MINUTES.toMillis(orderTimeoutProperties.getPayTimeoutMinutes()));
+    }
+
+    /**
+     * 支付成功后取消未支付超时
+     * @param orderId
+     */
+    public void cancelPayTimeout(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(TIMER_KEY, member(PAY_TIMEOUT, orderId));
+    }
+
+    /**
+     * 开始派送后注册自动完成
+     * @param orderId
+     */
+    public void registerDeliveryTimeout(Long orderId) {
+        register(DELIVERY_TIMEOUT, orderId,
+                currentTimeMillis() + TimeUnit.MINUTES.toMillis(orderTimeoutProperties.getDeliveryTimeoutMinutes()));
+    }
+
+    /**
+     * 送达后取消自动完成
+     * @param orderId
+     */
+    public void cancelDeliveryTimeout(Long orderId) {
+        stringRedisTemplate.opsForZSet().remove(TIMER_KEY, member(DELIVERY_TIMEOUT, orderId));
+    }
+
+    private void register(String type, Long orderId, long deadline) {
+        String member = member(type, orderId);
+        stringRedisTemplate.opsForZSet().add(TIMER_KEY, member, deadline);
+        //到期时间在已加载的窗口内，redis里的不会再被加载，本节点直接交给时间轮
+        registered.offer(new Timer(member, deadline));
+    }
+
+    /**
+     * 时间轮走一格，由定时线程每tickMillis调用一次
+     */
+    void tick() {
+        try {
+            long now = currentTimeMillis();
+            if (!leaderLease.hold()) {
+                if (wheel != null) {
+                    log.info("不再是订单超时处理节点");
+                    wheel = null;
+                }
+                registered.clear();
+                return;
+            }
+            if (wheel == null) {
+                log.info("成为订单超时处理节点");
+                wheel = new TimingWheel<>(orderTimeoutProperties.getTickMillis(), orderTimeoutProperties.getWheelSize(), now);
+                loadedUntil = Long.MIN_VALUE;
+            }
+            List<String> expired = new ArrayList<>();
+            Timer timer;
+            while ((timer = registered.poll()) != null) {
+                if (timer.deadline <= loadedUntil && !wheel.add(timer.member, timer.deadline, timer.deadline)) {
+                    expired.add(timer.member);
+                }
+            }
+            load(now, expired);
+            if (++ticks % OVERDUE_CHECK_TICKS == 0) {
+                loadOverdue(now, expired);
+            }
+            wheel.advance(now, (member, deadline) -> expired.add(member));
+            for (int i = 0; i < expired.size(); i += orderTimeoutProperties.getBatchSize()) {
+                fire(expired.subList(i, Math.min(expired.size(), i + orderTimeoutProperties.getBatchSize())));
+            }
+        } catch (Exception e) {
+            log.error("处理订单超时失败", e);
+        }
+    }
+
+    /**
+     * 加载(loadedUntil, now + 预读时间]内到期的任务，每格只读新进入窗口的部分
+     */
+    private void load(long now, List<String> expired) {
+        long until = now + TimeUnit.SECONDS.toMillis(orderTimeoutProperties.getLoadAheadSeconds());
+        double min = loadedUntil == Long.MIN_VALUE ? Double.NEGATIVE_INFINITY : loadedUntil + 1;
+        for (long offset = 0; ; offset += LOAD_PAGE_SIZE) {
+            Set<ZSetOperations.TypedTuple<String>> page = stringRedisTemplate.opsForZSet()
+                    .rangeByScoreWithScores(TIMER_KEY, min, until, offset, LOAD_PAGE_SIZE);
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            for (ZSetOperations.TypedTuple<String> tuple : page) {
+                long deadline = tuple.getScore().longValue();
+                if (!wheel.add(tuple.getValue(), deadline, deadline)) {
+                    expired.add(tuple.getValue());
+                }
+            }
+            if (page.size() < LOAD_PAGE_SIZE) {
+                break;
+            }
+        }
+        loadedUntil = until;
+    }
+
+    /**
+     * 已到期但还在redis里的任务：其他节点注册的、到期时间落在已加载窗口内的，或者上次处理失败的
+     */
+    private void loadOverdue(long now, List<String> expired) {
+        Set<String> overdue = stringRedisTemplate.opsForZSet()
+                .rangeByScore(TIMER_KEY, Double.NEGATIVE_INFINITY, now - orderTimeoutProperties.getTickMillis(),
+                        0, LOAD_PAGE_SIZE);
+        if (overdue == null) {
+            return;
+        }
+        //expired可能有上万条，用HashSet去重
+        Set<String> seen = new HashSet<>(expired);
+        for (String member : overdue) {
+            if (!wheel.contains(member) && seen.add(member)) {
+                expired.add(member);
+            }
+        }
+    }
+
+    /**
+     * 一批到期任务按类型交给状态机批量条件更新，再从redis删除
+     * 失败的整批留在redis里，之后作为漏掉的到期任务重试
+     */
+    private void fire(List<String> members) {
+        Map<String, List<Long>> idsByType = members.stream().collect(Collectors.groupingBy(
+                member -> member.substring(0, member.indexOf(':')),
+                Collectors.mapping(member -> Long.valueOf(member.substring(member.indexOf(':') + 1)), Collectors.toList())));
+        int updated = 0;
+        for (Map.Entry<String, List<Long>> entry : idsByType.entrySet()) {
+            OrderEvent event = PAY_TIMEOUT.equals(entry.getKey()) ? OrderEvent.PAY_TIMEOUT : OrderEvent.DELIVERY_TIMEOUT;
+            updated += orderStateMachine.fireBatch(event, entry.getValue()).size();
+        }
+        stringRedisTemplate.opsForZSet().remove(TIMER_KEY, members.toArray());
+        log.info("处理到期订单{}个，更新{}个", members.size(), updated);
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    private static String member(String type, Long orderId) {
+        return type + ":" + orderId;
+    }
+
+    private static final class Timer {
+        private final String member;
+        private final long deadline;
+
+        Timer(String member, long deadline) {
+            this.member = member;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.sky.order;
+
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.PricingProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 起售中菜品、套餐价格的内存索引，下单时计算金额用，不用每个商品查一次数据库
+ * 两个map构建好后不再修改，整体替换，读的时候不加锁
+ * 管理端改菜品、套餐时会发布菜单缓存失效消息，收到后重新加载；另外定时全量刷新兜底
+ * 查不到的商品按间隔限制重新加载，不存在的id反复下单不会每次都全量查两张表
+ */
+@Component
+@Slf4j
+public class PriceIndex implements MessageListener {
+
+    private final DishMapper dishMapper;
+    private final SetmealMapper setmealMapper;
+    private final PricingProperties pricingProperties;
+
+    private volatile Map<Long, BigDecimal> dishPrices = Collections.emptyMap();
+    private volatile Map<Long, BigDecimal> setmealPrices = Collections.emptyMap();
+    private volatile long loadedAt;
+
+    public PriceIndex(DishMapper dishMapper, SetmealMapper setmealMapper, PricingProperties pricingProperties) {
+        this.dishMapper = dishMapper;
+        this.setmealMapper = setmealMapper;
+        this.pricingProperties = pricingProperties;
+    }
+
+    @PostConstruct
+    @Scheduled(fixedDelay = 5 * 60 * 1000, initialDelay = 5 * 60 * 1000)
+    public synchronized void reload() {
+        Map<Long, BigDecimal> dishes = new HashMap<>();
+        for (Dish dish : dishMapper.listPrices()) {
+            dishes.put(dish.getId(), dish.getPrice());
+        }
+        Map<Long, BigDecimal> setmeals = new HashMap<>();
+        for (Setmeal setmeal : setmealMapper.listPrices()) {
+            setmeals.put(setmeal.getId(), setmeal.getPrice());
+        }
+        dishPrices = dishes;
+        setmealPrices = setmeals;
+        loadedAt = currentTimeMillis();
+        log.debug("价格索引已加载，菜品{}个，套餐{}个", dishes.size(), setmeals.size());
+    }
+
+    /**
+     * 查询菜品价格，索引里没有(可能是刚起售、失效消息还没到)且距上次加载超过间隔时重新加载一次
+     * @param dishId
+     * @return 菜品不存在或已停售返回null
+     */
+    public BigDecimal getDishPrice(Long dishId) {
+        BigDecimal price = dishPrices.get(dishId);
+        if (price == null && reloadOnMiss()) {
+            price = dishPrices.get(dishId);
+        }
+        return price;
+    }
+
+    /**
+     * 查询套餐价格
+     * @param setmealId
+     * @return 套餐不存在或已停售返回null
+     */
+    public BigDecimal getSetmealPrice(Long setmealId) {
+        BigDecimal price = setmealPrices.get(setmealId);
+        if (price == null && reloadOnMiss()) {
+            price = setmealPrices.get(setmealId);
+        }
+        return price;
+    }
+
+    /**
+     * 距上次加载超过间隔才重新加载，同时未命中的请求只有一个去查库，其余的等它加载完直接用结果
+     * @return 没有重新加载返回false
+     */
+    private boolean reloadOnMiss() {
+        long loadedAt = this.loadedAt;
+        if (currentTimeMillis() - loadedAt < pricingProperties.getMissReloadIntervalMillis()) {
+            return false;
+        }
+        synchronized (this) {
+            if (this.loadedAt == loadedAt) {
+                reload();
+            }
+        }
+        return true;
+    }
+
+    protected long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * 菜单有变化，重新加载价格
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        reload();
+    }
+}
@@ -0,0 +1,61 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.PricingProperties;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * 订单计价：按当前菜品、套餐价格重新计算金额，和前端提交的金额对不上就拒绝下单
+ * 订单金额 = 商品金额 + 打包费 + 配送费，打包费按份数计算
+ */
+@Component
+public class PricingEngine {
+
+    private final PriceIndex priceIndex;
+    private final PricingProperties pricingProperties;
+
+    public PricingEngine(PriceIndex priceIndex, PricingProperties pricingProperties) {
+        this.priceIndex = priceIndex;
+        this.pricingProperties = pricingProperties;
+    }
+
+    /**
+     * 用当前价格更新订单明细的单价，计算打包费和订单金额，并与前端提交的金额核对
+     * @param orders 前端提交的金额和打包费已拷贝到这里
+     * @param orderDetailList
+     */
+    public void price(Orders orders, List<OrderDetail> orderDetailList) {
+        BigDecimal itemAmount = BigDecimal.ZERO;
+        int count = 0;
+        for (OrderDetail orderDetail : orderDetailList) {
+            BigDecimal price = orderDetail.getDishId() != null
+                    ? priceIndex.getDishPrice(orderDetail.getDishId())
+                    : priceIndex.getSetmealPrice(orderDetail.getSetmealId());
+            if (price == null) {
+                throw new OrderBusinessException(MessageConstant.ORDER_ITEM_NOT_FOUND);
+            }
+            orderDetail.setAmount(price);
+            itemAmount = itemAmount.add(price.multiply(BigDecimal.valueOf(orderDetail.getNumber())));
+            count += orderDetail.getNumber();
+        }
+
+        int packAmount = count * pricingProperties.getPackFeePerItem();
+        BigDecimal amount = itemAmount
+                .add(BigDecimal.valueOf(packAmount))
+                .add(pricingProperties.getDeliveryFee());
+
+        if (orders.getPackAmount() != packAmount
+                || orders.getAmount() == null
+                || orders.getAmount().compareTo(amount) != 0) {
+            throw new OrderBusinessException(MessageConstant.ORDER_AMOUNT_ERROR);
+        }
+        orders.setPackAmount(packAmount);
+        orders.setAmount(amount);
+    }
+}
@@ -0,0 +1,113 @@
+package com.sky.report;
+
+import com.sky.entity.DailyStats;
+import com.sky.entity.Orders;
+import org.apache.poi.ss.SpreadsheetVersion;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+/**
+ * 运营数据导出：第一页是每天的运营数据，第二页是订单明细
+ * 使用SXSSF流式写入，内存里只保留最近ROW_WINDOW行，更早的行写到临时文件，订单再多内存占用也不变
+ * 订单明细由调用方以游标的方式逐行提供
+ */
+public class BusinessDataExcelWriter {
+
+    //内存中保留的行数
+    private static final int ROW_WINDOW = 200;
+
+    //xlsx每页最多1048576行
+    private static final int MAX_ROW_INDEX = SpreadsheetVersion.EXCEL2007.getLastRowIndex();
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    //下标对应订单状态 1待付款 2待接单 3已接单 4派送中 5已完成 6已取消 7退款
+    private static final String[] STATUS_NAMES = {"", "待付款", "待接单", "已接单", "派送中", "已完成", "已取消", "退款"};
+
+    private static final String[] SUMMARY_HEADERS = {"日期", "营业额", "有效订单", "订单完成率", "平均客单价", "新增用户数"};
+    private static final String[] ORDER_HEADERS = {"订单号", "下单时间", "状态", "金额", "收货人", "手机号", "地址", "备注"};
+
+    /**
+     * @param statsList 每天的统计
+     * @param orders 订单，一般是mybatis的Cursor，写完一行就可以丢掉
+     * @param out 直接写到响应流
+     * @return 导出的订单数
+     */
+    public long write(List<DailyStats> statsList, Iterable<Orders> orders, OutputStream out) throws IOException {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_WINDOW);
+        workbook.setCompressTempFiles(true);
+        try {
+            writeSummary(workbook.createSheet("运营数据"), statsList);
+            long count = writeOrders(workbook, orders);
+            workbook.write(out);
+            return count;
+        } finally {
+            //删除临时文件
+            workbook.dispose();
+            workbook.close();
+        }
+    }
+
+    private void writeSummary(Sheet sheet, List<DailyStats> statsList) {
+        writeHeader(sheet, SUMMARY_HEADERS);
+        int rowIndex = 1;
+        for (DailyStats stats : statsList) {
+            Row row = sheet.createRow(rowIndex++);
+            int orderCount = stats.getOrderCount();
+            int validOrderCount = stats.getValidOrderCount();
+            row.createCell(0).setCellValue(stats.getStatDate().toString());
+            row.createCell(1).setCellValue(stats.getTurnover().doubleValue());
+            row.createCell(2).setCellValue(validOrderCount);
+            row.createCell(3).setCellValue(orderCount == 0 ? 0.0 : (double) validOrderCount / orderCount);
+            row.createCell(4).setCellValue(validOrderCount == 0 ? 0.0
+                    : stats.getTurnover().divide(BigDecimal.valueOf(validOrderCount), 2, RoundingMode.HALF_UP).doubleValue());
+            row.createCell(5).setCellValue(stats.getNewUserCount());
+        }
+    }
+
+    private long writeOrders(SXSSFWorkbook workbook, Iterable<Orders> orders) {
+        int sheetCount = 1;
+        Sheet sheet = workbook.createSheet("订单明细");
+        writeHeader(sheet, ORDER_HEADERS);
+        int rowIndex = 1;
+        long count = 0;
+        for (Orders order : orders) {
+            //一页写满后换下一页
+            if (rowIndex > MAX_ROW_INDEX) {
+                sheet = workbook.createSheet("订单明细" + ++sheetCount);
+                writeHeader(sheet, ORDER_HEADERS);
+                rowIndex = 1;
+            }
+            count++;
+            Row row = sheet.createRow(rowIndex++);
+            row.createCell(0).setCellValue(order.getNumber());
+            row.createCell(1).setCellValue(order.getOrderTime() == null ? "" : order.getOrderTime().format(TIME_FORMATTER));
+            row.createCell(2).setCellValue(statusName(order.getStatus()));
+            row.createCell(3).setCellValue(order.getAmount() == null ? 0.0 : order.getAmount().doubleValue());
+            row.createCell(4).setCellValue(order.getConsignee());
+            row.createCell(5).setCellValue(order.getPhone());
+            row.createCell(6).setCellValue(order.getAddress());
+            row.createCell(7).setCellValue(order.getRemark());
+        }
+        return count;
+    }
+
+    private void writeHeader(Sheet sheet, String[] headers) {
+        Row row = sheet.createRow(0);
+        for (int i = 0; i < headers.length; i++) {
+            row.createCell(i).setCellValue(headers[i]);
+        }
+    }
+
+    private static String statusName(Integer status) {
+        return status != null && status > 0 && status < STATUS_NAMES.length ? STATUS_NAMES[status] : "";
+    }
+}
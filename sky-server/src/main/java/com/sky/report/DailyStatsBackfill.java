@@ -0,0 +1,149 @@
+package com.sky.report;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.DailyStats;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.order.LeaderLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 按订单表、用户表重算每日统计和销量排行，覆盖增量累加的结果
+ * 每天凌晨重算前一天，修正进程重启丢失的增量；上线时或数据有问题时通过接口重算指定日期范围
+ * 一次只统计一天，每次查询只扫描一天的订单；一次最多重算MAX_DAYS天
+ * 重算前通知所有节点丢掉这一天还没写入的增量，否则覆盖后这些增量再写入会重复累加
+ * 同一时间只有一个节点在重算：定时任务每个节点都会触发，抢到租约的节点执行，其余跳过
+ * 上线前的日期没有统计：启动后和之后每小时检查从最早的订单、用户到昨天有没有缺的天，按MAX_DAYS天一段补算
+ * 用户总数由每天的新增用户累加，所以每一天都要有记录
+ */
+@Component
+@Slf4j
+public class DailyStatsBackfill {
+
+    public static final int MAX_DAYS = 31;
+
+    private static final String LEASE_KEY = "daily_stats_backfill:leader";
+
+    private final DailyStatsMapper dailyStatsMapper;
+    private final SalesRanking salesRanking;
+    private final DailyStatsRecorder dailyStatsRecorder;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final LeaderLease leaderLease;
+
+    public DailyStatsBackfill(DailyStatsMapper dailyStatsMapper, SalesRanking salesRanking,
+                              DailyStatsRecorder dailyStatsRecorder, StringRedisTemplate stringRedisTemplate) {
+        this.dailyStatsMapper = dailyStatsMapper;
+        this.salesRanking = salesRanking;
+        this.dailyStatsRecorder = dailyStatsRecorder;
+        this.stringRedisTemplate = stringRedisTemplate;
+        //每重算完一天续期一次
+        this.leaderLease = new LeaderLease(stringRedisTemplate, LEASE_KEY, TimeUnit.MINUTES.toMillis(10));
+    }
+
+    /**
+     * 每天0点10分重算前一天，留出时间让前一天最后的增量先写入
+     */
+    @Scheduled(cron = "0 10 0 * * ?")
+    public void backfillYesterday() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        try {
+            backfill(yesterday, yesterday);
+        } catch (ReportBusinessException e) {
+            log.info("其他节点正在重算每日统计，本节点跳过");
+        }
+    }
+
+    /**
+     * 补算缺少统计的日期：先用一条count判断有没有缺，有缺的再按段找出缺的日期补算
+     * 每段单独抢租约，其他节点正在重算时跳过，下次再补
+     */
+    @Scheduled(initialDelay = 60 * 1000, fixedDelay = 60 * 60 * 1000)
+    public void fillMissingDays() {
+        LocalDate first = dailyStatsMapper.firstActivityDate();
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        if (first == null || first.isAfter(yesterday)
+                || dailyStatsMapper.countDays(first, yesterday) == ChronoUnit.DAYS.between(first, yesterday) + 1) {
+            return;
+        }
+        for (LocalDate begin = first; !begin.isAfter(yesterday); begin = begin.plusDays(MAX_DAYS)) {
+            LocalDate end = begin.plusDays(MAX_DAYS - 1).isAfter(yesterday) ? yesterday : begin.plusDays(MAX_DAYS - 1);
+            Set<LocalDate> existing = dailyStatsMapper.listByRange(begin, end).stream()
+                    .map(DailyStats::getStatDate)
+                    .collect(Collectors.toSet());
+            LocalDate firstMissing = null;
+            LocalDate lastMissing = null;
+            for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+                if (!existing.contains(date)) {
+                    firstMissing = firstMissing == null ? date : firstMissing;
+                    lastMissing = date;
+                }
+            }
+            if (firstMissing == null) {
+                continue;
+            }
+            try {
+                backfill(firstMissing, lastMissing);
+            } catch (ReportBusinessException e) {
+                log.info("其他节点正在重算每日统计，本节点稍后再补");
+                return;
+            }
+        }
+    }
+
+    /**
+     * 重算日期范围内的每日统计，包含首尾两天
+     * @param begin
+     * @param end
+     * @throws ReportBusinessException 日期范围有误，或者其他节点正在重算
+     */
+    public synchronized void backfill(LocalDate begin, LocalDate end) {
+        if (begin == null || end == null || end.isBefore(begin)
+                || ChronoUnit.DAYS.between(begin, end) + 1 > MAX_DAYS) {
+            throw new ReportBusinessException(MessageConstant.BACKFILL_RANGE_ERROR);
+        }
+        if (!leaderLease.hold()) {
+            throw new ReportBusinessException(MessageConstant.BACKFILL_RUNNING);
+        }
+        try {
+            log.info("重算每日统计：{} ~ {}", begin, end);
+            for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+                if (!leaderLease.hold()) {
+                    throw new ReportBusinessException(MessageConstant.BACKFILL_RUNNING);
+                }
+                recompute(date);
+            }
+        } finally {
+            leaderLease.release();
+        }
+    }
+
+    private void recompute(LocalDate date) {
+        //各节点收到通知后丢掉这一天的增量，本节点直接丢，不等消息
+        stringRedisTemplate.convertAndSend(DailyStatsRecorder.RECOMPUTE_CHANNEL, date.toString());
+        dailyStatsRecorder.discard(date);
+
+        LocalDateTime dayBegin = date.atStartOfDay();
+        LocalDateTime dayEnd = date.plusDays(1).atStartOfDay();
+
+        DailyStats orderStats = dailyStatsMapper.aggregateOrders(dayBegin, dayEnd);
+        orderStats.setStatDate(date);
+        dailyStatsMapper.replaceOrderStats(orderStats);
+
+        dailyStatsMapper.replaceUserStats(DailyStats.builder()
+                .statDate(date)
+                .newUserCount(dailyStatsMapper.countUsers(dayBegin, dayEnd))
+                .build());
+
+        salesRanking.rebuild(date);
+    }
+}
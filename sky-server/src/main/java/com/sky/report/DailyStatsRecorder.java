@@ -0,0 +1,159 @@
+package com.sky.report;
+
+import com.sky.entity.DailyStats;
+import com.sky.mapper.DailyStatsMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 每日统计的增量记录：下单、完成、取消、注册时在内存里按日期累加，定时合并写入daily_stats
+ * 不在下单事务里更新当天那一行，避免所有下单请求抢同一行的行锁
+ * 进程异常退出会丢掉最后几秒的增量，由每天凌晨的重算(DailyStatsBackfill)修正
+ * 重算某一天前会通过RECOMPUTE_CHANNEL通知所有节点丢掉这一天还没写入的增量，避免重算后再累加一遍
+ */
+@Component
+@Slf4j
+public class DailyStatsRecorder implements MessageListener {
+
+    //重算通知的频道，消息内容是要重算的日期
+    public static final String RECOMPUTE_CHANNEL = "daily_stats_recompute";
+
+    private final DailyStatsMapper dailyStatsMapper;
+    private final Map<LocalDate, Delta> pending = new ConcurrentHashMap<>();
+
+    public DailyStatsRecorder(DailyStatsMapper dailyStatsMapper) {
+        this.dailyStatsMapper = dailyStatsMapper;
+    }
+
+    /**
+     * 新订单，订单写库成功后调用
+     * @param orderTime 下单时间
+     */
+    public void orderCreated(LocalDateTime orderTime) {
+        pending.compute(orderTime.toLocalDate(), (date, delta) -> {
+            delta = delta == null ? new Delta() : delta;
+            delta.orderCount++;
+            return delta;
+        });
+    }
+
+    /**
+     * 订单完成，计入下单那天的有效订单数和营业额
+     * @param orderTime 下单时间
+     * @param amount 订单金额
+     */
+    public void orderCompleted(LocalDateTime orderTime, BigDecimal amount) {
+        pending.compute(orderTime.toLocalDate(), (date, delta) -> {
+            delta = delta == null ? new Delta() : delta;
+            delta.validOrderCount++;
+            delta.turnover = delta.turnover.add(amount);
+            return delta;
+        });
+    }
+
+    /**
+     * 订单取消，计入下单那天的取消数
+     * @param orderTime 下单时间
+     */
+    public void orderCancelled(LocalDateTime orderTime) {
+        pending.compute(orderTime.toLocalDate(), (date, delta) -> {
+            delta = delta == null ? new Delta() : delta;
+            delta.cancelledOrderCount++;
+            return delta;
+        });
+    }
+
+    /**
+     * 新用户注册
+     * @param createTime 注册时间
+     */
+    public void userRegistered(LocalDateTime createTime) {
+        pending.compute(createTime.toLocalDate(), (date, delta) -> {
+            delta = delta == null ? new Delta() : delta;
+            delta.newUserCount++;
+            return delta;
+        });
+    }
+
+    /**
+     * 把累加的增量写入数据库，写失败的放回去下次再写
+     */
+    @Scheduled(fixedDelay = 5000)
+    @PreDestroy
+    public void flush() {
+        List<LocalDate> dates = new ArrayList<>(pending.keySet());
+        for (LocalDate date : dates) {
+            //remove和compute对同一个key互斥，取出后新的增量会进到新的Delta里
+            Delta delta = pending.remove(date);
+            if (delta == null) {
+                continue;
+            }
+            try {
+                dailyStatsMapper.increment(delta.toDailyStats(date));
+            } catch (Exception e) {
+                log.error("写入{}的统计增量失败，稍后重试", date, e);
+                pending.merge(date, delta, Delta::merge);
+            }
+        }
+    }
+
+    /**
+     * 丢掉某一天还没写入的增量
+     * 增量都是在订单、用户写库成功后才记录的，这些数据已经在表里，重算时会统计进去
+     * @param date
+     */
+    public void discard(LocalDate date) {
+        if (pending.remove(date) != null) {
+            log.info("重算前丢弃{}未写入的统计增量", date);
+        }
+    }
+
+    /**
+     * 收到重算通知
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        discard(LocalDate.parse(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private static class Delta {
+        private BigDecimal turnover = BigDecimal.ZERO;
+        private int orderCount;
+        private int validOrderCount;
+        private int cancelledOrderCount;
+        private int newUserCount;
+
+        private Delta merge(Delta other) {
+            turnover = turnover.add(other.turnover);
+            orderCount += other.orderCount;
+            validOrderCount += other.validOrderCount;
+            cancelledOrderCount += other.cancelledOrderCount;
+            newUserCount += other.newUserCount;
+            return this;
+        }
+
+        private DailyStats toDailyStats(LocalDate date) {
+            return DailyStats.builder()
+                    .statDate(date)
+                    .turnover(turnover)
+                    .orderCount(orderCount)
+                    .validOrderCount(validOrderCount)
+                    .cancelledOrderCount(cancelledOrderCount)
+                    .newUserCount(newUserCount)
+                    .build();
+        }
+    }
+}
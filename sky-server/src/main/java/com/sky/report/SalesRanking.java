@@ -0,0 +1,191 @@
+package com.sky.report;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.order.LeaderLease;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 商品销量排行：每天一个redis有序集合，商品名称 -> 销量，订单完成时累加
+ * 查询日期范围时把这几天的集合合并(ZUNIONSTORE)再取前k名，合并结果缓存一分钟
+ * key带{sales_rank}哈希标签，集群模式下都在同一个槽，可以一起合并
+ * 订单完成时的累加只能保证从某个时刻起不漏，所以每天的集合里有一个完整标记(COMPLETE_MEMBER)：
+ * 按数据库重建过的那天，以及从0点起就在累加的当天，才有这个标记
+ * 范围内有一天没有标记(上线前的日期、上线当天、redis数据丢失)就退回到数据库统计，redis不可用时也一样，
+ * 查询结果逐行进堆只保留前k名
+ */
+@Component
+@Slf4j
+public class SalesRanking {
+
+    private static final String KEY_PREFIX = "{sales_rank}:";
+    private static final DateTimeFormatter DAY_FORMATTER = DateTimeFormatter.BASIC_ISO_DATE;
+    //完整标记，销量为0；商品名称不会是空串，取排行时去掉
+    private static final String COMPLETE_MEMBER = "";
+    //每天的集合保留一年多，够查一整年
+    private static final long DAY_TTL_SECONDS = TimeUnit.DAYS.toSeconds(400);
+    private static final long UNION_TTL_SECONDS = 60;
+    //重建一天的排行最多用这么久，租约和临时key都按这个过期
+    private static final long REBUILD_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    //ARGV[1]是过期时间，之后是 商品名称,销量 成对出现
+    private static final RedisScript<Long> INCR_SCRIPT = new DefaultRedisScript<>(
+            "for i = 2, #ARGV, 2 do redis.call('ZINCRBY', KEYS[1], ARGV[i + 1], ARGV[i]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1", Long.class);
+
+    //KEYS[1]是合并结果，之后是每天的集合；ARGV[1]是合并结果的过期时间，ARGV[2]是取前几名，ARGV[3]是完整标记
+    //有一天没有完整标记时返回空列表，由调用方查数据库；每天都完整时合并结果里至少有完整标记，不会是空的
+    private static final RedisScript<List> TOP_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then " +
+            "  for i = 2, #KEYS do " +
+            "    if not redis.call('ZSCORE', KEYS[i], ARGV[3]) then return {} end " +
+            "  end " +
+            "  redis.call('ZUNIONSTORE', KEYS[1], #KEYS - 1, unpack(KEYS, 2)) " +
+            "  redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "end " +
+            "return redis.call('ZREVRANGE', KEYS[1], 0, tonumber(ARGV[2]) - 1, 'WITHSCORES')", List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderDetailMapper orderDetailMapper;
+
+    public SalesRanking(StringRedisTemplate stringRedisTemplate, OrderDetailMapper orderDetailMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderDetailMapper = orderDetailMapper;
+    }
+
+    /**
+     * 订单完成，把商品销量累加到下单那天的排行里
+     * @param orderTime 下单时间
+     * @param orderDetailList
+     */
+    public void orderCompleted(LocalDateTime orderTime, List<OrderDetail> orderDetailList) {
+        List<String> args = new ArrayList<>(orderDetailList.size() * 2 + 1);
+        args.add(String.valueOf(DAY_TTL_SECONDS));
+        for (OrderDetail orderDetail : orderDetailList) {
+            args.add(orderDetail.getName());
+            args.add(String.valueOf(orderDetail.getNumber()));
+        }
+        stringRedisTemplate.execute(INCR_SCRIPT, Collections.singletonList(dayKey(orderTime.toLocalDate())), args.toArray());
+    }
+
+    /**
+     * 查询日期范围内销量前k的商品，包含首尾两天
+     * @param begin
+     * @param end
+     * @param k
+     * @return 按销量倒序
+     */
+    public List<GoodsSalesDTO> top(LocalDate begin, LocalDate end, int k) {
+        List<GoodsSalesDTO> list;
+        try {
+            list = topFromRedis(begin, end, k);
+        } catch (Exception e) {
+            log.error("从redis查询销量排行失败，改为查询数据库", e);
+            return topFromDatabase(begin, end, k);
+        }
+        if (list == null) {
+            log.info("{} ~ {}有日期的销量排行不完整，改为查询数据库", begin, end);
+            return topFromDatabase(begin, end, k);
+        }
+        return list;
+    }
+
+    /**
+     * 每天0点给当天的集合打上完整标记，之后当天完成的订单都会累加进来
+     * 上线当天、redis数据丢失后的当天没有标记，查询时走数据库，第二天凌晨重建后就有了
+     */
+    @Scheduled(cron = "0 0 0 * * ?")
+    public void startToday() {
+        String key = dayKey(LocalDate.now());
+        //加0：没有时加上，已经有了不变，重复执行也没关系
+        stringRedisTemplate.opsForZSet().incrementScore(key, COMPLETE_MEMBER, 0);
+        stringRedisTemplate.expire(key, DAY_TTL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 按数据库重建某一天的排行，每晚重算统计时调用
+     * 先写到本次重建独有的临时key再RENAME，查询方不会看到写了一半的集合
+     * 同一天同一时间只有一个节点在重建，拿不到租约的直接跳过
+     * 每晚重算时已经在DailyStatsBackfill的租约里调用，这里的租约管的是其他直接调用rebuild的地方
+     * @param date
+     */
+    public void rebuild(LocalDate date) {
+        String key = dayKey(date);
+        LeaderLease lease = new LeaderLease(stringRedisTemplate, key + ":rebuild_lease", REBUILD_TIMEOUT_MILLIS);
+        if (!lease.hold()) {
+            log.info("其他节点正在重建{}的销量排行，跳过", date);
+            return;
+        }
+        try {
+            Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+            //没有销量的一天也要有集合，带上完整标记
+            tuples.add(new DefaultTypedTuple<>(COMPLETE_MEMBER, 0d));
+            orderDetailMapper.streamSales(date.atStartOfDay(), date.plusDays(1).atStartOfDay(), context -> {
+                GoodsSalesDTO goodsSales = context.getResultObject();
+                tuples.add(new DefaultTypedTuple<>(goodsSales.getName(), goodsSales.getNumber().doubleValue()));
+            });
+            //带同样的哈希标签，集群模式下和目标key在同一个槽；进程中途退出时临时key自己过期
+            String tmpKey = key + ":rebuild:" + UUID.randomUUID();
+            stringRedisTemplate.opsForZSet().add(tmpKey, tuples);
+            stringRedisTemplate.expire(tmpKey, REBUILD_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            stringRedisTemplate.rename(tmpKey, key);
+            stringRedisTemplate.expire(key, DAY_TTL_SECONDS, TimeUnit.SECONDS);
+        } finally {
+            lease.release();
+        }
+    }
+
+    /**
+     * @return 范围内有一天没有完整标记时返回null
+     */
+    private List<GoodsSalesDTO> topFromRedis(LocalDate begin, LocalDate end, int k) {
+        List<String> keys = new ArrayList<>();
+        keys.add(KEY_PREFIX + "union:" + begin.format(DAY_FORMATTER) + ":" + end.format(DAY_FORMATTER));
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            keys.add(dayKey(date));
+        }
+        List<String> result = stringRedisTemplate.execute(TOP_SCRIPT, keys,
+                String.valueOf(UNION_TTL_SECONDS), String.valueOf(k), COMPLETE_MEMBER);
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+        List<GoodsSalesDTO> list = new ArrayList<>();
+        //WITHSCORES返回 名称,销量,名称,销量...；完整标记销量是0，只在不足k个商品时出现
+        for (int i = 0; i + 1 < result.size(); i += 2) {
+            if (!COMPLETE_MEMBER.equals(result.get(i))) {
+                list.add(new GoodsSalesDTO(result.get(i), (int) Double.parseDouble(result.get(i + 1))));
+            }
+        }
+        return list;
+    }
+
+    private List<GoodsSalesDTO> topFromDatabase(LocalDate begin, LocalDate end, int k) {
+        SalesTopK topK = new SalesTopK(k);
+        orderDetailMapper.streamSales(begin.atStartOfDay(), end.plusDays(1).atStartOfDay(), topK);
+        return topK.result();
+    }
+
+    private String dayKey(LocalDate date) {
+        return KEY_PREFIX + date.format(DAY_FORMATTER);
+    }
+}
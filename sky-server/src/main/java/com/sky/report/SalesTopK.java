@@ -0,0 +1,50 @@
+package com.sky.report;
+
+import com.sky.dto.GoodsSalesDTO;
+import org.apache.ibatis.session.ResultContext;
+import org.apache.ibatis.session.ResultHandler;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 逐行接收查询结果，只保留销量最高的k条，不把整个结果集放进内存
+ * 用小顶堆，堆顶是当前第k名，新的一行比它大才替换
+ */
+public class SalesTopK implements ResultHandler<GoodsSalesDTO> {
+
+    private static final Comparator<GoodsSalesDTO> BY_NUMBER = Comparator.comparingInt(GoodsSalesDTO::getNumber);
+
+    private final int k;
+    private final PriorityQueue<GoodsSalesDTO> heap;
+
+    public SalesTopK(int k) {
+        this.k = k;
+        this.heap = new PriorityQueue<>(k + 1, BY_NUMBER);
+    }
+
+    @Override
+    public void handleResult(ResultContext<? extends GoodsSalesDTO> resultContext) {
+        add(resultContext.getResultObject());
+    }
+
+    public void add(GoodsSalesDTO goodsSales) {
+        if (heap.size() < k) {
+            heap.offer(goodsSales);
+        } else if (goodsSales.getNumber() > heap.peek().getNumber()) {
+            heap.poll();
+            heap.offer(goodsSales);
+        }
+    }
+
+    /**
+     * @return 按销量倒序
+     */
+    public List<GoodsSalesDTO> result() {
+        List<GoodsSalesDTO> list = new ArrayList<>(heap);
+        list.sort(BY_NUMBER.reversed());
+        return list;
+    }
+}
@@ -1,12 +1,31 @@
 package com.sky.service;
 
+import com.sky.dto.OrdersCancelDTO;
+import com.sky.dto.OrdersConfirmDTO;
+import com.sky.dto.OrdersRejectionDTO;
 import com.sky.dto.OrdersSubmitDTO;
 import com.sky.result.PageResult;
+import com.sky.vo.OrderCursorPageVO;
+import com.sky.vo.OrderStatisticsVO;
+import com.sky.vo.OrderSubmitStatusVO;
 import com.sky.vo.OrderSubmitVO;
 
 public interface OrderService {
 
     OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO);
+    /**
+     * 异步下单，返回排队中的订单号
+     * @param ordersSubmitDTO
+     * @param token 幂等令牌
+     * @return
+     */
+    OrderSubmitVO submitOrderAsync(OrdersSubmitDTO ordersSubmitDTO, String token);
+    /**
+     * 查询异步下单结果
+     * @param number
+     * @return
+     */
+    OrderSubmitStatusVO getSubmitStatus(String number);
     /**
      * 用户端订单分页查询
      * @param page
@@ -15,4 +34,52 @@ public interface OrderService {
      * @return
      */
     PageResult pageQuery4User(int page, int pageSize, Integer status);
+    /**
+     * 用户端订单游标分页查询
+     * @param lastId 上一页最后一条订单的id，为空时查第一页
+     * @param pageSize
+     * @param status
+     * @return
+     */
+    OrderCursorPageVO cursorQuery4User(Long lastId, int pageSize, Integer status);
+    /**
+     * 各个状态的订单数量统计
+     * @return
+     */
+    OrderStatisticsVO statistics();
+    /**
+     * 支付成功，修改订单状态
+     * @param outTradeNo 订单号
+     */
+    void paySuccess(String outTradeNo);
+    /**
+     * 用户取消未支付的订单
+     * @param id
+     */
+    void userCancelById(Long id);
+    /**
+     * 接单
+     * @param ordersConfirmDTO
+     */
+    void confirm(OrdersConfirmDTO ordersConfirmDTO);
+    /**
+     * 拒单
+     * @param ordersRejectionDTO
+     */
+    void rejection(OrdersRejectionDTO ordersRejectionDTO);
+    /**
+     * 商家取消订单
+     * @param ordersCancelDTO
+     */
+    void cancel(OrdersCancelDTO ordersCancelDTO);
+    /**
+     * 派送订单
+     * @param id
+     */
+    void delivery(Long id);
+    /**
+     * 完成订单
+     * @param id
+     */
+    void complete(Long id);
 }
@@ -0,0 +1,22 @@
+package com.sky.service;
+
+public interface ShopService {
+
+    /**
+     * 设置营业状态，并通知所有节点
+     * @param status
+     */
+    void setStatus(Integer status);
+
+    /**
+     * 获取营业状态，读内存不访问redis
+     * @return
+     */
+    Integer getStatus();
+
+    /**
+     * 是否营业中
+     * @return
+     */
+    boolean isOpen();
+}
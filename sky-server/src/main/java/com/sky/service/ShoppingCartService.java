@@ -11,4 +11,40 @@ public interface ShoppingCartService {
     List<ShoppingCart> showShoppingCart();
 
     void clean();
+
+    /**
+     * 查询指定用户的购物车
+     * @param userId
+     * @return
+     */
+    List<ShoppingCart> listByUserId(Long userId);
+
+    /**
+     * 清空指定用户的购物车
+     * @param userId
+     */
+    void clean(Long userId);
+
+    /**
+     * 下单时原子地取走用户的购物车，交给这个订单，购物车随即变空
+     * 同一批商品不会被两次提交各下一单
+     * @param userId
+     * @param number 订单号
+     * @return 取走的商品，购物车为空时返回空列表
+     */
+    List<ShoppingCart> checkout(Long userId, String number);
+
+    /**
+     * 订单没有创建成功，把取走的商品放回购物车
+     * @param userId
+     * @param number 订单号
+     */
+    void restoreCheckout(Long userId, String number);
+
+    /**
+     * 订单已写库，删除取走的那份购物车
+     * @param userId
+     * @param number 订单号
+     */
+    void completeCheckout(Long userId, String number);
 }
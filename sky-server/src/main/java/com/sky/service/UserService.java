@@ -3,6 +3,13 @@ package com.sky.service;
 import com.sky.dto.UserLoginDTO;
 import com.sky.entity.User;
 
+import java.util.concurrent.CompletableFuture;
+
 public interface UserService {
-    User wxLogin(UserLoginDTO userLoginDTO);
+    /**
+     * 微信登录，换取openid的请求异步发送，不占用请求线程
+     * @param userLoginDTO
+     * @return
+     */
+    CompletableFuture<User> wxLogin(UserLoginDTO userLoginDTO);
 }
@@ -22,7 +22,10 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -59,6 +62,8 @@ public class DishServiceImpl implements DishService {
     public PageResult pageQuery(DishPageQueryDTO dishPageQueryDTO) {
         PageHelper.startPage(dishPageQueryDTO.getPage(),dishPageQueryDTO.getPageSize());//参数是第几页，每页显示多少
         Page<DishVO> page = dishMapper.pageQuery(dishPageQueryDTO);
+        //当前页菜品的口味一次性查出来
+        fillFlavors(page.getResult());
         return new PageResult(page.getTotal(),page.getResult());
     }
 
@@ -97,10 +102,9 @@ public class DishServiceImpl implements DishService {
     @Override
     public DishVO queryByIdWithFlavor(Long id) {
         Dish dish = dishMapper.getById(id);
-        List<DishFlavor> dishFlavors = dishFlavorMapper.getByDishId(id);
         DishVO dishVO = new DishVO();
         BeanUtils.copyProperties(dish, dishVO);
-        dishVO.setFlavors(dishFlavors);
+        fillFlavors(Collections.singletonList(dishVO));
         return dishVO;
     }
 
@@ -150,14 +154,27 @@ public class DishServiceImpl implements DishService {
         for (Dish d : dishList) {
             DishVO dishVO = new DishVO();
             BeanUtils.copyProperties(d,dishVO);
-
-            //根据菜品id查询对应的口味
-            List<DishFlavor> flavors = dishFlavorMapper.getByDishId(d.getId());
-
-            dishVO.setFlavors(flavors);
             dishVOList.add(dishVO);
         }
+        //口味批量查询，避免每个菜品查一次口味表
+        fillFlavors(dishVOList);
 
         return dishVOList;
     }
+
+    /**
+     * 批量填充菜品口味：一条 dish_id in (...) 查询，再在内存中按菜品id分组
+     * @param dishVOList
+     */
+    private void fillFlavors(List<DishVO> dishVOList) {
+        if (dishVOList == null || dishVOList.isEmpty()) {
+            return;
+        }
+        List<Long> dishIds = dishVOList.stream().map(DishVO::getId).collect(Collectors.toList());
+        Map<Long, List<DishFlavor>> flavorMap = dishFlavorMapper.getByDishIds(dishIds).stream()
+                .collect(Collectors.groupingBy(DishFlavor::getDishId));
+        for (DishVO dishVO : dishVOList) {
+            dishVO.setFlavors(flavorMap.getOrDefault(dishVO.getId(), new ArrayList<>()));
+        }
+    }
 }
@@ -4,7 +4,10 @@ import com.github.pagehelper.Page;
 import com.github.pagehelper.PageHelper;
 import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
+import com.sky.dto.OrdersCancelDTO;
+import com.sky.dto.OrdersConfirmDTO;
 import com.sky.dto.OrdersPageQueryDTO;
+import com.sky.dto.OrdersRejectionDTO;
 import com.sky.dto.OrdersSubmitDTO;
 import com.sky.entity.AddressBook;
 import com.sky.entity.OrderDetail;
@@ -15,21 +18,42 @@ import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.AddressBookMapper;
 import com.sky.mapper.OrderDetailMapper;
 import com.sky.mapper.OrderMapper;
-import com.sky.mapper.ShoppingCartMapper;
+import com.sky.exception.OrderBusinessException;
+import com.sky.order.AsyncOrderSubmitter;
+import com.sky.order.OrderDraft;
+import com.sky.order.OrderEvent;
+import com.sky.order.OrderNumberGenerator;
+import com.sky.order.OrderStateMachine;
+import com.sky.order.OrderStatusCounter;
+import com.sky.order.OrderTimeoutScheduler;
+import com.sky.order.PricingEngine;
+import com.sky.properties.OrderSubmitProperties;
+import com.sky.report.DailyStatsRecorder;
 import com.sky.result.PageResult;
 import com.sky.service.OrderService;
+import com.sky.service.ShopService;
+import com.sky.service.ShoppingCartService;
+import com.sky.vo.OrderCursorPageVO;
+import com.sky.vo.OrderStatisticsVO;
+import com.sky.vo.OrderSubmitStatusVO;
 import com.sky.vo.OrderSubmitVO;
 import com.sky.vo.OrderVO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 @Service
 @Slf4j
@@ -41,7 +65,29 @@ public class OrderServiceImpl implements OrderService {
     @Autowired
     private AddressBookMapper addressBookMapper;
     @Autowired
-    private ShoppingCartMapper shoppingCartMapper;
+    private ShoppingCartService shoppingCartService;
+    @Autowired
+    private OrderNumberGenerator orderNumberGenerator;
+    @Autowired
+    private AsyncOrderSubmitter asyncOrderSubmitter;
+    @Autowired
+    private PricingEngine pricingEngine;
+    @Autowired
+    private RedisTemplate redisTemplate;
+    @Autowired
+    private OrderSubmitProperties orderSubmitProperties;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private DailyStatsRecorder dailyStatsRecorder;
+    @Autowired
+    private OrderStatusCounter orderStatusCounter;
+    @Autowired
+    private OrderTimeoutScheduler orderTimeoutScheduler;
+    @Autowired
+    private OrderStateMachine orderStateMachine;
+
+    private static final String SUBMIT_TOKEN_KEY_PREFIX = "order_token:";
 
     public void inspectOrderSubmit(AddressBook addressBook,List<ShoppingCart> list) {
         // 处理各种不正常的情况：地址簿为空、购物车为空
@@ -54,42 +100,91 @@ public class OrderServiceImpl implements OrderService {
     }
 
 
+    /**
+     * 打烊后不能下单，营业状态在内存里，不访问redis
+     */
+    private void checkShopOpen() {
+        if (!shopService.isOpen()) {
+            throw new OrderBusinessException(MessageConstant.SHOP_CLOSED);
+        }
+    }
+
+    /**
+     * 校验地址，取走购物车，在内存中组装订单和订单明细，还没有写库
+     * 取走购物车之后组装失败会把商品放回去；组装成功后由调用方在订单写库成功时completeCheckout，失败时restoreCheckout
+     * @param ordersSubmitDTO
+     * @param userId
+     * @param number 订单号
+     * @return
+     */
+    private OrderDraft buildOrderDraft(OrdersSubmitDTO ordersSubmitDTO, Long userId, String number) {
+        AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
+        if (addressBook == null) {
+            throw new AddressBookBusinessException(MessageConstant.ADDRESS_BOOK_IS_NULL);
+        }
+        // 购物车整个挪到这个订单名下，订单写库前再提交一次只会看到空购物车
+        List<ShoppingCart> list = shoppingCartService.checkout(userId, number);
+        try {
+            // 处理各种不正常的情况：地址簿为空、购物车为空
+            inspectOrderSubmit(addressBook,list);
+            Orders orders = new Orders();
+            BeanUtils.copyProperties(ordersSubmitDTO,orders);
+            orders.setOrderTime(LocalDateTime.now());
+            orders.setPayStatus(Orders.UN_PAID);
+            orders.setStatus(Orders.PENDING_PAYMENT);
+            orders.setNumber(number);
+            orders.setPhone(addressBook.getPhone());
+            orders.setConsignee(addressBook.getConsignee());
+            orders.setUserId(userId);
+
+            List<OrderDetail> orderDetailList = new ArrayList<>();
+            for(ShoppingCart cart : list){
+                OrderDetail orderDetail = new OrderDetail();
+                BeanUtils.copyProperties(cart,orderDetail);
+                orderDetailList.add(orderDetail);
+            }
+            // 按当前价格重新计算金额，和前端提交的对不上就拒绝
+            pricingEngine.price(orders, orderDetailList);
+            return new OrderDraft(orders, orderDetailList);
+        } catch (RuntimeException e) {
+            shoppingCartService.restoreCheckout(userId, number);
+            throw e;
+        }
+    }
+
     @Override
     @Transactional
     public OrderSubmitVO submitOrder(OrdersSubmitDTO ordersSubmitDTO) {
-        AddressBook addressBook = addressBookMapper.getById(ordersSubmitDTO.getAddressBookId());
+        checkShopOpen();
         Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        //雪花算法生成订单号，多节点同一毫秒也不会重复
+        OrderDraft orderDraft = buildOrderDraft(ordersSubmitDTO, userId, orderNumberGenerator.nextNumber());
+        Orders orders = orderDraft.getOrders();
+        // 购物车已经取走，事务提交后删掉取走的那份，回滚时放回购物车
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                shoppingCartService.completeCheckout(userId, orders.getNumber());
+                dailyStatsRecorder.orderCreated(orders.getOrderTime());
+                orderStatusCounter.created(orders.getStatus());
+                orderTimeoutScheduler.registerPayTimeout(orders);
+            }
 
-        // 处理各种不正常的情况：地址簿为空、购物车为空
-        inspectOrderSubmit(addressBook,list);
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    shoppingCartService.restoreCheckout(userId, orders.getNumber());
+                }
+            }
+        });
         // 向订单表插入一条数据
-        Orders orders = new Orders();
-        BeanUtils.copyProperties(ordersSubmitDTO,orders);
-        orders.setOrderTime(LocalDateTime.now());
-        orders.setPayStatus(Orders.UN_PAID);
-        orders.setStatus(Orders.PENDING_PAYMENT);
-        orders.setNumber(String.valueOf(System.currentTimeMillis()));//时间戳作为订单号
-        orders.setPhone(addressBook.getPhone());
-        orders.setConsignee(addressBook.getConsignee());
-        orders.setUserId(userId);
-
         orderMapper.insert(orders);
 
-        List<OrderDetail> orderDetailList = new ArrayList<>();
+        List<OrderDetail> orderDetailList = orderDraft.getOrderDetailList();
         // 向订单明细表插入n条数据
-        for(ShoppingCart cart : list){
-            OrderDetail orderDetail = new OrderDetail();
-            BeanUtils.copyProperties(cart,orderDetail);
-            orderDetail.setOrderId(orders.getId());
-            orderDetailList.add(orderDetail);
-        }
+        orderDetailList.forEach(orderDetail -> orderDetail.setOrderId(orders.getId()));
         // 批量插入效率更高
         orderDetailMapper.insertBatch(orderDetailList);
-        // 清空购物车数据
-        shoppingCartMapper.clean(userId);
         // 封装VO返回结果
         OrderSubmitVO orderSubmitVO = OrderSubmitVO.builder()
                 .id(orders.getId())
@@ -99,6 +194,68 @@ public class OrderServiceImpl implements OrderService {
                 .build();
         return orderSubmitVO;
     }
+
+    /**
+     * 异步下单：校验通过后入队，立即返回订单号，由写库线程批量写入
+     * 同一个令牌重复提交只会下一次单，返回第一次的订单号
+     * @param ordersSubmitDTO
+     * @param token 前端生成的幂等令牌
+     * @return
+     */
+    @Override
+    public OrderSubmitVO submitOrderAsync(OrdersSubmitDTO ordersSubmitDTO, String token) {
+        if (token == null || token.isEmpty()) {
+            throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_TOKEN_IS_NULL);
+        }
+        checkShopOpen();
+        Long userId = BaseContext.getCurrentId();
+        String tokenKey = SUBMIT_TOKEN_KEY_PREFIX + userId + ":" + token;
+        String number = orderNumberGenerator.nextNumber();
+
+        Boolean first = redisTemplate.opsForValue()
+                .setIfAbsent(tokenKey, number, orderSubmitProperties.getResultTtlSeconds(), TimeUnit.SECONDS);
+        if (!Boolean.TRUE.equals(first)) {
+            //重复提交，返回第一次的订单号
+            return OrderSubmitVO.builder()
+                    .orderNumber((String) redisTemplate.opsForValue().get(tokenKey))
+                    .build();
+        }
+
+        OrderDraft orderDraft;
+        try {
+            orderDraft = buildOrderDraft(ordersSubmitDTO, userId, number);
+        } catch (RuntimeException e) {
+            //校验没通过，令牌作废，修改后可以用同一个令牌重新提交
+            redisTemplate.delete(tokenKey);
+            throw e;
+        }
+        if (!asyncOrderSubmitter.submit(orderDraft)) {
+            shoppingCartService.restoreCheckout(userId, number);
+            redisTemplate.delete(tokenKey);
+            throw new OrderBusinessException(MessageConstant.ORDER_SUBMIT_BUSY);
+        }
+
+        Orders orders = orderDraft.getOrders();
+        return OrderSubmitVO.builder()
+                .orderNumber(orders.getNumber())
+                .orderTime(orders.getOrderTime())
+                .orderAmount(orders.getAmount())
+                .build();
+    }
+
+    /**
+     * 查询异步下单结果
+     * @param number
+     * @return
+     */
+    @Override
+    public OrderSubmitStatusVO getSubmitStatus(String number) {
+        OrderSubmitStatusVO statusVO = asyncOrderSubmitter.getStatus(BaseContext.getCurrentId(), number);
+        if (statusVO == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
+        }
+        return statusVO;
+    }
     /**
      * 用户端订单分页查询
      *
@@ -122,19 +279,167 @@ public class OrderServiceImpl implements OrderService {
 
         // 查询出订单明细，并封装入OrderVO进行响应
         if (page != null && page.getTotal() > 0) {
-            for (Orders orders : page) {
-                Long orderId = orders.getId();// 订单id
+            list = buildOrderVOList(page);
+        }
+        return new PageResult(page.getTotal(), list);
+    }
+
+    /**
+     * 用户端订单游标分页查询，不做count也没有offset，多查一条判断是否还有下一页
+     *
+     * @param lastId
+     * @param pageSize
+     * @param status
+     * @return
+     */
+    public OrderCursorPageVO cursorQuery4User(Long lastId, int pageSize, Integer status) {
+        Long userId = BaseContext.getCurrentId();
+        OrdersPageQueryDTO ordersPageQueryDTO = new OrdersPageQueryDTO();
+        ordersPageQueryDTO.setUserId(userId);
+        ordersPageQueryDTO.setStatus(status);
+        if (lastId != null) {
+            //游标位置只按主键查一次，不放进分页sql的子查询里
+            Orders last = orderMapper.getById(lastId);
+            if (last == null || !userId.equals(last.getUserId())) {
+                return new OrderCursorPageVO(Collections.emptyList(), false, null);
+            }
+            ordersPageQueryDTO.setLastId(lastId);
+            ordersPageQueryDTO.setLastOrderTime(last.getOrderTime());
+        }
+        ordersPageQueryDTO.setPageSize(pageSize + 1);
 
-                // 查询订单明细
-                List<OrderDetail> orderDetails = orderDetailMapper.getByOrderId(orderId);
+        List<Orders> ordersList = orderMapper.cursorQuery(ordersPageQueryDTO);
+        boolean hasMore = ordersList.size() > pageSize;
+        if (hasMore) {
+            ordersList = ordersList.subList(0, pageSize);
+        }
+        List<OrderVO> list = buildOrderVOList(ordersList);
+        Long nextLastId = ordersList.isEmpty() ? null : ordersList.get(ordersList.size() - 1).getId();
+        return new OrderCursorPageVO(list, hasMore, nextLastId);
+    }
 
-                OrderVO orderVO = new OrderVO();
-                BeanUtils.copyProperties(orders, orderVO);
-                orderVO.setOrderDetailList(orderDetails);
+    /**
+     * 各个状态的订单数量统计，读redis里的计数
+     * @return
+     */
+    @Override
+    public OrderStatisticsVO statistics() {
+        return orderStatusCounter.statistics();
+    }
 
-                list.add(orderVO);
-            }
+    /**
+     * 支付成功，待付款 -> 待接单
+     * @param outTradeNo
+     */
+    @Override
+    public void paySuccess(String outTradeNo) {
+        Orders ordersDB = orderMapper.getByNumber(outTradeNo);
+        if (ordersDB == null) {
+            throw new OrderBusinessException(MessageConstant.ORDER_NOT_FOUND);
         }
-        return new PageResult(page.getTotal(), list);
+        Orders orders = new Orders();
+        orders.setId(ordersDB.getId());
+        orderStateMachine.fire(OrderEvent.PAY, orders);
+        orderTimeoutScheduler.cancelPayTimeout(ordersDB.getId());
+    }
+
+    /**
+     * 用户取消订单，只能取消自己的未支付订单
+     * @param id
+     */
+    @Override
+    public void userCancelById(Long id) {
+        Orders orders = new Orders();
+        orders.setId(id);
+        orders.setUserId(BaseContext.getCurrentId());
+        orderStateMachine.fire(OrderEvent.USER_CANCEL, orders);
+        orderTimeoutScheduler.cancelPayTimeout(id);
+    }
+
+    /**
+     * 接单，待接单 -> 已接单
+     * @param ordersConfirmDTO
+     */
+    @Override
+    public void confirm(OrdersConfirmDTO ordersConfirmDTO) {
+        Orders orders = new Orders();
+        orders.setId(ordersConfirmDTO.getId());
+        orderStateMachine.fire(OrderEvent.CONFIRM, orders);
+    }
+
+    /**
+     * 拒单，待接单 -> 已取消
+     * @param ordersRejectionDTO
+     */
+    @Override
+    public void rejection(OrdersRejectionDTO ordersRejectionDTO) {
+        Orders orders = new Orders();
+        orders.setId(ordersRejectionDTO.getId());
+        orders.setRejectionReason(ordersRejectionDTO.getRejectionReason());
+        orderStateMachine.fire(OrderEvent.REJECT, orders);
+    }
+
+    /**
+     * 商家取消订单
+     * @param ordersCancelDTO
+     */
+    @Override
+    public void cancel(OrdersCancelDTO ordersCancelDTO) {
+        Orders orders = new Orders();
+        orders.setId(ordersCancelDTO.getId());
+        orders.setCancelReason(ordersCancelDTO.getCancelReason());
+        Orders before = orderStateMachine.fire(OrderEvent.CANCEL, orders);
+        if (Orders.PENDING_PAYMENT.equals(before.getStatus())) {
+            orderTimeoutScheduler.cancelPayTimeout(before.getId());
+        } else if (Orders.DELIVERY_IN_PROGRESS.equals(before.getStatus())) {
+            orderTimeoutScheduler.cancelDeliveryTimeout(before.getId());
+        }
+    }
+
+    /**
+     * 派送订单，已接单 -> 派送中，超时未送达自动完成
+     * @param id
+     */
+    @Override
+    public void delivery(Long id) {
+        Orders orders = new Orders();
+        orders.setId(id);
+        orderStateMachine.fire(OrderEvent.DELIVER, orders);
+        orderTimeoutScheduler.registerDeliveryTimeout(id);
+    }
+
+    /**
+     * 完成订单，派送中 -> 已完成
+     * @param id
+     */
+    @Override
+    public void complete(Long id) {
+        Orders orders = new Orders();
+        orders.setId(id);
+        orderStateMachine.fire(OrderEvent.COMPLETE, orders);
+        orderTimeoutScheduler.cancelDeliveryTimeout(id);
+    }
+
+    /**
+     * 封装OrderVO：一次查出所有订单的明细，再在内存中按订单id分组
+     * @param ordersList
+     * @return
+     */
+    private List<OrderVO> buildOrderVOList(List<Orders> ordersList) {
+        List<OrderVO> list = new ArrayList<>();
+        if (ordersList == null || ordersList.isEmpty()) {
+            return list;
+        }
+        List<Long> orderIds = ordersList.stream().map(Orders::getId).collect(Collectors.toList());
+        Map<Long, List<OrderDetail>> detailMap = orderDetailMapper.getByOrderIds(orderIds).stream()
+                .collect(Collectors.groupingBy(OrderDetail::getOrderId));
+
+        for (Orders orders : ordersList) {
+            OrderVO orderVO = new OrderVO();
+            BeanUtils.copyProperties(orders, orderVO);
+            orderVO.setOrderDetailList(detailMap.getOrDefault(orders.getId(), new ArrayList<>()));
+            list.add(orderVO);
+        }
+        return list;
     }
 }
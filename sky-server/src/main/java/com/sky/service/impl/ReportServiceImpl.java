@@ -0,0 +1,169 @@
+package com.sky.service.impl;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.DailyStats;
+import com.sky.entity.Orders;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.report.BusinessDataExcelWriter;
+import com.sky.report.SalesRanking;
+import com.sky.service.ReportService;
+import com.sky.vo.BusinessDataVO;
+import com.sky.vo.OrderReportVO;
+import com.sky.vo.SalesTop10ReportVO;
+import com.sky.vo.TurnoverReportVO;
+import com.sky.vo.UserReportVO;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * 报表统计，数据来自每日统计表daily_stats，一天一行，查询量只和天数有关，和订单量无关
+ * 销量排行来自redis里每天的销量有序集合
+ */
+@Service
+@Slf4j
+public class ReportServiceImpl implements ReportService {
+
+    @Autowired
+    private DailyStatsMapper dailyStatsMapper;
+    @Autowired
+    private SalesRanking salesRanking;
+    @Autowired
+    private OrderMapper orderMapper;
+
+    @Override
+    public TurnoverReportVO getTurnoverStatistics(LocalDate begin, LocalDate end) {
+        List<DailyStats> statsList = listByDay(begin, end);
+        return TurnoverReportVO.builder()
+                .dateList(join(statsList, DailyStats::getStatDate))
+                .turnoverList(join(statsList, DailyStats::getTurnover))
+                .build();
+    }
+
+    @Override
+    public UserReportVO getUserStatistics(LocalDate begin, LocalDate end) {
+        List<DailyStats> statsList = listByDay(begin, end);
+        //开始日期之前的用户总数由每日新增累加得到，之后每天累加新增用户
+        int total = dailyStatsMapper.sumNewUsersBefore(begin);
+        List<Integer> totalUserList = new ArrayList<>();
+        for (DailyStats stats : statsList) {
+            total += stats.getNewUserCount();
+            totalUserList.add(total);
+        }
+        return UserReportVO.builder()
+                .dateList(join(statsList, DailyStats::getStatDate))
+                .totalUserList(totalUserList.stream().map(String::valueOf).collect(Collectors.joining(",")))
+                .newUserList(join(statsList, DailyStats::getNewUserCount))
+                .build();
+    }
+
+    @Override
+    public OrderReportVO getOrderStatistics(LocalDate begin, LocalDate end) {
+        List<DailyStats> statsList = listByDay(begin, end);
+        int totalOrderCount = statsList.stream().mapToInt(DailyStats::getOrderCount).sum();
+        int validOrderCount = statsList.stream().mapToInt(DailyStats::getValidOrderCount).sum();
+        return OrderReportVO.builder()
+                .dateList(join(statsList, DailyStats::getStatDate))
+                .orderCountList(join(statsList, DailyStats::getOrderCount))
+                .validOrderCountList(join(statsList, DailyStats::getValidOrderCount))
+                .totalOrderCount(totalOrderCount)
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(totalOrderCount == 0 ? 0.0 : (double) validOrderCount / totalOrderCount)
+                .build();
+    }
+
+    @Override
+    public BusinessDataVO getBusinessData(LocalDate begin, LocalDate end) {
+        BigDecimal turnover = BigDecimal.ZERO;
+        int orderCount = 0;
+        int validOrderCount = 0;
+        int newUsers = 0;
+        for (DailyStats stats : dailyStatsMapper.listByRange(begin, end)) {
+            turnover = turnover.add(stats.getTurnover());
+            orderCount += stats.getOrderCount();
+            validOrderCount += stats.getValidOrderCount();
+            newUsers += stats.getNewUserCount();
+        }
+        return BusinessDataVO.builder()
+                .turnover(turnover.doubleValue())
+                .validOrderCount(validOrderCount)
+                .orderCompletionRate(orderCount == 0 ? 0.0 : (double) validOrderCount / orderCount)
+                .unitPrice(validOrderCount == 0 ? 0.0
+                        : turnover.divide(BigDecimal.valueOf(validOrderCount), 2, RoundingMode.HALF_UP).doubleValue())
+                .newUsers(newUsers)
+                .build();
+    }
+
+    @Override
+    public SalesTop10ReportVO getSalesTop10(LocalDate begin, LocalDate end) {
+        List<GoodsSalesDTO> top10 = salesRanking.top(begin, end, 10);
+        return SalesTop10ReportVO.builder()
+                .nameList(top10.stream().map(GoodsSalesDTO::getName).collect(Collectors.joining(",")))
+                .numberList(top10.stream().map(goodsSales -> String.valueOf(goodsSales.getNumber())).collect(Collectors.joining(",")))
+                .build();
+    }
+
+    /**
+     * 导出最近30天(不含今天)的数据，订单明细用游标逐行读出、逐行写入，导出多少订单内存占用都不变
+     * 游标要在事务里遍历，否则mapper方法返回后连接就被释放了
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void exportBusinessData(HttpServletResponse response) throws IOException {
+        LocalDate end = LocalDate.now().minusDays(1);
+        LocalDate begin = end.minusDays(29);
+        List<DailyStats> statsList = listByDay(begin, end);
+
+        response.setContentType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet");
+        response.setHeader("Content-Disposition", "attachment; filename=business-data-" + begin + "-" + end + ".xlsx");
+        try (Cursor<Orders> orders = orderMapper.cursorByOrderTime(begin.atStartOfDay(), end.plusDays(1).atStartOfDay())) {
+            OutputStream out = response.getOutputStream();
+            long count = new BusinessDataExcelWriter().write(statsList, orders, out);
+            out.flush();
+            log.info("运营数据导出完成：{} ~ {}，订单{}条", begin, end, count);
+        }
+    }
+
+    /**
+     * 查询日期范围内每一天的统计，没有记录的日期补0
+     */
+    private List<DailyStats> listByDay(LocalDate begin, LocalDate end) {
+        Map<LocalDate, DailyStats> statsMap = dailyStatsMapper.listByRange(begin, end).stream()
+                .collect(Collectors.toMap(DailyStats::getStatDate, Function.identity()));
+        List<DailyStats> statsList = new ArrayList<>();
+        for (LocalDate date = begin; !date.isAfter(end); date = date.plusDays(1)) {
+            DailyStats stats = statsMap.get(date);
+            if (stats == null) {
+                stats = DailyStats.builder()
+                        .statDate(date)
+                        .turnover(BigDecimal.ZERO)
+                        .orderCount(0)
+                        .validOrderCount(0)
+                        .cancelledOrderCount(0)
+                        .newUserCount(0)
+                        .build();
+            }
+            statsList.add(stats);
+        }
+        return statsList;
+    }
+
+    private static String join(List<DailyStats> statsList, Function<DailyStats, ?> getter) {
+        return statsList.stream().map(getter).map(String::valueOf).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,81 @@
+package com.sky.service.impl;
+
+import com.sky.constant.ShopConstant;
+import com.sky.service.ShopService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+
+/**
+ * 店铺营业状态：redis里的值是准的，每个节点在内存里保存一份，读的时候不访问redis
+ * 管理端修改后通过redis发布订阅通知所有节点重新读取，另外定时和redis对一次，防止消息丢失
+ * 管理端从没设置过时redis里没有这个key，和改造前一样按营业中处理，可以正常下单；
+ * 启动时把营业中写入redis(key已存在时不覆盖)，管理端看到的状态和实际一致
+ */
+@Service
+@Slf4j
+public class ShopServiceImpl implements ShopService, MessageListener {
+
+    private final RedisTemplate redisTemplate;
+
+    //redis里没有设置过时按营业中处理
+    private volatile Integer status = ShopConstant.OPEN;
+
+    public ShopServiceImpl(RedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            redisTemplate.opsForValue().setIfAbsent(ShopConstant.STATUS_KEY, ShopConstant.OPEN);
+            reload();
+        } catch (Exception e) {
+            //启动时redis不可用不影响启动，定时任务会再同步
+            log.error("读取店铺营业状态失败", e);
+        }
+    }
+
+    @Override
+    public void setStatus(Integer status) {
+        redisTemplate.opsForValue().set(ShopConstant.STATUS_KEY, status);
+        this.status = status;
+        redisTemplate.convertAndSend(ShopConstant.STATUS_CHANNEL, status);
+    }
+
+    @Override
+    public Integer getStatus() {
+        return status;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return ShopConstant.OPEN.equals(status);
+    }
+
+    /**
+     * 定时和redis对一次
+     */
+    @Scheduled(fixedDelay = 60 * 1000, initialDelay = 60 * 1000)
+    public void reload() {
+        Integer current = (Integer) redisTemplate.opsForValue().get(ShopConstant.STATUS_KEY);
+        current = current == null ? ShopConstant.OPEN : current;
+        if (!current.equals(status)) {
+            log.info("店铺营业状态更新为{}", ShopConstant.OPEN.equals(current) ? "营业中" : "打烊中");
+        }
+        status = current;
+    }
+
+    /**
+     * 收到营业状态变更消息，从redis重新读取
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        reload();
+    }
+}
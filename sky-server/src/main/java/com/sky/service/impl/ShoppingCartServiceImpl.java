@@ -1,90 +1,393 @@
 package com.sky.service.impl;
 
+import com.alibaba.fastjson.JSON;
+import com.sky.constant.MessageConstant;
 import com.sky.context.BaseContext;
 import com.sky.dto.ShoppingCartDTO;
 import com.sky.entity.Dish;
 import com.sky.entity.Setmeal;
 import com.sky.entity.ShoppingCart;
+import com.sky.exception.ShoppingCartBusinessException;
 import com.sky.mapper.DishMapper;
 import com.sky.mapper.SetmealMapper;
 import com.sky.mapper.ShoppingCartMapper;
+import com.sky.order.LeaderLease;
+import com.sky.service.ShopService;
 import com.sky.service.ShoppingCartService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 购物车读写都在redis里，每个用户一个hash：
+ * i:商品 -> 商品信息(名称、图片、加购时的价格)，n:商品 -> 数量，loaded -> 标记购物车已从数据库加载
+ * 数量用HINCRBY原子递增，连续点击"+"不会出现重复插入
+ *
+ * shopping_cart表仍然是购物车的持久化存储：修改过的用户记在cart_dirty集合里，
+ * flushDirtyCarts每5秒把这些用户的购物车整体写回表里，连续加购多次只写一次
+ * redis里没有这个用户的hash(7天无操作过期、被淘汰、redis重启)时从表里重新加载，
+ * redis故障最多丢失最近一个写回周期内的修改
+ *
+ * 下单时checkout把整个hash改名成cart:用户:order:订单号，购物车同时变空，
+ * 订单写库前再次提交只会看到空购物车；订单写库成功后删掉这份快照，失败时把商品放回购物车
+ */
 @Service
 @Slf4j
 public class ShoppingCartServiceImpl implements ShoppingCartService {
+
+    private static final String CART_KEY_PREFIX = "cart:";
+    private static final String INFO_FIELD_PREFIX = "i:";
+    private static final String NUMBER_FIELD_PREFIX = "n:";
+    private static final String LOADED_FIELD = "loaded";
+    //修改过、还没写回数据库的用户id
+    private static final String DIRTY_KEY = "cart_dirty";
+    private static final String FLUSHING_KEY = "cart_dirty:flushing";
+    //redis里的购物车7天没有操作就过期，再访问时从数据库加载
+    private static final long CART_TTL_SECONDS = 7 * 24 * 3600;
+    private static final String ORDER_SNAPSHOT_INFIX = ":order:";
+    //下单取走的购物车保留1天，订单写库的结果最晚也会在这之前确定
+    private static final long ORDER_SNAPSHOT_TTL_SECONDS = 24 * 3600;
+
+    /**
+     * 购物车没加载过返回-2，让调用方先从数据库加载
+     * 商品信息已存在时数量+1；不存在时如果传了商品信息就先写入信息再+1，否则返回-1让调用方去查数据库
+     */
+    private static final RedisScript<Long> ADD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "if redis.call('HEXISTS', KEYS[1], ARGV[1]) == 0 then " +
+            "  if ARGV[5] == nil then return -1 end " +
+            "  redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[5]) " +
+            "end " +
+            "local n = redis.call('HINCRBY', KEYS[1], ARGV[2], 1) " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[3]) " +
+            "redis.call('SADD', KEYS[2], ARGV[4]) " +
+            "return n", Long.class);
+
+    /**
+     * 把数据库里的购物车写进redis，已经有别的请求加载过时不覆盖
+     * ARGV[1]是过期时间，之后每两个参数是一个字段和值
+     */
+    private static final RedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 1 then return 0 end " +
+            "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+            "for i = 2, #ARGV, 2 do redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return 1", Long.class);
+
+    /**
+     * 清空购物车：只留下已加载标记，避免下次访问又去数据库加载
+     */
+    private static final RedisScript<Long> CLEAN_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "return redis.call('SADD', KEYS[2], ARGV[2])", Long.class);
+
+    /**
+     * 下单取走购物车：整个hash改名成订单快照，原来的key只留下已加载标记，并记为待写回
+     * 购物车没加载过返回-2，让调用方先从数据库加载
+     */
+    private static final RedisScript<Long> CHECKOUT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('EXISTS', KEYS[1]) == 0 then return -2 end " +
+            "redis.call('RENAME', KEYS[1], KEYS[2]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[2]) " +
+            "redis.call('HSET', KEYS[1], '" + LOADED_FIELD + "', '1') " +
+            "redis.call('EXPIRE', KEYS[1], ARGV[1]) " +
+            "redis.call('SADD', KEYS[3], ARGV[3]) " +
+            "return 1", Long.class);
+
+    /**
+     * 订单没有写库成功，把快照里的商品合并回购物车：数量累加到取走之后新加购的数量上，商品信息已存在时不覆盖
+     * 快照已经不存在(放回过或已过期)返回0
+     */
+    private static final RedisScript<Long> RESTORE_SCRIPT = new DefaultRedisScript<>(
+            "local fields = redis.call('HGETALL', KEYS[1]) " +
+            "if #fields == 0 then return 0 end " +
+            "for i = 1, #fields, 2 do " +
+            "  if string.sub(fields[i], 1, " + NUMBER_FIELD_PREFIX.length() + ") == '" + NUMBER_FIELD_PREFIX + "' then " +
+            "    redis.call('HINCRBY', KEYS[2], fields[i], fields[i + 1]) " +
+            "  else " +
+            "    redis.call('HSETNX', KEYS[2], fields[i], fields[i + 1]) " +
+            "  end " +
+            "end " +
+            "redis.call('DEL', KEYS[1]) " +
+            "redis.call('EXPIRE', KEYS[2], ARGV[1]) " +
+            "redis.call('SADD', KEYS[3], ARGV[2]) " +
+            "return 1", Long.class);
+
+    /**
+     * 把cart_dirty里的用户挪到cart_dirty:flushing(合并上次没写完的)，返回要写回的全部用户
+     * 挪走之后再修改的用户会重新加进cart_dirty，下一次写回
+     */
+    private static final RedisScript<List> TAKE_DIRTY_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('SUNIONSTORE', KEYS[2], KEYS[1], KEYS[2]) " +
+            "redis.call('DEL', KEYS[1]) " +
+            "return redis.call('SMEMBERS', KEYS[2])", List.class);
+
+    private static final String FLUSH_LEASE_KEY = "cart_flush:leader";
+    private static final int FLUSH_BATCH_SIZE = 200;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
     @Autowired
     private ShoppingCartMapper shoppingCartMapper;
     @Autowired
     private DishMapper dishMapper;
     @Autowired
     private SetmealMapper setmealMapper;
+    @Autowired
+    private ShopService shopService;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private LeaderLease flushLease;
+
+    @PostConstruct
+    public void init() {
+        flushLease = new LeaderLease(stringRedisTemplate, FLUSH_LEASE_KEY, TimeUnit.MINUTES.toMillis(1));
+    }
+
     @Override
     public void addShoppingCart(ShoppingCartDTO shoppingCartDTO) {
+        //打烊后不能加购，读的是内存里的营业状态
+        if (!shopService.isOpen()) {
+            throw new ShoppingCartBusinessException(MessageConstant.SHOP_CLOSED);
+        }
         //判断当前购物车是否已经存在，如果存在的话+1，不存在插入到购物车
-//        ShoppingCart shoppingCart = ShoppingCart.builder()
-//                .dishId(shoppingCartDTO.getDishId())
-//                .setmealId(shoppingCartDTO.getSetmealId())
-//                .dishFlavor(shoppingCartDTO.getDishFlavor())
-//                .build();
+        Long userId = BaseContext.getCurrentId();
+        String key = CART_KEY_PREFIX + userId;
+        String item = itemOf(shoppingCartDTO.getDishId(), shoppingCartDTO.getDishFlavor(), shoppingCartDTO.getSetmealId());
+        List<String> keys = Arrays.asList(key, DIRTY_KEY);
+        String ttl = String.valueOf(CART_TTL_SECONDS);
+
+        //已经在购物车里，一次redis调用完成+1
+        Long number = stringRedisTemplate.execute(ADD_SCRIPT, keys, INFO_FIELD_PREFIX + item, NUMBER_FIELD_PREFIX + item,
+                ttl, String.valueOf(userId));
+        if (number != null && number == -2) {
+            load(userId);
+            number = stringRedisTemplate.execute(ADD_SCRIPT, keys, INFO_FIELD_PREFIX + item, NUMBER_FIELD_PREFIX + item,
+                    ttl, String.valueOf(userId));
+        }
+        if (number != null && number > 0) {
+            return;
+        }
+
         ShoppingCart shoppingCart = new ShoppingCart();
         BeanUtils.copyProperties(shoppingCartDTO, shoppingCart);
-        Long userId = BaseContext.getCurrentId();
         shoppingCart.setUserId(userId);
-        List<ShoppingCart> list = shoppingCartMapper.list(shoppingCart);
+        //判断是菜品还是套餐
+        Long dishId = shoppingCartDTO.getDishId();
+        if(dishId != null) {
+            //本次添加的是菜品
+            Dish dish = dishMapper.getById(dishId);
+            shoppingCart.setName(dish.getName());
+            shoppingCart.setImage(dish.getImage());
+            shoppingCart.setAmount(dish.getPrice());
+        }else{
+            //本次添加的套餐
+            Setmeal setmeal = setmealMapper.getById(shoppingCart.getSetmealId());
+            shoppingCart.setName(setmeal.getName());
+            shoppingCart.setImage(setmeal.getImage());
+            shoppingCart.setAmount(setmeal.getPrice());
+        }
+        shoppingCart.setCreateTime(LocalDateTime.now());
+        Long added = stringRedisTemplate.execute(ADD_SCRIPT, keys, INFO_FIELD_PREFIX + item, NUMBER_FIELD_PREFIX + item,
+                ttl, String.valueOf(userId), JSON.toJSONString(shoppingCart));
+        if (added != null && added == -2) {
+            //查菜品期间购物车刚好过期，重新加载后再加一次
+            load(userId);
+            stringRedisTemplate.execute(ADD_SCRIPT, keys, INFO_FIELD_PREFIX + item, NUMBER_FIELD_PREFIX + item,
+                    ttl, String.valueOf(userId), JSON.toJSONString(shoppingCart));
+        }
+    }
 
-        if(list != null && list.size() > 0) {
-            ShoppingCart cart = list.get(0);
-            cart.setNumber(cart.getNumber()+1);
-            shoppingCartMapper.updateNumberById(cart);
+    @Override
+    public List<ShoppingCart> showShoppingCart() {
+        Long userId = BaseContext.getCurrentId();
+        return listByUserId(userId);
+    }
 
-        }else{
-            //判断是菜品还是套餐
-            Long dishId = shoppingCartDTO.getDishId();
-            if(dishId != null) {
-                //本次添加的是菜品
-                Dish dish = dishMapper.getById(dishId);
-                shoppingCart.setName(dish.getName());
-                shoppingCart.setImage(dish.getImage());
-                shoppingCart.setAmount(dish.getPrice());
-            }else{
-                //本次添加的套餐
-
-                Setmeal setmeal = setmealMapper.getById(shoppingCart.getSetmealId());
-                shoppingCart.setName(setmeal.getName());
-                shoppingCart.setImage(setmeal.getImage());
-                shoppingCart.setAmount(setmeal.getPrice());
+    @Override
+    public void clean() {
+        Long userId = BaseContext.getCurrentId();
+        clean(userId);
+    }
 
+    /**
+     * 查询用户购物车，按加入时间排序
+     * @param userId
+     * @return
+     */
+    @Override
+    public List<ShoppingCart> listByUserId(Long userId) {
+        String key = CART_KEY_PREFIX + userId;
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(key);
+        if (entries.isEmpty()) {
+            load(userId);
+            entries = stringRedisTemplate.opsForHash().entries(key);
+        }
+        List<ShoppingCart> list = toCartItems(userId, entries);
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime));
+        return list;
+    }
 
+    @Override
+    public void clean(Long userId) {
+        stringRedisTemplate.execute(CLEAN_SCRIPT, Arrays.asList(CART_KEY_PREFIX + userId, DIRTY_KEY),
+                String.valueOf(CART_TTL_SECONDS), String.valueOf(userId));
+    }
+
+    @Override
+    public List<ShoppingCart> checkout(Long userId, String number) {
+        List<String> keys = Arrays.asList(CART_KEY_PREFIX + userId, snapshotKey(userId, number), DIRTY_KEY);
+        String ttl = String.valueOf(CART_TTL_SECONDS);
+        String snapshotTtl = String.valueOf(ORDER_SNAPSHOT_TTL_SECONDS);
+        Long taken = stringRedisTemplate.execute(CHECKOUT_SCRIPT, keys, ttl, snapshotTtl, String.valueOf(userId));
+        if (taken != null && taken == -2) {
+            load(userId);
+            stringRedisTemplate.execute(CHECKOUT_SCRIPT, keys, ttl, snapshotTtl, String.valueOf(userId));
+        }
+        List<ShoppingCart> list = toCartItems(userId, stringRedisTemplate.opsForHash().entries(snapshotKey(userId, number)));
+        list.sort(Comparator.comparing(ShoppingCart::getCreateTime));
+        return list;
+    }
+
+    @Override
+    public void restoreCheckout(Long userId, String number) {
+        Long restored = stringRedisTemplate.execute(RESTORE_SCRIPT,
+                Arrays.asList(snapshotKey(userId, number), CART_KEY_PREFIX + userId, DIRTY_KEY),
+                String.valueOf(CART_TTL_SECONDS), String.valueOf(userId));
+        if (restored == null || restored == 0) {
+            log.warn("订单{}取走的购物车已经不存在，没有放回", number);
+        }
+    }
+
+    @Override
+    public void completeCheckout(Long userId, String number) {
+        stringRedisTemplate.delete(snapshotKey(userId, number));
+    }
+
+    private static String snapshotKey(Long userId, String number) {
+        return CART_KEY_PREFIX + userId + ORDER_SNAPSHOT_INFIX + number;
+    }
+
+    /**
+     * 把shopping_cart表里的购物车加载到redis，redis里还没有这个用户的购物车时调用
+     */
+    private void load(Long userId) {
+        List<ShoppingCart> rows = shoppingCartMapper.listByUserId(userId);
+        List<String> args = new ArrayList<>(1 + rows.size() * 4);
+        args.add(String.valueOf(CART_TTL_SECONDS));
+        for (ShoppingCart row : rows) {
+            String item = itemOf(row.getDishId(), row.getDishFlavor(), row.getSetmealId());
+            ShoppingCart info = new ShoppingCart();
+            BeanUtils.copyProperties(row, info, "id", "number");
+            if (info.getCreateTime() == null) {
+                info.setCreateTime(LocalDateTime.now());
             }
-            shoppingCart.setNumber(1);
-            shoppingCart.setCreateTime(LocalDateTime.now());
-            shoppingCartMapper.insert(shoppingCart);
+            args.add(INFO_FIELD_PREFIX + item);
+            args.add(JSON.toJSONString(info));
+            args.add(NUMBER_FIELD_PREFIX + item);
+            args.add(String.valueOf(row.getNumber()));
         }
+        stringRedisTemplate.execute(LOAD_SCRIPT, Collections.singletonList(CART_KEY_PREFIX + userId), args.toArray());
+    }
 
+    /**
+     * 把修改过的购物车写回shopping_cart表：每个用户先删后插，一批用户一个事务
+     * 只有一个节点执行，写失败的用户留在cart_dirty:flushing里下次再写
+     */
+    @Scheduled(initialDelay = 5 * 1000, fixedDelay = 5 * 1000)
+    @SuppressWarnings("unchecked")
+    public void flushDirtyCarts() {
+        if (!flushLease.hold()) {
+            return;
+        }
+        List<String> userIds = stringRedisTemplate.execute(TAKE_DIRTY_SCRIPT, Arrays.asList(DIRTY_KEY, FLUSHING_KEY));
+        if (userIds == null) {
+            return;
+        }
+        for (int from = 0; from < userIds.size(); from += FLUSH_BATCH_SIZE) {
+            List<String> batch = userIds.subList(from, Math.min(from + FLUSH_BATCH_SIZE, userIds.size()));
+            try {
+                flush(batch);
+            } catch (Exception e) {
+                log.error("购物车写回数据库失败，{}个用户下次重试", userIds.size() - from, e);
+                return;
+            }
+            stringRedisTemplate.opsForSet().remove(FLUSHING_KEY, batch.toArray());
+        }
+    }
 
+    private void flush(List<String> dirtyUserIds) {
+        List<Long> userIds = new ArrayList<>(dirtyUserIds.size());
+        List<ShoppingCart> rows = new ArrayList<>();
+        for (String dirtyUserId : dirtyUserIds) {
+            Long userId = Long.valueOf(dirtyUserId);
+            Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(CART_KEY_PREFIX + userId);
+            //redis里的购物车已经没了(被淘汰或redis重启)，表里的数据是仅剩的一份，不能删
+            if (entries.isEmpty()) {
+                continue;
+            }
+            userIds.add(userId);
+            rows.addAll(toCartItems(userId, entries));
+        }
+        if (userIds.isEmpty()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            shoppingCartMapper.deleteByUserIds(userIds);
+            if (!rows.isEmpty()) {
+                shoppingCartMapper.insertBatch(rows);
+            }
+        });
     }
 
-    @Override
-    public List<ShoppingCart> showShoppingCart() {
-        Long userId = BaseContext.getCurrentId();
-        ShoppingCart shoppingCart = new ShoppingCart();
-        shoppingCart.setUserId(userId);
-        List<ShoppingCart> list = shoppingCartMapper.listByUserId(userId);
+    /**
+     * 把redis hash里的字段还原成购物车商品
+     */
+    private static List<ShoppingCart> toCartItems(Long userId, Map<Object, Object> entries) {
+        List<ShoppingCart> list = new ArrayList<>();
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            String field = entry.getKey().toString();
+            if (!field.startsWith(INFO_FIELD_PREFIX)) {
+                continue;
+            }
+            Object number = entries.get(NUMBER_FIELD_PREFIX + field.substring(INFO_FIELD_PREFIX.length()));
+            if (number == null) {
+                continue;
+            }
+            ShoppingCart shoppingCart = JSON.parseObject(entry.getValue().toString(), ShoppingCart.class);
+            shoppingCart.setUserId(userId);
+            shoppingCart.setNumber(Integer.valueOf(number.toString()));
+            list.add(shoppingCart);
+        }
         return list;
     }
 
-    @Override
-    public void clean() {
-        Long userId = BaseContext.getCurrentId();
-        shoppingCartMapper.clean(userId);
+    /**
+     * 购物车中一个商品的标识：菜品id+口味 或 套餐id
+     */
+    private static String itemOf(Long dishId, String dishFlavor, Long setmealId) {
+        if (dishId != null) {
+            return "dish:" + dishId + ":" + (dishFlavor == null ? "" : dishFlavor);
+        }
+        return "setmeal:" + setmealId;
     }
 }
@@ -8,15 +8,19 @@ import com.sky.entity.User;
 import com.sky.exception.LoginFailedException;
 import com.sky.mapper.UserMapper;
 import com.sky.properties.WeChatProperties;
+import com.sky.report.DailyStatsRecorder;
 import com.sky.service.UserService;
 import com.sky.utils.HttpClientUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 @Slf4j
@@ -28,39 +32,48 @@ public class UserServiceImpl implements UserService {
     private  WeChatProperties weChatProperties;
     @Autowired
     private UserMapper userMapper;
+    @Autowired
+    private DailyStatsRecorder dailyStatsRecorder;
+    //spring boot自动配置的应用线程池，带ContextTaskDecorator，见AsyncConfiguration
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private Executor applicationTaskExecutor;
 
     @Override
-    public User wxLogin(UserLoginDTO userLoginDTO) {
-        //1.调用微信用户接口，获得openid
-        String openid = getOpenid(userLoginDTO.getCode());
-
-        //2.判断openid是否获取到
-        if(openid == null) {
-            throw new LoginFailedException(MessageConstant.LOGIN_FAILED);
-        }
-        //3.判断当前用户是否为新用户，如果是则自动完成注册
-        User user = userMapper.getByOpenid(openid);
-        if(user == null) {
-            user = User.builder()
-                    .openid(openid)
-                    .createTime(LocalDateTime.now())
-                    .build();
-            userMapper.insert(user);
-        }
-        log.info("user~~~~~");
-        //4.返回这个用户对象
-        return user;
+    public CompletableFuture<User> wxLogin(UserLoginDTO userLoginDTO) {
+        //1.调用微信用户接口，获得openid；响应返回后查库、注册交给应用线程池，不占用http客户端的回调线程
+        return getOpenid(userLoginDTO.getCode()).thenApplyAsync(openid -> {
+            //2.判断openid是否获取到
+            if(openid == null) {
+                throw new LoginFailedException(MessageConstant.LOGIN_FAILED);
+            }
+            //3.判断当前用户是否为新用户，如果是则自动完成注册
+            User user = userMapper.getByOpenid(openid);
+            if(user == null) {
+                user = User.builder()
+                        .openid(openid)
+                        .createTime(LocalDateTime.now())
+                        .build();
+                userMapper.insert(user);
+                dailyStatsRecorder.userRegistered(user.getCreateTime());
+            }
+            log.info("user~~~~~");
+            //4.返回这个用户对象
+            return user;
+        }, applicationTaskExecutor);
     }
 
-    private String getOpenid(String code){
+    private CompletableFuture<String> getOpenid(String code){
         Map<String, String> map = new HashMap<>();
         map.put("appid", weChatProperties.getAppid());
         map.put("secret", weChatProperties.getSecret());
         map.put("js_code", code);
         map.put("grant_type", "authorization_code");
-        String json = HttpClientUtil.doGet(WX_LOGIN_URL, map);
-        JSONObject jsonObject = JSON.parseObject(json);
-        return jsonObject.getString("openid");
+        return HttpClientUtil.doGetAsync(WX_LOGIN_URL, map).thenApply(json -> {
+            //请求失败时返回空字符串
+            JSONObject jsonObject = JSON.parseObject(json);
+            return jsonObject == null ? null : jsonObject.getString("openid");
+        });
     }
 
 }
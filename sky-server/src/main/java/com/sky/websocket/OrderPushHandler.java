@@ -0,0 +1,105 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import com.sky.entity.Orders;
+import com.sky.properties.OrderPushProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 向管理端推送新订单提醒
+ * 新订单先发布到redis频道，每个节点(包括发布的节点)收到后推给自己持有的连接，连接落在哪个节点都能收到
+ */
+@Component
+@Slf4j
+public class OrderPushHandler extends TextWebSocketHandler implements MessageListener {
+
+    //消息类型 1来单提醒
+    public static final int TYPE_NEW_ORDER = 1;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final OrderPushProperties orderPushProperties;
+    private final Map<String, OrderPushSession> sessions = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+
+    public OrderPushHandler(StringRedisTemplate stringRedisTemplate, OrderPushProperties orderPushProperties) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.orderPushProperties = orderPushProperties;
+        AtomicInteger index = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(orderPushProperties.getSenderThreads(), runnable -> {
+            Thread thread = new Thread(runnable, "order-push-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sessions.values().forEach(session -> session.close(CloseStatus.GOING_AWAY));
+        sender.shutdown();
+    }
+
+    /**
+     * 新订单提醒，订单支付成功(事务提交)后由状态机调用，下单时还没支付不提醒
+     * @param orders
+     */
+    public void newOrder(Orders orders) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", TYPE_NEW_ORDER);
+        map.put("orderId", orders.getId());
+        map.put("content", "订单号：" + orders.getNumber());
+        stringRedisTemplate.convertAndSend(orderPushProperties.getChannel(), JSON.toJSONString(map));
+    }
+
+    /**
+     * 推给当前节点的所有连接
+     * @param message
+     */
+    public void broadcast(String message) {
+        sessions.values().forEach(session -> session.offer(message));
+    }
+
+    /**
+     * 收到redis频道里的新订单消息
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        broadcast(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void afterConnectionEstablished(WebSocketSession session) {
+        sessions.put(session.getId(), new OrderPushSession(session, sender,
+                orderPushProperties.getMaxPending(), orderPushProperties.getSendTimeoutMillis()));
+        log.info("管理端连接{}已建立，当前连接数：{}", session.getId(), sessions.size());
+    }
+
+    @Override
+    public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
+        OrderPushSession pushSession = sessions.remove(session.getId());
+        if (pushSession != null) {
+            pushSession.close(status);
+        }
+        log.info("管理端连接{}已断开：{}", session.getId(), status);
+    }
+
+    @Override
+    public void handleTransportError(WebSocketSession session, Throwable exception) {
+        log.debug("管理端连接{}传输错误", session.getId(), exception);
+    }
+}
@@ -0,0 +1,152 @@
+package com.sky.websocket;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+
+import javax.websocket.RemoteEndpoint;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 一个管理端连接的发送队列
+ * 广播线程只把消息放进队列就返回，由发送线程池写给浏览器，一个慢连接不会拖慢广播
+ * 队列有上限，积压满了就丢掉积压的消息，改发一条带丢弃数量的合并消息，前端收到后刷新订单列表
+ * 每个连接同一时刻最多只有一个发送任务，消息按顺序发出
+ * 底层是标准websocket会话(tomcat)时用异步发送，浏览器收得慢也不占用发送线程
+ */
+@Slf4j
+public class OrderPushSession {
+
+    private final WebSocketSession session;
+    private final Executor sender;
+    private final int maxPending;
+    //不支持异步发送时为null
+    private final RemoteEndpoint.Async asyncRemote;
+
+    //以下两个字段由pending加锁保护
+    private final ArrayDeque<String> pending = new ArrayDeque<>();
+    private int dropped;
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    public OrderPushSession(WebSocketSession session, Executor sender, int maxPending, long sendTimeoutMillis) {
+        this.session = session;
+        this.sender = sender;
+        this.maxPending = maxPending;
+        javax.websocket.Session nativeSession = session instanceof NativeWebSocketSession
+                ? ((NativeWebSocketSession) session).getNativeSession(javax.websocket.Session.class)
+                : null;
+        this.asyncRemote = nativeSession == null ? null : nativeSession.getAsyncRemote();
+        if (asyncRemote != null) {
+            asyncRemote.setSendTimeout(sendTimeoutMillis);
+        }
+    }
+
+    public String getId() {
+        return session.getId();
+    }
+
+    /**
+     * 消息入队，不阻塞
+     * @param message
+     */
+    public void offer(String message) {
+        if (closed) {
+            return;
+        }
+        synchronized (pending) {
+            if (pending.size() >= maxPending) {
+                dropped += pending.size() + 1;
+                pending.clear();
+            } else {
+                pending.addLast(message);
+            }
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            sender.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        while (!closed) {
+            String message = next();
+            if (message == null) {
+                scheduled.set(false);
+                //放弃发送权之后又有消息入队，并且入队的线程没有抢到发送权，由当前线程继续发
+                if (isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            if (asyncRemote != null) {
+                //发送完成后回到发送线程池继续发下一条
+                asyncRemote.sendText(message, result -> {
+                    if (result.isOK()) {
+                        sender.execute(this::flush);
+                    } else {
+                        failed(result.getException());
+                    }
+                });
+                return;
+            }
+            try {
+                session.sendMessage(new TextMessage(message));
+            } catch (Exception e) {
+                failed(e);
+                return;
+            }
+        }
+    }
+
+    private void failed(Throwable e) {
+        log.warn("向管理端连接{}推送消息失败，关闭连接", session.getId(), e);
+        close(CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private String next() {
+        synchronized (pending) {
+            if (dropped > 0) {
+                int count = dropped;
+                dropped = 0;
+                return coalesced(count);
+            }
+            return pending.pollFirst();
+        }
+    }
+
+    private boolean isEmpty() {
+        synchronized (pending) {
+            return dropped == 0 && pending.isEmpty();
+        }
+    }
+
+    public void close(CloseStatus status) {
+        closed = true;
+        synchronized (pending) {
+            pending.clear();
+            dropped = 0;
+        }
+        try {
+            session.close(status);
+        } catch (Exception e) {
+            log.debug("关闭管理端连接{}失败", session.getId(), e);
+        }
+    }
+
+    private static String coalesced(int count) {
+        Map<String, Object> map = new HashMap<>();
+        map.put("type", OrderPushHandler.TYPE_NEW_ORDER);
+        map.put("coalesced", count);
+        map.put("content", "有" + count + "条新订单提醒，请刷新订单列表");
+        return JSON.toJSONString(map);
+    }
+}
@@ -0,0 +1,17 @@
+-- 每日统计表，报表查询只读这张表
+-- 下单、完成、取消、注册时增量更新，每天凌晨按订单表、用户表重算前一天
+-- 建表后不用手工导入历史数据：服务启动后DailyStatsBackfill会从最早的订单、用户开始补算缺少的日期
+create table if not exists daily_stats
+(
+    stat_date             date           not null comment '日期' primary key,
+    turnover              decimal(12, 2) not null default 0 comment '营业额',
+    order_count           int            not null default 0 comment '订单数',
+    valid_order_count     int            not null default 0 comment '有效订单数',
+    cancelled_order_count int            not null default 0 comment '已取消订单数',
+    new_user_count        int            not null default 0 comment '新增用户数',
+    update_time           datetime       null comment '更新时间'
+) comment '每日统计';
+
+-- 按天重算时按下单时间、注册时间范围查询
+create index idx_orders_order_time on orders (order_time);
+create index idx_user_create_time on user (create_time);
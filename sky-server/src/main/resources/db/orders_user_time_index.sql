@@ -0,0 +1,3 @@
+-- 用户端历史订单游标分页：where user_id = ? and (order_time, id) < (?, ?) order by order_time desc, id desc limit n
+-- 按这个索引倒序范围扫描，深翻页也只读n行，不用filesort
+create index idx_orders_user_time on orders (user_id, order_time, id);
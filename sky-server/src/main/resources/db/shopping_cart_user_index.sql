@@ -0,0 +1,3 @@
+-- 购物车写回和加载都按用户：delete from shopping_cart where user_id in (...)、select * from shopping_cart where user_id = ?
+-- 没有这个索引时每次写回都要全表扫描并锁住扫描到的行
+create index idx_shopping_cart_user on shopping_cart (user_id);
@@ -0,0 +1,158 @@
+package com.sky.cache;
+
+import com.sky.entity.DishFlavor;
+import com.sky.entity.SetmealDish;
+import com.sky.vo.DishVO;
+import com.sky.vo.OrderSubmitStatusVO;
+import com.sky.vo.SetmealVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheValueSerializerTest {
+
+    //json里的时间只精确到分钟
+    private static final LocalDateTime UPDATE_TIME = LocalDateTime.of(2026, 10, 18, 11, 30);
+
+    @ParameterizedTest
+    @CsvSource({"json, 0", "json, 64", "smile, 0", "smile, 64", "jdk, 0"})
+    void roundTripsMenuPayloads(String format, int compressThreshold) {
+        CacheValueSerializer serializer = new CacheValueSerializer(format, compressThreshold);
+        List<DishVO> dishes = dishVOList(40);
+        List<SetmealVO> setmeals = setmealVOList(20);
+
+        assertThat(serializer.deserialize(serializer.serialize(dishes))).isEqualTo(dishes);
+        assertThat(serializer.deserialize(serializer.serialize(setmeals))).isEqualTo(setmeals);
+    }
+
+    @Test
+    void roundTripsScalarsAndStatusVO() {
+        CacheValueSerializer serializer = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024);
+        OrderSubmitStatusVO statusVO = OrderSubmitStatusVO.builder()
+                .orderNumber("1850000000000000001").status(OrderSubmitStatusVO.SUCCESS).id(42L).build();
+
+        assertThat(serializer.deserialize(serializer.serialize(statusVO))).isEqualTo(statusVO);
+        assertThat(serializer.deserialize(serializer.serialize(1))).isEqualTo(1);
+        assertThat(serializer.deserialize(serializer.serialize("营业中"))).isEqualTo("营业中");
+        assertThat(serializer.deserialize(serializer.serialize(new BigDecimal("58.00")))).isEqualTo(new BigDecimal("58.00"));
+    }
+
+    @Test
+    void compressesOnlyAboveThreshold() {
+        List<DishVO> dishes = dishVOList(40);
+        byte[] plain = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 0).serialize(dishes);
+        byte[] compressed = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024).serialize(dishes);
+        byte[] small = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024).serialize(dishVOList(1));
+
+        //第4个字节是标记位，1表示lz4压缩
+        assertThat(plain[3]).isEqualTo((byte) 0);
+        assertThat(compressed[3]).isEqualTo((byte) 1);
+        assertThat(small[3]).isEqualTo((byte) 0);
+        assertThat(compressed.length).isLessThan(plain.length / 2);
+    }
+
+    @Test
+    void readsLegacyJdkValues() {
+        //改造前redisTemplate默认的jdk序列化写入的值
+        byte[] legacy = new JdkSerializationRedisSerializer().serialize(dishVOList(3));
+
+        for (String format : Arrays.asList(CacheValueSerializer.FORMAT_JSON, CacheValueSerializer.FORMAT_SMILE)) {
+            assertThat(new CacheValueSerializer(format, 1024).deserialize(legacy)).isEqualTo(dishVOList(3));
+        }
+    }
+
+    @Test
+    void rollingDeployReadsEitherDirection() {
+        CacheValueSerializer jdk = new CacheValueSerializer(CacheValueSerializer.FORMAT_JDK, 0);
+        CacheValueSerializer smile = new CacheValueSerializer(CacheValueSerializer.FORMAT_SMILE, 1024);
+        List<SetmealVO> setmeals = setmealVOList(5);
+
+        assertThat(smile.deserialize(jdk.serialize(setmeals))).isEqualTo(setmeals);
+        assertThat(jdk.deserialize(smile.serialize(setmeals))).isEqualTo(setmeals);
+    }
+
+    @Test
+    void rejectsUnknownVersionAndForeignTypes() {
+        CacheValueSerializer serializer = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024);
+        byte[] bytes = serializer.serialize("x");
+        bytes[1] = 99;
+        assertThatThrownBy(() -> serializer.deserialize(bytes)).isInstanceOf(SerializationException.class);
+
+        byte[] json = "[\"java.net.URL\",\"http://example.com\"]".getBytes(StandardCharsets.UTF_8);
+        byte[] foreign = new byte[4 + json.length];
+        foreign[0] = (byte) 0xC5;
+        foreign[1] = 1;
+        foreign[2] = 1;
+        System.arraycopy(json, 0, foreign, 4, json.length);
+        assertThatThrownBy(() -> serializer.deserialize(foreign)).isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    void nullAndEmpty() {
+        CacheValueSerializer serializer = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024);
+        assertThat(serializer.serialize(null)).isEmpty();
+        assertThat(serializer.deserialize(new byte[0])).isNull();
+        assertThat(serializer.deserialize(null)).isNull();
+    }
+
+    @Test
+    void rejectsUnknownFormat() {
+        assertThatThrownBy(() -> new CacheValueSerializer("xml", 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static List<DishVO> dishVOList(int size) {
+        List<DishVO> list = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            list.add(DishVO.builder()
+                    .id(id)
+                    .name("招牌水煮鱼" + id)
+                    .categoryId(11L)
+                    .price(new BigDecimal("58.00"))
+                    .image("https://cangqiongwaimaipbj.oss-cn-shenzhen.aliyuncs.com/dish/" + id + ".png")
+                    .description("鲜嫩草鱼片，麻辣鲜香")
+                    .status(1)
+                    .updateTime(UPDATE_TIME)
+                    .categoryName("特色蒸菜")
+                    .flavors(new ArrayList<>(Arrays.asList(
+                            DishFlavor.builder().id(id * 2).dishId(id).name("辣度").value("[\"不辣\",\"微辣\"]").build(),
+                            DishFlavor.builder().id(id * 2 + 1).dishId(id).name("忌口").value("[\"不要葱\"]").build())))
+                    .build());
+        }
+        return list;
+    }
+
+    private static List<SetmealVO> setmealVOList(int size) {
+        List<SetmealVO> list = new ArrayList<>(size);
+        for (long id = 1; id <= size; id++) {
+            List<SetmealDish> setmealDishes = new ArrayList<>();
+            for (long d = 1; d <= 4; d++) {
+                setmealDishes.add(SetmealDish.builder().id(id * 10 + d).setmealId(id).dishId(d)
+                        .name("招牌水煮鱼" + d).price(new BigDecimal("58.00")).copies(1).build());
+            }
+            list.add(SetmealVO.builder()
+                    .id(id)
+                    .categoryId(13L)
+                    .name("商务套餐" + id)
+                    .price(new BigDecimal("128.00"))
+                    .status(1)
+                    .description("四菜一汤")
+                    .updateTime(UPDATE_TIME)
+                    .categoryName("商务套餐")
+                    .setmealDishes(setmealDishes)
+                    .build());
+        }
+        return list;
+    }
+}
@@ -0,0 +1,126 @@
+package com.sky.cache;
+
+import com.sky.constant.CacheConstant;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.support.EmbeddedRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 两个节点共用一个本地redis：二级缓存回填、本地命中、失效消息广播
+ */
+class MenuCacheTest {
+
+    private final MenuCacheProperties properties = new MenuCacheProperties();
+    private RedisTemplate redisTemplate;
+    private MenuCache nodeA;
+    private MenuCache nodeB;
+    private RedisMessageListenerContainer containerA;
+    private RedisMessageListenerContainer containerB;
+    private final AtomicInteger dbLoads = new AtomicInteger();
+    private final Supplier<List<String>> loader = () -> {
+        dbLoads.incrementAndGet();
+        return Arrays.asList("宫保鸡丁", "鱼香肉丝");
+    };
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+        redisTemplate = EmbeddedRedis.redisTemplate();
+        nodeA = new MenuCache(redisTemplate, properties);
+        nodeB = new MenuCache(EmbeddedRedis.redisTemplate(), properties);
+        containerA = EmbeddedRedis.subscribe(properties.getChannel(), nodeA);
+        containerB = EmbeddedRedis.subscribe(properties.getChannel(), nodeB);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        containerA.destroy();
+        containerB.destroy();
+    }
+
+    @Test
+    void secondNodeReadsFromRedisAndThenLocally() {
+        assertThat(nodeA.<List<String>>get(CacheConstant.DISH_KEY_PREFIX, 1L, loader)).containsExactly("宫保鸡丁", "鱼香肉丝");
+        assertThat(nodeB.<List<String>>get(CacheConstant.DISH_KEY_PREFIX, 1L, loader)).containsExactly("宫保鸡丁", "鱼香肉丝");
+        nodeB.get(CacheConstant.DISH_KEY_PREFIX, 1L, loader);
+
+        assertThat(dbLoads).hasValue(1);
+        //索引set里存的是原始key
+        assertThat(EmbeddedRedis.stringRedisTemplate().opsForSet().isMember(
+                CacheConstant.KEY_INDEX_PREFIX + CacheConstant.DISH_KEY_PREFIX, CacheConstant.DISH_KEY_PREFIX + 1L)).isTrue();
+        assertThat(nodeB.stats().missCount()).isEqualTo(1);
+        assertThat(nodeB.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void evictAllOnOneNodeDropsLocalEntriesEverywhere() throws InterruptedException {
+        nodeA.get(CacheConstant.DISH_KEY_PREFIX, 1L, loader);
+        nodeB.get(CacheConstant.DISH_KEY_PREFIX, 1L, loader);
+        nodeB.get(CacheConstant.SETMEAL_KEY_PREFIX, 1L, loader);
+        assertThat(nodeB.size()).isEqualTo(2);
+
+        nodeA.evictAll(CacheConstant.DISH_KEY_PREFIX);
+
+        awaitSize(nodeB, 1);
+        assertThat(redisTemplate.hasKey(CacheConstant.DISH_KEY_PREFIX + 1L)).isFalse();
+        assertThat(redisTemplate.hasKey(CacheConstant.SETMEAL_KEY_PREFIX + 1L)).isTrue();
+        assertThat(indexMembers(CacheConstant.DISH_KEY_PREFIX)).isEmpty();
+        assertThat(indexMembers(CacheConstant.SETMEAL_KEY_PREFIX)).containsExactly(CacheConstant.SETMEAL_KEY_PREFIX + 1L);
+        int loads = dbLoads.get();
+        nodeB.get(CacheConstant.DISH_KEY_PREFIX, 1L, loader);
+        assertThat(dbLoads).hasValue(loads + 1);
+    }
+
+    @Test
+    void evictOneKeyOnOneNodeDropsItEverywhere() throws InterruptedException {
+        nodeA.get(CacheConstant.DISH_KEY_PREFIX, 1L, loader);
+        nodeB.get(CacheConstant.DISH_KEY_PREFIX, 1L, loader);
+        nodeB.get(CacheConstant.DISH_KEY_PREFIX, 2L, loader);
+
+        nodeA.evict(CacheConstant.DISH_KEY_PREFIX, 1L);
+
+        awaitSize(nodeB, 1);
+        assertThat(redisTemplate.hasKey(CacheConstant.DISH_KEY_PREFIX + 1L)).isFalse();
+        assertThat(redisTemplate.hasKey(CacheConstant.DISH_KEY_PREFIX + 2L)).isTrue();
+        //单个key清理后索引里也不再保留，索引不会无限增长
+        assertThat(indexMembers(CacheConstant.DISH_KEY_PREFIX)).containsExactly(CacheConstant.DISH_KEY_PREFIX + 2L);
+    }
+
+    @Test
+    void evictAllDeletesManyKeysInBatches() {
+        for (long id = 0; id < 1200; id++) {
+            nodeA.get(CacheConstant.DISH_KEY_PREFIX, id, loader);
+        }
+        assertThat(indexMembers(CacheConstant.DISH_KEY_PREFIX)).hasSize(1200);
+
+        nodeA.evictAll(CacheConstant.DISH_KEY_PREFIX);
+
+        assertThat(indexMembers(CacheConstant.DISH_KEY_PREFIX)).isEmpty();
+        assertThat(redisTemplate.keys(CacheConstant.DISH_KEY_PREFIX + "*")).isEmpty();
+    }
+
+    private static Set<String> indexMembers(String prefix) {
+        return EmbeddedRedis.stringRedisTemplate().opsForSet().members(CacheConstant.KEY_INDEX_PREFIX + prefix);
+    }
+
+    private static void awaitSize(MenuCache menuCache, long size) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (menuCache.size() != size && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(menuCache.size()).isEqualTo(size);
+    }
+}
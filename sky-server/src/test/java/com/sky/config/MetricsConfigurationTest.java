@@ -0,0 +1,131 @@
+package com.sky.config;
+
+import com.alibaba.druid.pool.DruidDataSource;
+import com.sky.cache.MenuCache;
+import com.sky.constant.CacheConstant;
+import com.sky.controller.admin.CacheController;
+import com.sky.controller.user.DishController;
+import com.sky.interceptor.JwtTokenAdminInterceptor;
+import com.sky.interceptor.JwtTokenUserInterceptor;
+import com.sky.properties.MenuCacheProperties;
+import com.sky.service.DishService;
+import com.sky.support.EmbeddedRedis;
+import com.sky.vo.DishVO;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.autoconfigure.metrics.MetricsAutoConfiguration;
+import org.springframework.boot.actuate.autoconfigure.metrics.web.servlet.WebMvcMetricsAutoConfiguration;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * 调一个管理端接口和一个用户端接口，检查/actuator/prometheus会抓到的指标都注册了且数值合理：
+ * 按uri区分的http.server.requests、菜单缓存的请求和未命中数、druid连接池
+ * jwt拦截器不在这里测，排除掉
+ */
+@WebMvcTest(controllers = {CacheController.class, DishController.class},
+        excludeFilters = @ComponentScan.Filter(type = FilterType.ASSIGNABLE_TYPE,
+                classes = {JwtTokenAdminInterceptor.class, JwtTokenUserInterceptor.class}))
+@ImportAutoConfiguration({MetricsAutoConfiguration.class, WebMvcMetricsAutoConfiguration.class})
+@Import({MetricsConfiguration.class, MenuCache.class, MetricsConfigurationTest.Beans.class})
+class MetricsConfigurationTest {
+
+    private static final int MAX_ACTIVE = 20;
+
+    @Autowired
+    private MockMvc mockMvc;
+    @Autowired
+    private MeterRegistry registry;
+    @MockBean
+    private DishService dishService;
+
+    @BeforeAll
+    static void flushRedis() {
+        EmbeddedRedis.flushAll();
+    }
+
+    @Test
+    void registersRequestCacheAndPoolMeters() throws Exception {
+        when(dishService.listWithFlavor(any())).thenReturn(Collections.singletonList(new DishVO()));
+
+        //同一个分类查两次：第一次本地和redis都没有，第二次命中本地缓存
+        mockMvc.perform(get("/user/dish/list").param("categoryId", "11")).andExpect(status().isOk());
+        mockMvc.perform(get("/user/dish/list").param("categoryId", "11")).andExpect(status().isOk());
+        mockMvc.perform(get("/admin/cache/stats")).andExpect(status().isOk());
+
+        Timer userRequests = registry.get("http.server.requests").tag("uri", "/user/dish/list").timer();
+        assertThat(userRequests.count()).isEqualTo(2);
+        assertThat(userRequests.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+        assertThat(userRequests.max(TimeUnit.SECONDS)).isLessThan(10);
+        Timer adminRequests = registry.get("http.server.requests").tag("uri", "/admin/cache/stats").timer();
+        assertThat(adminRequests.count()).isEqualTo(1);
+        assertThat(adminRequests.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+
+        assertThat(registry.get("menu.cache.requests").tag("cache", CacheConstant.DISH_KEY_PREFIX)
+                .functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("menu.cache.misses").tag("cache", CacheConstant.DISH_KEY_PREFIX).tag("level", "local")
+                .functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("menu.cache.misses").tag("cache", CacheConstant.DISH_KEY_PREFIX).tag("level", "redis")
+                .functionCounter().count()).isEqualTo(1);
+        //没访问过的套餐缓存也有指标，从0开始
+        assertThat(registry.get("menu.cache.requests").tag("cache", CacheConstant.SETMEAL_KEY_PREFIX)
+                .functionCounter().count()).isZero();
+
+        //连接池还没有建立连接，活跃、空闲、等待都是0，最大连接数是配置值
+        assertThat(registry.get("druid.connections.max").gauge().value()).isEqualTo(MAX_ACTIVE);
+        assertThat(registry.get("druid.connections.active").gauge().value()).isBetween(0.0, (double) MAX_ACTIVE);
+        assertThat(registry.get("druid.connections.idle").gauge().value()).isBetween(0.0, (double) MAX_ACTIVE);
+        assertThat(registry.get("druid.connections.pending").gauge().value()).isGreaterThanOrEqualTo(0);
+        assertThat(registry.get("druid.connections.borrowed").functionCounter().count()).isGreaterThanOrEqualTo(0);
+        assertThat(registry.get("druid.connections.errors").functionCounter().count()).isZero();
+        assertThat(registry.get("druid.connections.wait").functionTimer().count()).isGreaterThanOrEqualTo(0);
+    }
+
+    @TestConfiguration
+    static class Beans {
+
+        @Bean
+        SimpleMeterRegistry simpleMeterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+
+        @Bean
+        RedisTemplate redisTemplate() {
+            return EmbeddedRedis.redisTemplate();
+        }
+
+        @Bean
+        MenuCacheProperties menuCacheProperties() {
+            return new MenuCacheProperties();
+        }
+
+        //不连数据库，只看指标
+        @Bean
+        DruidDataSource dataSource() {
+            DruidDataSource dataSource = new DruidDataSource();
+            dataSource.setMaxActive(MAX_ACTIVE);
+            return dataSource;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.sky.interceptor;
+
+import com.sky.constant.JwtClaimsConstant;
+import com.sky.utils.JwtUtil;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JwtTokenVerifierTest {
+
+    private static final String SECRET_KEY = "itcast";
+
+    private final JwtTokenVerifier verifier = new JwtTokenVerifier(SECRET_KEY, JwtClaimsConstant.EMP_ID, 100);
+
+    @Test
+    void verifiesAndCachesValidToken() {
+        String token = token(SECRET_KEY, 1L, 60_000);
+
+        assertThat(verifier.verify(token)).isEqualTo(1L);
+        assertThat(verifier.verify(token)).isEqualTo(1L);
+    }
+
+    @Test
+    void rejectsTamperedPayloadEvenAfterOriginalIsCached() {
+        String token = token(SECRET_KEY, 1L, 60_000);
+        verifier.verify(token);
+
+        //把载荷里的员工id改成2，签名不变
+        String[] parts = token.split("\\.");
+        String payload = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+        assertThat(payload).contains("\"empId\":1");
+        String forged = parts[0] + "."
+                + Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        payload.replace("\"empId\":1", "\"empId\":2").getBytes(StandardCharsets.UTF_8))
+                + "." + parts[2];
+
+        assertThatThrownBy(() -> verifier.verify(forged)).isInstanceOf(JwtException.class);
+        assertThat(verifier.verify(token)).isEqualTo(1L);
+    }
+
+    @Test
+    void rejectsTamperedSignatureAndForeignKey() {
+        String token = token(SECRET_KEY, 1L, 60_000);
+        char last = token.charAt(token.length() - 2);
+        String badSignature = token.substring(0, token.length() - 2) + (last == 'A' ? 'B' : 'A') + token.charAt(token.length() - 1);
+
+        assertThatThrownBy(() -> verifier.verify(badSignature)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> verifier.verify(token("another-secret", 1L, 60_000))).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void rejectsExpiredToken() {
+        assertThatThrownBy(() -> verifier.verify(token(SECRET_KEY, 1L, -60_000))).isInstanceOf(ExpiredJwtException.class);
+    }
+
+    @Test
+    void cachedTokenIsRejectedOnceExpired() throws InterruptedException {
+        //exp按秒取整，最多1秒后过期
+        String token = token(SECRET_KEY, 1L, 1000);
+        assertThat(verifier.verify(token)).isEqualTo(1L);
+
+        Thread.sleep(1100);
+
+        assertThatThrownBy(() -> verifier.verify(token)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> verifier.verify(token)).isInstanceOf(JwtException.class);
+    }
+
+    @Test
+    void rejectsMissingClaimAndEmptyToken() {
+        //用户端令牌里没有empId
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtClaimsConstant.USER_ID, 1L);
+        String userToken = JwtUtil.createJWT(SECRET_KEY, 60_000, claims);
+
+        assertThatThrownBy(() -> verifier.verify(userToken)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> verifier.verify(null)).isInstanceOf(JwtException.class);
+        assertThatThrownBy(() -> verifier.verify("")).isInstanceOf(JwtException.class);
+    }
+
+    private static String token(String secretKey, Long empId, long ttlMillis) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put(JwtClaimsConstant.EMP_ID, empId);
+        return JwtUtil.createJWT(secretKey, ttlMillis, claims);
+    }
+}
@@ -0,0 +1,162 @@
+package com.sky.interceptor;
+
+import com.sky.properties.SqlStatsProperties;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.builder.StaticSqlSource;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ParameterMapping;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.mapping.SqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class SqlStatsInterceptorTest {
+
+    private final Configuration configuration = new Configuration();
+    private final SqlStatsProperties sqlStatsProperties = new SqlStatsProperties();
+    private final SqlStatsInterceptor interceptor = new SqlStatsInterceptor(sqlStatsProperties);
+    private final Executor target = mock(Executor.class);
+    private Executor executor;
+    private MappedStatement listByUserId;
+    private MappedStatement updateStatus;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        sqlStatsProperties.setSlowThresholdMillis(50);
+        listByUserId = statement("com.sky.mapper.OrderMapper.listByUserId", SqlCommandType.SELECT,
+                "select *\n  from orders where user_id = ? and status = ?", "userId", "status");
+        updateStatus = statement("com.sky.mapper.OrderMapper.updateStatus", SqlCommandType.UPDATE,
+                "update orders set status = ? where id = ?", "status", "id");
+        executor = (Executor) interceptor.plugin(target);
+    }
+
+    @Test
+    void countsExecutionsRowsAndErrors() throws SQLException {
+        when(target.query(eq(listByUserId), any(), any(RowBounds.class), any()))
+                .thenReturn(Arrays.asList(1, 2, 3));
+        when(target.update(eq(updateStatus), any())).thenReturn(1).thenThrow(new SQLException("锁等待超时"));
+
+        for (int i = 0; i < 4; i++) {
+            executor.query(listByUserId, params("userId", 7L, "status", 1), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        }
+        executor.update(updateStatus, params("status", 2, "id", 100L));
+        assertThatThrownBy(() -> executor.update(updateStatus, params("status", 2, "id", 100L))).isInstanceOf(SQLException.class);
+
+        Map<String, Map<String, Object>> stats = byId(interceptor.stats());
+        assertThat(stats.get("OrderMapper.listByUserId"))
+                .containsEntry("count", 4L)
+                .containsEntry("rows", 12L)
+                .containsEntry("errors", 0L);
+        assertThat(stats.get("OrderMapper.updateStatus"))
+                .containsEntry("count", 2L)
+                .containsEntry("rows", 1L)
+                .containsEntry("errors", 1L);
+        assertThat(interceptor.slowLog()).isEmpty();
+    }
+
+    @Test
+    void capturesSlowStatementWithParameters() throws SQLException {
+        when(target.query(eq(listByUserId), any(), any(RowBounds.class), any())).thenAnswer(invocation -> {
+            TimeUnit.MILLISECONDS.sleep(60);
+            return Collections.emptyList();
+        });
+        sqlStatsProperties.setSlowLogSize(2);
+
+        for (int userId = 1; userId <= 3; userId++) {
+            executor.query(listByUserId, params("userId", (long) userId, "status", 5), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        }
+
+        //只保留最近的slowLogSize条，新的在前
+        List<Map<String, Object>> slowLog = interceptor.slowLog();
+        assertThat(slowLog).hasSize(2);
+        assertThat(slowLog.get(0))
+                .containsEntry("id", "OrderMapper.listByUserId")
+                .containsEntry("sql", "select * from orders where user_id = ? and status = ?")
+                .containsEntry("parameters", Arrays.asList("3", "5"));
+        assertThat((Long) slowLog.get(0).get("millis")).isGreaterThanOrEqualTo(50);
+        assertThat(slowLog.get(1).get("parameters")).isEqualTo(Arrays.asList("2", "5"));
+        assertThat(byId(interceptor.stats()).get("OrderMapper.listByUserId").get("p50Millis")).isEqualTo(100L);
+    }
+
+    @Test
+    void bindsPerStatementMeters() throws SQLException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        when(target.query(eq(listByUserId), any(), any(RowBounds.class), any()))
+                .thenReturn(Arrays.asList(1, 2));
+        when(target.update(eq(updateStatus), any())).thenReturn(1);
+
+        //绑定前已经执行过的语句和绑定后第一次执行的语句都要注册
+        executor.query(listByUserId, params("userId", 7L, "status", 1), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        interceptor.bindTo(registry);
+        executor.query(listByUserId, params("userId", 7L, "status", 1), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        executor.update(updateStatus, params("status", 2, "id", 100L));
+
+        FunctionTimer timer = registry.get("sql.statements").tag("statement", "OrderMapper.listByUserId").functionTimer();
+        assertThat(timer.count()).isEqualTo(2);
+        assertThat(timer.totalTime(TimeUnit.NANOSECONDS)).isPositive();
+        assertThat(registry.get("sql.statements.rows").tag("statement", "OrderMapper.listByUserId")
+                .functionCounter().count()).isEqualTo(4);
+        assertThat(registry.get("sql.statements").tag("statement", "OrderMapper.updateStatus")
+                .functionTimer().count()).isEqualTo(1);
+        assertThat(registry.get("sql.statements.errors").tag("statement", "OrderMapper.updateStatus")
+                .functionCounter().count()).isZero();
+
+        //清零后指标跟着归零，不会指向已经丢弃的统计
+        interceptor.reset();
+        assertThat(timer.count()).isZero();
+        executor.query(listByUserId, params("userId", 7L, "status", 1), RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+        assertThat(timer.count()).isEqualTo(1);
+    }
+
+    @Test
+    void disabledPassesThrough() throws SQLException {
+        sqlStatsProperties.setEnabled(false);
+        when(target.update(eq(updateStatus), any())).thenReturn(1);
+
+        assertThat(executor.update(updateStatus, params("status", 2, "id", 100L))).isEqualTo(1);
+        assertThat(interceptor.stats()).isEmpty();
+    }
+
+    private MappedStatement statement(String id, SqlCommandType type, String sql, String... properties) {
+        List<ParameterMapping> parameterMappings = new ArrayList<>();
+        for (String property : properties) {
+            parameterMappings.add(new ParameterMapping.Builder(configuration, property, Object.class).build());
+        }
+        SqlSource sqlSource = new StaticSqlSource(configuration, sql, parameterMappings);
+        return new MappedStatement.Builder(configuration, id, sqlSource, type).build();
+    }
+
+    private static Map<String, Object> params(Object... keyValues) {
+        Map<String, Object> params = new HashMap<>();
+        for (int i = 0; i < keyValues.length; i += 2) {
+            params.put((String) keyValues[i], keyValues[i + 1]);
+        }
+        return params;
+    }
+
+    private static Map<String, Map<String, Object>> byId(List<Map<String, Object>> stats) {
+        Map<String, Map<String, Object>> map = new HashMap<>();
+        stats.forEach(entry -> map.put((String) entry.get("id"), entry));
+        return map;
+    }
+}
@@ -0,0 +1,82 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderSubmitProperties;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.service.ShoppingCartService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+class AsyncOrderSubmitterTest {
+
+    private final RedisTemplate redisTemplate = mock(RedisTemplate.class);
+    private final ValueOperations valueOperations = mock(ValueOperations.class);
+    private final OrderSubmitProperties orderSubmitProperties = new OrderSubmitProperties();
+    private final ShoppingCartService shoppingCartService = mock(ShoppingCartService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private AsyncOrderSubmitter asyncOrderSubmitter;
+
+    @BeforeEach
+    void setUp() {
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        orderSubmitProperties.setQueueCapacity(1);
+        asyncOrderSubmitter = new AsyncOrderSubmitter(mock(OrderMapper.class), mock(OrderDetailMapper.class),
+                shoppingCartService, transactionTemplate, redisTemplate, orderSubmitProperties,
+                mock(DailyStatsRecorder.class), mock(OrderStatusCounter.class), mock(OrderTimeoutScheduler.class));
+    }
+
+    @Test
+    void rejectsWhenQueueIsFull() {
+        assertThat(asyncOrderSubmitter.submit(draft("1"))).isTrue();
+        assertThat(asyncOrderSubmitter.submit(draft("2"))).isFalse();
+
+        //被拒绝的订单不留下排队中的状态
+        verify(redisTemplate).delete("order_submit:7:2");
+        verify(redisTemplate, never()).delete("order_submit:7:1");
+    }
+
+    @Test
+    void rejectsAfterStop() throws InterruptedException {
+        asyncOrderSubmitter.stop();
+
+        assertThat(asyncOrderSubmitter.submit(draft("1"))).isFalse();
+        verifyNoInteractions(valueOperations);
+    }
+
+    @Test
+    void failedOrderPutsCartBack() throws InterruptedException {
+        doThrow(new IllegalStateException("数据库不可用")).when(transactionTemplate).executeWithoutResult(any());
+        asyncOrderSubmitter.start();
+
+        assertThat(asyncOrderSubmitter.submit(draft("1"))).isTrue();
+
+        //下单时取走的购物车放回去，不删除
+        verify(shoppingCartService, timeout(5000)).restoreCheckout(7L, "1");
+        asyncOrderSubmitter.stop();
+        verify(shoppingCartService, never()).completeCheckout(anyLong(), anyString());
+    }
+
+    private static OrderDraft draft(String number) {
+        return new OrderDraft(Orders.builder().userId(7L).number(number).build(), new ArrayList<OrderDetail>());
+    }
+}
@@ -0,0 +1,123 @@
+package com.sky.order;
+
+import com.sky.support.EmbeddedRedis;
+import com.sky.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.RedisConnectionFailureException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OrderNumberGeneratorTest {
+
+    private final long[] now = {0};
+    private final FlakyRedisTemplate stringRedisTemplate = new FlakyRedisTemplate();
+    private OrderNumberGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+        generator = new OrderNumberGenerator(stringRedisTemplate) {
+            @Override
+            protected long nanoTime() {
+                return now[0];
+            }
+        };
+        generator.init();
+    }
+
+    @Test
+    void stopsIssuingWhenLeaseCannotBeRenewed() {
+        assertThat(workerOf(generator.nextNumber())).isZero();
+
+        //redis不可用，定时续租失败，租约还没到期前照常发号
+        stringRedisTemplate.down = true;
+        advanceSeconds(20);
+        generator.renew();
+        advanceSeconds(20);
+        generator.renew();
+        assertThat(workerOf(generator.nextNumber())).isZero();
+
+        //接近租约时间，机器id可能已经被别的节点拿走，不再发号
+        advanceSeconds(5);
+        assertThatThrownBy(generator::nextNumber).isInstanceOf(RedisConnectionFailureException.class);
+        advanceSeconds(30);
+        assertThatThrownBy(generator::nextNumber).isInstanceOf(RedisConnectionFailureException.class);
+
+        //redis恢复，租约还在就续上，继续用原来的机器id
+        stringRedisTemplate.down = false;
+        assertThat(workerOf(generator.nextNumber())).isZero();
+    }
+
+    @Test
+    void reacquiresWorkerIdTakenByAnotherNode() {
+        assertThat(workerOf(generator.nextNumber())).isZero();
+
+        //进程卡顿期间租约到期，机器id被另一个节点拿走
+        stringRedisTemplate.delete("order_worker:0");
+        OrderNumberGenerator otherNode = new OrderNumberGenerator(stringRedisTemplate);
+        otherNode.init();
+        assertThat(workerOf(otherNode.nextNumber())).isZero();
+        advanceSeconds(50);
+
+        //恢复后发号前先发现租约不是自己的，换一个机器id
+        assertThat(workerOf(generator.nextNumber())).isEqualTo(1);
+        assertThat(stringRedisTemplate.opsForValue().get("order_worker:1")).isNotNull();
+        assertThat(workerOf(otherNode.nextNumber())).isZero();
+    }
+
+    @Test
+    void renewedLeaseKeepsIssuing() {
+        for (int i = 0; i < 10; i++) {
+            advanceSeconds(20);
+            generator.renew();
+            assertThat(workerOf(generator.nextNumber())).isZero();
+        }
+        assertThat(stringRedisTemplate.getExpire("order_worker:0", TimeUnit.SECONDS)).isGreaterThan(50);
+    }
+
+    private void advanceSeconds(long seconds) {
+        now[0] += TimeUnit.SECONDS.toNanos(seconds);
+    }
+
+    private static long workerOf(String number) {
+        return (Long.parseLong(number) >>> SnowflakeIdGenerator.SEQUENCE_BITS) & SnowflakeIdGenerator.MAX_WORKER_ID;
+    }
+
+    /**
+     * 可以模拟redis不可用的模板
+     */
+    private static class FlakyRedisTemplate extends StringRedisTemplate {
+
+        private volatile boolean down;
+
+        FlakyRedisTemplate() {
+            super(EmbeddedRedis.connectionFactory());
+        }
+
+        @Override
+        public <T> T execute(RedisScript<T> script, List<String> keys, Object... args) {
+            check();
+            return super.execute(script, keys, args);
+        }
+
+        @Override
+        public ValueOperations<String, String> opsForValue() {
+            check();
+            return super.opsForValue();
+        }
+
+        private void check() {
+            if (down) {
+                throw new RedisConnectionFailureException("redis不可用");
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.report.SalesRanking;
+import com.sky.websocket.OrderPushHandler;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.BeanUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderStateMachineTest {
+
+    private static final int ROUNDS = 300;
+    private static final int THREADS = 8;
+    private static final int EVENTS_PER_ROUND = 16;
+
+    //模拟订单表，条件更新和数据库一样是原子的
+    private final Map<Long, Orders> table = new ConcurrentHashMap<>();
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+    private final OrderStatusCounter orderStatusCounter = mock(OrderStatusCounter.class);
+    private final DailyStatsRecorder dailyStatsRecorder = mock(DailyStatsRecorder.class);
+    private final OrderPushHandler orderPushHandler = mock(OrderPushHandler.class);
+
+    //本轮的统计：每个状态的计数变化，取消、完成、推送的次数
+    private final AtomicIntegerArray statusDelta = new AtomicIntegerArray(8);
+    private final AtomicInteger cancelled = new AtomicInteger();
+    private final AtomicInteger completed = new AtomicInteger();
+    private final AtomicInteger pushed = new AtomicInteger();
+    private final AtomicInteger paid = new AtomicInteger();
+
+    private final ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+    private OrderStateMachine orderStateMachine;
+
+    @BeforeEach
+    void setUp() {
+        when(orderMapper.getById(anyLong())).thenAnswer(invocation -> {
+            Orders row = table.get(invocation.<Long>getArgument(0));
+            //读完让出cpu，放大读和条件更新之间被其他线程抢先的机会
+            Thread.yield();
+            return copy(row);
+        });
+        when(orderMapper.updateStatus(any(), anyCollection())).thenAnswer(invocation -> {
+            Orders changes = invocation.getArgument(0);
+            Collection<Integer> fromStatuses = invocation.getArgument(1);
+            Orders[] updated = new Orders[1];
+            table.computeIfPresent(changes.getId(), (id, row) -> {
+                if (!fromStatuses.contains(row.getStatus())
+                        || (changes.getUserId() != null && !changes.getUserId().equals(row.getUserId()))) {
+                    return row;
+                }
+                Orders next = copy(row);
+                next.setStatus(changes.getStatus());
+                updated[0] = next;
+                return next;
+            });
+            return updated[0] == null ? 0 : 1;
+        });
+        doAnswer(invocation -> {
+            statusDelta.decrementAndGet(invocation.<Integer>getArgument(0));
+            statusDelta.incrementAndGet(invocation.<Integer>getArgument(1));
+            if (Orders.PENDING_PAYMENT.equals(invocation.getArgument(0)) && Orders.TO_BE_CONFIRMED.equals(invocation.getArgument(1))) {
+                paid.incrementAndGet();
+            }
+            return null;
+        }).when(orderStatusCounter).transition(anyInt(), anyInt());
+        doAnswer(invocation -> cancelled.incrementAndGet()).when(dailyStatsRecorder).orderCancelled(any());
+        doAnswer(invocation -> completed.incrementAndGet()).when(dailyStatsRecorder).orderCompleted(any(), any());
+        doAnswer(invocation -> pushed.incrementAndGet()).when(orderPushHandler).newOrder(any());
+
+        //批量执行器只在超时批量处理时用到，这里只需要能构造出来
+        SqlSessionFactory sqlSessionFactory = mock(SqlSessionFactory.class);
+        when(sqlSessionFactory.getConfiguration()).thenReturn(
+                new Configuration(new Environment("test", new JdbcTransactionFactory(), mock(DataSource.class))));
+        orderStateMachine = new OrderStateMachine(orderMapper, mock(OrderDetailMapper.class),
+                sqlSessionFactory, mock(TransactionTemplate.class),
+                orderStatusCounter, dailyStatsRecorder, mock(SalesRanking.class), orderPushHandler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * 每轮一个新订单，多个线程同时对它触发随机的事件(支付、接单、拒单、取消、派送、完成、超时...)
+     * 不管谁先谁后，统计都要和订单最终的状态一致：计数只从初始状态挪到最终状态，
+     * 取消、完成最多记一次，来单提醒只在支付成功时发一次
+     */
+    @Test
+    void conflictingTransitionsKeepCountersConsistent() throws Exception {
+        Random random = new Random(7);
+        OrderEvent[] events = OrderEvent.values();
+        Integer[] initialStatuses = {Orders.PENDING_PAYMENT, Orders.TO_BE_CONFIRMED, Orders.CONFIRMED};
+        for (long id = 1; id <= ROUNDS; id++) {
+            Integer initial = initialStatuses[random.nextInt(initialStatuses.length)];
+            table.put(id, Orders.builder().id(id).userId(7L).status(initial).build());
+            resetRound();
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < EVENTS_PER_ROUND; i++) {
+                OrderEvent event = events[random.nextInt(events.length)];
+                Orders changes = Orders.builder().id(id).build();
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        orderStateMachine.fire(event, changes);
+                        return true;
+                    } catch (OrderBusinessException e) {
+                        assertThat(e.getMessage()).isEqualTo(MessageConstant.ORDER_STATUS_ERROR);
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+            for (Future<Boolean> future : futures) {
+                future.get();
+            }
+
+            Integer last = table.get(id).getStatus();
+            for (int status = 0; status < statusDelta.length(); status++) {
+                int expected = initial.equals(last) ? 0 : status == initial ? -1 : status == last ? 1 : 0;
+                assertThat(statusDelta.get(status)).as("order %s status %s", id, status).isEqualTo(expected);
+            }
+            //已取消、已完成是终态，最多进入一次
+            assertThat(cancelled.get()).isEqualTo(Orders.CANCELLED.equals(last) ? 1 : 0);
+            assertThat(completed.get()).isEqualTo(Orders.COMPLETED.equals(last) ? 1 : 0);
+            //支付成功(待付款变为待接单)最多一次，每次正好提醒一次，其他变更不提醒
+            assertThat(paid.get()).isLessThanOrEqualTo(1);
+            assertThat(pushed.get()).isEqualTo(paid.get());
+        }
+    }
+
+    /**
+     * 待付款订单同时收到支付回调和取消：只有一个生效，支付生效时才提醒商家
+     */
+    @Test
+    void payRacingCancelNotifiesOnlyWhenPayWins() throws Exception {
+        for (long id = 1; id <= ROUNDS; id++) {
+            table.put(id, Orders.builder().id(id).userId(7L).status(Orders.PENDING_PAYMENT).build());
+            resetRound();
+
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> pays = new ArrayList<>();
+            List<Future<Boolean>> cancels = new ArrayList<>();
+            for (int i = 0; i < THREADS / 2; i++) {
+                pays.add(fireAfter(start, OrderEvent.PAY, id));
+                cancels.add(fireAfter(start, OrderEvent.USER_CANCEL, id));
+            }
+            start.countDown();
+            int paySucceeded = count(pays);
+            int cancelSucceeded = count(cancels);
+
+            assertThat(paySucceeded + cancelSucceeded).isEqualTo(1);
+            assertThat(pushed.get()).isEqualTo(paySucceeded);
+            assertThat(table.get(id).getStatus()).isEqualTo(paySucceeded == 1 ? Orders.TO_BE_CONFIRMED : Orders.CANCELLED);
+        }
+    }
+
+    private Future<Boolean> fireAfter(CountDownLatch start, OrderEvent event, Long id) {
+        return pool.submit(() -> {
+            start.await();
+            try {
+                orderStateMachine.fire(event, Orders.builder().id(id).build());
+                return true;
+            } catch (OrderBusinessException e) {
+                return false;
+            }
+        });
+    }
+
+    private static int count(List<Future<Boolean>> futures) throws Exception {
+        int count = 0;
+        for (Future<Boolean> future : futures) {
+            count += future.get() ? 1 : 0;
+        }
+        return count;
+    }
+
+    private void resetRound() {
+        for (int i = 0; i < statusDelta.length(); i++) {
+            statusDelta.set(i, 0);
+        }
+        cancelled.set(0);
+        completed.set(0);
+        pushed.set(0);
+        paid.set(0);
+    }
+
+    private static Orders copy(Orders row) {
+        if (row == null) {
+            return null;
+        }
+        Orders copy = new Orders();
+        BeanUtils.copyProperties(row, copy);
+        return copy;
+    }
+}
@@ -0,0 +1,113 @@
+package com.sky.order;
+
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderMapper;
+import com.sky.support.EmbeddedRedis;
+import com.sky.vo.OrderStatisticsVO;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class OrderStatusCounterTest {
+
+    private static final String LOCK_KEY = "order_status_count:reconcile";
+
+    private final StringRedisTemplate stringRedisTemplate = EmbeddedRedis.stringRedisTemplate();
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+    private final OrderStatusCounter counter = new OrderStatusCounter(stringRedisTemplate, orderMapper);
+    //另一个节点上的实例
+    private final OrderStatusCounter otherNodeCounter = new OrderStatusCounter(stringRedisTemplate, orderMapper);
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+    }
+
+    @Test
+    void absentHashIsSeededFromOrderTable() {
+        countByStatus(Orders.TO_BE_CONFIRMED, 3, Orders.CONFIRMED, 2, Orders.COMPLETED, 100);
+
+        counter.reconcile();
+
+        OrderStatisticsVO statistics = counter.statistics();
+        assertThat(statistics.getToBeConfirmed()).isEqualTo(3);
+        assertThat(statistics.getConfirmed()).isEqualTo(2);
+        assertThat(statistics.getDeliveryInProgress()).isZero();
+
+        //已经存在的hash不会被覆盖
+        counter.created(Orders.TO_BE_CONFIRMED);
+        stringRedisTemplate.delete(LOCK_KEY);
+        counter.reconcile();
+        assertThat(counter.statistics().getToBeConfirmed()).isEqualTo(4);
+    }
+
+    @Test
+    void emptyOrderTableStillMarksHashAsSeeded() {
+        countByStatus();
+
+        counter.reconcile();
+
+        assertThat(stringRedisTemplate.hasKey("order_status_count")).isTrue();
+        assertThat(counter.statistics().getToBeConfirmed()).isZero();
+    }
+
+    @Test
+    void driftSeenTwiceAcrossNodesIsCorrected() {
+        countByStatus(Orders.TO_BE_CONFIRMED, 3);
+        counter.reconcile();
+        //计数丢了一次状态变更
+        countByStatus(Orders.TO_BE_CONFIRMED, 2, Orders.CONFIRMED, 1);
+
+        stringRedisTemplate.delete(LOCK_KEY);
+        counter.reconcile();
+        assertThat(counter.statistics().getToBeConfirmed()).isEqualTo(3);
+
+        //下一个周期落在另一个节点上，偏差和上次相同，修正
+        stringRedisTemplate.delete(LOCK_KEY);
+        otherNodeCounter.reconcile();
+        OrderStatisticsVO statistics = counter.statistics();
+        assertThat(statistics.getToBeConfirmed()).isEqualTo(2);
+        assertThat(statistics.getConfirmed()).isEqualTo(1);
+        assertThat(stringRedisTemplate.hasKey("order_status_count:last_drift")).isFalse();
+    }
+
+    @Test
+    void transientDriftIsNotCorrected() {
+        countByStatus(Orders.TO_BE_CONFIRMED, 3);
+        counter.reconcile();
+
+        //订单已提交，计数还没来得及更新
+        countByStatus(Orders.TO_BE_CONFIRMED, 4);
+        stringRedisTemplate.delete(LOCK_KEY);
+        counter.reconcile();
+        counter.created(Orders.TO_BE_CONFIRMED);
+
+        stringRedisTemplate.delete(LOCK_KEY);
+        otherNodeCounter.reconcile();
+        assertThat(counter.statistics().getToBeConfirmed()).isEqualTo(4);
+        assertThat(stringRedisTemplate.hasKey("order_status_count:last_drift")).isFalse();
+    }
+
+    /**
+     * @param statusAndCount 状态,订单数 成对出现
+     */
+    private void countByStatus(Integer... statusAndCount) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < statusAndCount.length; i += 2) {
+            Map<String, Object> row = new HashMap<>();
+            row.put("status", statusAndCount[i]);
+            row.put("count", (long) statusAndCount[i + 1]);
+            rows.add(row);
+        }
+        when(orderMapper.countByStatus()).thenReturn(rows);
+    }
+}
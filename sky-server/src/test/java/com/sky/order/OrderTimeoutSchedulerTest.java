@@ -0,0 +1,223 @@
+package com.sky.order;
+
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.mapper.OrderMapper;
+import com.sky.properties.OrderTimeoutProperties;
+import com.sky.report.DailyStatsRecorder;
+import com.sky.report.SalesRanking;
+import com.sky.support.EmbeddedRedis;
+import com.sky.websocket.OrderPushHandler;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mybatis.spring.transaction.SpringManagedTransactionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * 用可控的时钟驱动tick，定时任务存在本地redis里，到期后走状态机的批量条件更新
+ * 批量执行器用真的mybatis解析OrderMapper.xml，jdbc层模拟一张订单表，按批里每条语句的参数返回影响行数
+ */
+class OrderTimeoutSchedulerTest {
+
+    private static final LocalDateTime ORDER_TIME = LocalDateTime.of(2026, 10, 17, 12, 0);
+    private static final long START = ORDER_TIME.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    private static final String TIMER_KEY = "order_timeout";
+
+    //模拟订单表：订单id -> 状态
+    private final Map<Long, Integer> table = new HashMap<>();
+    //每次executeBatch的一批订单id
+    private final List<List<Long>> batches = new ArrayList<>();
+
+    private final StringRedisTemplate stringRedisTemplate = EmbeddedRedis.stringRedisTemplate();
+    private final OrderMapper orderMapper = mock(OrderMapper.class);
+    private final OrderDetailMapper orderDetailMapper = mock(OrderDetailMapper.class);
+    private final OrderStatusCounter orderStatusCounter = mock(OrderStatusCounter.class);
+    private final DailyStatsRecorder dailyStatsRecorder = mock(DailyStatsRecorder.class);
+    private final SalesRanking salesRanking = mock(SalesRanking.class);
+    private final OrderTimeoutProperties orderTimeoutProperties = new OrderTimeoutProperties();
+    private long now = START;
+    private OrderTimeoutScheduler scheduler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        EmbeddedRedis.flushAll();
+        orderTimeoutProperties.setBatchSize(2);
+        when(orderMapper.getByIds(any())).thenAnswer(invocation -> invocation.<Collection<Long>>getArgument(0).stream()
+                .map(id -> Orders.builder().id(id).status(table.get(id)).orderTime(ORDER_TIME).build())
+                .collect(Collectors.toList()));
+
+        DataSource dataSource = dataSource();
+        Configuration configuration = new Configuration(new Environment("test", new SpringManagedTransactionFactory(), dataSource));
+        configuration.getTypeAliasRegistry().registerAliases("com.sky.entity");
+        try (InputStream inputStream = Resources.getResourceAsStream("mapper/OrderMapper.xml")) {
+            new XMLMapperBuilder(inputStream, configuration, "mapper/OrderMapper.xml", configuration.getSqlFragments()).parse();
+        }
+        SqlSessionFactory sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+        OrderStateMachine orderStateMachine = new OrderStateMachine(orderMapper, orderDetailMapper, sqlSessionFactory,
+                new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+                orderStatusCounter, dailyStatsRecorder, salesRanking, mock(OrderPushHandler.class));
+        scheduler = new OrderTimeoutScheduler(stringRedisTemplate, orderStateMachine, orderTimeoutProperties) {
+            @Override
+            protected long currentTimeMillis() {
+                return now;
+            }
+        };
+    }
+
+    /**
+     * 到期的未支付订单按batchSize分批取消，已支付的那个条件更新不到，不记统计；处理完的任务都从redis删除
+     */
+    @Test
+    void cancelsOverduePaymentsInBatches() {
+        for (long id = 1; id <= 5; id++) {
+            table.put(id, Orders.PENDING_PAYMENT);
+            scheduler.registerPayTimeout(Orders.builder().id(id).orderTime(ORDER_TIME).build());
+        }
+        //3号在到期前支付了，超时任务还没来得及删
+        table.put(3L, Orders.TO_BE_CONFIRMED);
+
+        scheduler.tick();
+        assertThat(batches).isEmpty();
+
+        now = START + TimeUnit.MINUTES.toMillis(orderTimeoutProperties.getPayTimeoutMinutes()) + 1000;
+        scheduler.tick();
+
+        assertThat(batches).containsExactly(Arrays.asList(1L, 2L), Arrays.asList(3L, 4L), Collections.singletonList(5L));
+        assertThat(table).containsEntry(1L, Orders.CANCELLED).containsEntry(2L, Orders.CANCELLED)
+                .containsEntry(3L, Orders.TO_BE_CONFIRMED)
+                .containsEntry(4L, Orders.CANCELLED).containsEntry(5L, Orders.CANCELLED);
+        //只有更新成功的订单才查出来记统计
+        ArgumentCaptor<Collection<Long>> updated = ArgumentCaptor.forClass(Collection.class);
+        verify(orderMapper, times(3)).getByIds(updated.capture());
+        assertThat(updated.getAllValues()).containsExactly(Arrays.asList(1L, 2L), Collections.singletonList(4L),
+                Collections.singletonList(5L));
+        verify(orderStatusCounter, times(4)).transition(Orders.PENDING_PAYMENT, Orders.CANCELLED);
+        verify(dailyStatsRecorder, times(4)).orderCancelled(ORDER_TIME);
+        assertThat(stringRedisTemplate.opsForZSet().zCard(TIMER_KEY)).isZero();
+    }
+
+    /**
+     * 到期时间落在已加载窗口里、不是本节点注册的任务，每OVERDUE_CHECK_TICKS格补查一次；
+     * 本节点注册的派送超时按时钟到期后自动完成
+     */
+    @Test
+    void completesOverdueAndRegisteredDeliveries() {
+        scheduler.tick();
+        table.put(6L, Orders.DELIVERY_IN_PROGRESS);
+        //其他节点注册的，已经到期
+        stringRedisTemplate.opsForZSet().add(TIMER_KEY, "d:6", now - 5000);
+        when(orderDetailMapper.getByOrderIds(any())).thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).stream()
+                .map(id -> OrderDetail.builder().orderId(id).name("米饭").number(1).build())
+                .collect(Collectors.toList()));
+
+        for (int i = 2; i < 10; i++) {
+            now += orderTimeoutProperties.getTickMillis();
+            scheduler.tick();
+        }
+        assertThat(table).containsEntry(6L, Orders.DELIVERY_IN_PROGRESS);
+        now += orderTimeoutProperties.getTickMillis();
+        scheduler.tick();
+        assertThat(batches).containsExactly(Collections.singletonList(6L));
+        assertThat(table).containsEntry(6L, Orders.COMPLETED);
+
+        table.put(7L, Orders.DELIVERY_IN_PROGRESS);
+        scheduler.registerDeliveryTimeout(7L);
+        now += TimeUnit.MINUTES.toMillis(orderTimeoutProperties.getDeliveryTimeoutMinutes()) - 1000;
+        scheduler.tick();
+        assertThat(table).containsEntry(7L, Orders.DELIVERY_IN_PROGRESS);
+        now += 2000;
+        scheduler.tick();
+
+        assertThat(batches).containsExactly(Collections.singletonList(6L), Collections.singletonList(7L));
+        assertThat(table).containsEntry(7L, Orders.COMPLETED);
+        verify(orderStatusCounter, times(2)).transition(Orders.DELIVERY_IN_PROGRESS, Orders.COMPLETED);
+        verify(dailyStatsRecorder, times(2)).orderCompleted(any(), any());
+        verify(salesRanking, times(2)).orderCompleted(any(), any());
+        verify(orderDetailMapper, never()).getByOrderId(any());
+        assertThat(stringRedisTemplate.opsForZSet().zCard(TIMER_KEY)).isZero();
+    }
+
+    /**
+     * 模拟jdbc：记下每条语句绑定的参数，executeBatch时按 where id = ? and status in (?) 条件更新订单表
+     */
+    private DataSource dataSource() throws Exception {
+        Connection connection = mock(Connection.class);
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.prepareStatement(anyString())).thenAnswer(invocation -> statement(invocation.getArgument(0)));
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        return dataSource;
+    }
+
+    private PreparedStatement statement(String sql) throws Exception {
+        //参数按位置从1开始：第1个是新状态，where id之前的?个数加1是id的位置，最后一个是原状态
+        int idIndex = sql.substring(0, sql.indexOf("where id")).split("\\?", -1).length;
+        Map<Integer, Object> parameters = new TreeMap<>();
+        List<Map<Integer, Object>> added = new ArrayList<>();
+        PreparedStatement statement = mock(PreparedStatement.class);
+        doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(statement).setLong(anyInt(), any(Long.class));
+        doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(statement).setInt(anyInt(), any(Integer.class));
+        doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(statement).setString(anyInt(), any());
+        doAnswer(invocation -> parameters.put(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(statement).setObject(anyInt(), any());
+        doAnswer(invocation -> added.add(new TreeMap<>(parameters))).when(statement).addBatch();
+        when(statement.executeBatch()).thenAnswer(invocation -> {
+            int[] counts = new int[added.size()];
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < added.size(); i++) {
+                Map<Integer, Object> row = added.get(i);
+                Long id = (Long) row.get(idIndex);
+                ids.add(id);
+                if (row.get(row.size()).equals(table.get(id))) {
+                    table.put(id, (Integer) row.get(1));
+                    counts[i] = 1;
+                }
+            }
+            batches.add(ids);
+            added.clear();
+            return counts;
+        });
+        return statement;
+    }
+}
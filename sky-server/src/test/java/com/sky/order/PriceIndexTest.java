@@ -0,0 +1,99 @@
+package com.sky.order;
+
+import com.sky.entity.Dish;
+import com.sky.entity.Setmeal;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.properties.PricingProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PriceIndexTest {
+
+    private final DishMapper dishMapper = mock(DishMapper.class);
+    private final SetmealMapper setmealMapper = mock(SetmealMapper.class);
+    private final PricingProperties pricingProperties = new PricingProperties();
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private PriceIndex priceIndex;
+
+    @BeforeEach
+    void setUp() {
+        when(dishMapper.listPrices()).thenReturn(Collections.singletonList(
+                Dish.builder().id(1L).price(new BigDecimal("58.00")).build()));
+        when(setmealMapper.listPrices()).thenReturn(Collections.singletonList(
+                Setmeal.builder().id(1L).price(new BigDecimal("128.00")).build()));
+        priceIndex = new PriceIndex(dishMapper, setmealMapper, pricingProperties) {
+            @Override
+            protected long currentTimeMillis() {
+                return now.get();
+            }
+        };
+        priceIndex.reload();
+    }
+
+    @Test
+    void missesWithinIntervalDoNotReload() {
+        for (int i = 0; i < 1000; i++) {
+            assertThat(priceIndex.getDishPrice(404L)).isNull();
+            assertThat(priceIndex.getSetmealPrice(404L)).isNull();
+        }
+
+        assertThat(priceIndex.getDishPrice(1L)).isEqualByComparingTo("58.00");
+        assertThat(priceIndex.getSetmealPrice(1L)).isEqualByComparingTo("128.00");
+        verify(dishMapper, times(1)).listPrices();
+        verify(setmealMapper, times(1)).listPrices();
+    }
+
+    @Test
+    void missAfterIntervalPicksUpNewItem() {
+        when(dishMapper.listPrices()).thenReturn(Arrays.asList(
+                Dish.builder().id(1L).price(new BigDecimal("58.00")).build(),
+                Dish.builder().id(2L).price(new BigDecimal("32.00")).build()));
+        assertThat(priceIndex.getDishPrice(2L)).isNull();
+
+        now.addAndGet(pricingProperties.getMissReloadIntervalMillis());
+
+        assertThat(priceIndex.getDishPrice(2L)).isEqualByComparingTo("32.00");
+        verify(dishMapper, times(2)).listPrices();
+    }
+
+    @Test
+    void concurrentMissesReloadOnce() throws Exception {
+        now.addAndGet(pricingProperties.getMissReloadIntervalMillis());
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<BigDecimal>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return priceIndex.getDishPrice(404L);
+            }));
+        }
+        start.countDown();
+        for (Future<BigDecimal> future : futures) {
+            assertThat(future.get()).isNull();
+        }
+        executor.shutdown();
+
+        //启动时1次，并发未命中只再加载1次
+        verify(dishMapper, times(2)).listPrices();
+    }
+}
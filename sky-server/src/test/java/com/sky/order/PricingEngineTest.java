@@ -0,0 +1,84 @@
+package com.sky.order;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.OrderDetail;
+import com.sky.entity.Orders;
+import com.sky.exception.OrderBusinessException;
+import com.sky.properties.PricingProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PricingEngineTest {
+
+    private final PriceIndex priceIndex = mock(PriceIndex.class);
+    private PricingEngine pricingEngine;
+
+    @BeforeEach
+    void setUp() {
+        when(priceIndex.getDishPrice(1L)).thenReturn(new BigDecimal("58.00"));
+        when(priceIndex.getSetmealPrice(2L)).thenReturn(new BigDecimal("128.50"));
+        pricingEngine = new PricingEngine(priceIndex, new PricingProperties());
+    }
+
+    @Test
+    void pricesWithCurrentPricesAndFees() {
+        List<OrderDetail> orderDetailList = items(new BigDecimal("1.00"));
+        //58*2 + 128.5 + 打包费3 + 配送费6
+        Orders orders = Orders.builder().packAmount(3).amount(new BigDecimal("253.50")).build();
+
+        pricingEngine.price(orders, orderDetailList);
+
+        //明细单价用当前价格覆盖前端提交的
+        assertThat(orderDetailList).extracting(OrderDetail::getAmount)
+                .usingElementComparator(BigDecimal::compareTo)
+                .containsExactly(new BigDecimal("58.00"), new BigDecimal("128.50"));
+        assertThat(orders.getAmount()).isEqualByComparingTo("253.50");
+        assertThat(orders.getPackAmount()).isEqualTo(3);
+    }
+
+    @Test
+    void rejectsAmountMismatch() {
+        Orders orders = Orders.builder().packAmount(3).amount(new BigDecimal("200.00")).build();
+
+        assertThatThrownBy(() -> pricingEngine.price(orders, items(BigDecimal.ZERO)))
+                .isInstanceOf(OrderBusinessException.class)
+                .hasMessage(MessageConstant.ORDER_AMOUNT_ERROR);
+    }
+
+    @Test
+    void rejectsPackAmountMismatch() {
+        Orders orders = Orders.builder().packAmount(0).amount(new BigDecimal("253.50")).build();
+
+        assertThatThrownBy(() -> pricingEngine.price(orders, items(BigDecimal.ZERO)))
+                .isInstanceOf(OrderBusinessException.class)
+                .hasMessage(MessageConstant.ORDER_AMOUNT_ERROR);
+    }
+
+    @Test
+    void rejectsItemWithoutPrice() {
+        //已停售或不存在的商品价格索引返回null
+        List<OrderDetail> orderDetailList = Arrays.asList(
+                OrderDetail.builder().dishId(1L).number(1).build(),
+                OrderDetail.builder().dishId(9L).number(1).build());
+        Orders orders = Orders.builder().packAmount(2).amount(new BigDecimal("66.00")).build();
+
+        assertThatThrownBy(() -> pricingEngine.price(orders, orderDetailList))
+                .isInstanceOf(OrderBusinessException.class)
+                .hasMessage(MessageConstant.ORDER_ITEM_NOT_FOUND);
+    }
+
+    private static List<OrderDetail> items(BigDecimal submittedPrice) {
+        return Arrays.asList(
+                OrderDetail.builder().dishId(1L).number(2).amount(submittedPrice).build(),
+                OrderDetail.builder().setmealId(2L).number(1).amount(submittedPrice).build());
+    }
+}
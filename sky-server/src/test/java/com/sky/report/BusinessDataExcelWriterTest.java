@@ -0,0 +1,149 @@
+package com.sky.report;
+
+import com.sky.entity.DailyStats;
+import com.sky.entity.Orders;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BusinessDataExcelWriterTest {
+
+    private static final int ROWS = 1_000_000;
+    private static final int SAMPLE_EVERY = 100_000;
+    //子进程的堆上限，整个工作簿放进内存的话远远不够
+    private static final String MAX_HEAP = "-Xmx64m";
+
+    @Test
+    void writesSummaryAndOrderSheets() throws Exception {
+        DailyStats stats = DailyStats.builder().statDate(LocalDate.of(2026, 10, 17))
+                .orderCount(4).validOrderCount(2).cancelledOrderCount(1)
+                .turnover(new BigDecimal("100.00")).newUserCount(3).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long count = new BusinessDataExcelWriter().write(Collections.singletonList(stats),
+                Arrays.asList(order(1), order(2)), out);
+
+        assertThat(count).isEqualTo(2);
+        try (XSSFWorkbook workbook = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet summary = workbook.getSheet("运营数据");
+            assertThat(summary.getRow(1).getCell(0).getStringCellValue()).isEqualTo("2026-10-17");
+            assertThat(summary.getRow(1).getCell(1).getNumericCellValue()).isEqualTo(100.0);
+            assertThat(summary.getRow(1).getCell(3).getNumericCellValue()).isEqualTo(0.5);
+            assertThat(summary.getRow(1).getCell(4).getNumericCellValue()).isEqualTo(50.0);
+
+            Sheet orders = workbook.getSheet("订单明细");
+            assertThat(orders.getLastRowNum()).isEqualTo(2);
+            assertThat(orders.getRow(0).getCell(0).getStringCellValue()).isEqualTo("订单号");
+            assertThat(orders.getRow(2).getCell(0).getStringCellValue()).isEqualTo("2");
+            assertThat(orders.getRow(2).getCell(1).getStringCellValue()).isEqualTo("2026-10-17 12:00:02");
+            assertThat(orders.getRow(2).getCell(2).getStringCellValue()).isEqualTo("已完成");
+        }
+    }
+
+    /**
+     * 在固定堆大小的子进程里导出100万行，每10万行GC后记录一次已用堆
+     * 单独起进程是为了不受当前测试进程堆大小和其他测试的影响
+     */
+    @Test
+    void millionRowsExportWithFlatHeap() throws Exception {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, MAX_HEAP, "-cp", System.getProperty("java.class.path"),
+                HeapCheck.class.getName())
+                .redirectErrorStream(true)
+                .start();
+        List<Long> samples = new ArrayList<>();
+        Long count = null;
+        StringBuilder output = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                output.append(line).append('\n');
+                if (line.startsWith("heap ")) {
+                    samples.add(Long.parseLong(line.substring(5)));
+                } else if (line.startsWith("count ")) {
+                    count = Long.parseLong(line.substring(6));
+                }
+            }
+        }
+        assertThat(process.waitFor(5, TimeUnit.MINUTES)).isTrue();
+        assertThat(process.exitValue()).as(output.toString()).isZero();
+
+        assertThat(count).isEqualTo(ROWS);
+        assertThat(samples).hasSize(ROWS / SAMPLE_EVERY);
+        //第一个采样点之后堆不再增长，允许4MB的波动
+        long first = samples.get(0);
+        assertThat(samples).as("used heap after gc: %s", samples).allMatch(used -> used - first < 4L << 20);
+    }
+
+    /**
+     * 子进程入口：订单边生成边写，和游标一样不会全部留在内存里
+     */
+    static class HeapCheck {
+
+        public static void main(String[] args) throws Exception {
+            Iterable<Orders> orders = () -> new Iterator<Orders>() {
+                private int next = 1;
+
+                @Override
+                public boolean hasNext() {
+                    return next <= ROWS;
+                }
+
+                @Override
+                public Orders next() {
+                    if (next % SAMPLE_EVERY == 0) {
+                        System.gc();
+                        System.out.println("heap " + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+                    }
+                    return order(next++);
+                }
+            };
+            long count = new BusinessDataExcelWriter().write(Collections.emptyList(), orders, new DiscardingOutputStream());
+            System.out.println("count " + count);
+        }
+    }
+
+    private static Orders order(int i) {
+        return Orders.builder()
+                .number(String.valueOf(i))
+                .orderTime(LocalDateTime.of(2026, 10, 17, 12, 0).plusSeconds(i % 3600))
+                .status(Orders.COMPLETED)
+                .amount(new BigDecimal("36.50"))
+                .consignee("张三")
+                .phone("13800000000")
+                .address("北京市海淀区上地十街10号")
+                .remark("少放辣")
+                .build();
+    }
+
+    private static class DiscardingOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
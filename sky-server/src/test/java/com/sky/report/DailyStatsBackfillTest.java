@@ -0,0 +1,164 @@
+package com.sky.report;
+
+import com.sky.constant.MessageConstant;
+import com.sky.entity.DailyStats;
+import com.sky.exception.ReportBusinessException;
+import com.sky.mapper.DailyStatsMapper;
+import com.sky.support.EmbeddedRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DailyStatsBackfillTest {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 10, 17);
+
+    private final DailyStatsMapper dailyStatsMapper = mock(DailyStatsMapper.class);
+    private final SalesRanking salesRanking = mock(SalesRanking.class);
+    private final DailyStatsRecorder recorder = new DailyStatsRecorder(dailyStatsMapper);
+    //另一个节点的增量记录
+    private final DailyStatsMapper otherNodeMapper = mock(DailyStatsMapper.class);
+    private final DailyStatsRecorder otherNodeRecorder = new DailyStatsRecorder(otherNodeMapper);
+    private final CountDownLatch otherNodeNotified = new CountDownLatch(1);
+    private RedisMessageListenerContainer otherNode;
+    private DailyStatsBackfill backfill;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+        when(dailyStatsMapper.aggregateOrders(any(), any())).thenReturn(DailyStats.builder()
+                .orderCount(3).validOrderCount(2).cancelledOrderCount(1).turnover(new BigDecimal("100.00")).build());
+        when(otherNodeMapper.aggregateOrders(any(), any())).thenReturn(DailyStats.builder().build());
+        when(dailyStatsMapper.countUsers(any(), any())).thenReturn(1);
+        otherNode = EmbeddedRedis.subscribe(DailyStatsRecorder.RECOMPUTE_CHANNEL, (message, pattern) -> {
+            otherNodeRecorder.onMessage(message, pattern);
+            otherNodeNotified.countDown();
+        });
+        backfill = new DailyStatsBackfill(dailyStatsMapper, salesRanking, recorder, EmbeddedRedis.stringRedisTemplate());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        otherNode.destroy();
+    }
+
+    @Test
+    void pendingDeltasOfRecomputedDayAreDiscardedOnEveryNode() throws InterruptedException {
+        LocalDateTime orderTime = DATE.atTime(12, 0);
+        recorder.orderCreated(orderTime);
+        recorder.orderCreated(orderTime.plusDays(1));
+        otherNodeRecorder.orderCompleted(orderTime, new BigDecimal("50.00"));
+
+        backfill.backfill(DATE, DATE);
+        verify(dailyStatsMapper).replaceOrderStats(any());
+        verify(salesRanking).rebuild(DATE);
+
+        recorder.flush();
+        //重算的那天不再累加，其他日期照常写入
+        verify(dailyStatsMapper, never()).increment(statsOf(DATE));
+        verify(dailyStatsMapper).increment(statsOf(DATE.plusDays(1)));
+        assertThat(otherNodeNotified.await(2, TimeUnit.SECONDS)).isTrue();
+        otherNodeRecorder.flush();
+        verify(otherNodeMapper, never()).increment(any());
+    }
+
+    @Test
+    void rejectsRangeLongerThan31DaysOrReversed() {
+        assertThatThrownBy(() -> backfill.backfill(DATE.minusDays(31), DATE))
+                .isInstanceOf(ReportBusinessException.class)
+                .hasMessage(MessageConstant.BACKFILL_RANGE_ERROR);
+        assertThatThrownBy(() -> backfill.backfill(DATE, DATE.minusDays(1)))
+                .isInstanceOf(ReportBusinessException.class);
+        assertThatThrownBy(() -> backfill.backfill(null, DATE))
+                .isInstanceOf(ReportBusinessException.class);
+
+        backfill.backfill(DATE.minusDays(30), DATE);
+        verify(salesRanking).rebuild(DATE.minusDays(30));
+    }
+
+    @Test
+    void onlyOneNodeRecomputesAtATime() {
+        DailyStatsBackfill otherNodeBackfill = new DailyStatsBackfill(otherNodeMapper, salesRanking, otherNodeRecorder,
+                EmbeddedRedis.stringRedisTemplate());
+        //另一个节点正在重算
+        EmbeddedRedis.stringRedisTemplate().opsForValue().set("daily_stats_backfill:leader", "other", 1, TimeUnit.MINUTES);
+
+        assertThatThrownBy(() -> backfill.backfill(DATE, DATE))
+                .isInstanceOf(ReportBusinessException.class)
+                .hasMessage(MessageConstant.BACKFILL_RUNNING);
+        backfill.backfillYesterday();
+        verify(dailyStatsMapper, never()).aggregateOrders(any(), any());
+
+        //租约到期或释放后可以重算，重算完释放
+        EmbeddedRedis.stringRedisTemplate().delete("daily_stats_backfill:leader");
+        backfill.backfill(DATE, DATE);
+        otherNodeBackfill.backfill(DATE, DATE);
+        verify(otherNodeMapper).aggregateOrders(any(), any());
+    }
+
+    @Test
+    void fillsDaysBeforeDeployInChunks() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        LocalDate first = yesterday.minusDays(39);
+        //上线前的40天里只有最早10天有统计，其余都要补
+        when(dailyStatsMapper.firstActivityDate()).thenReturn(first);
+        when(dailyStatsMapper.countDays(first, yesterday)).thenReturn(10);
+        when(dailyStatsMapper.listByRange(any(), any())).thenAnswer(invocation -> {
+            List<DailyStats> rows = new ArrayList<>();
+            LocalDate begin = invocation.getArgument(0);
+            LocalDate end = invocation.getArgument(1);
+            assertThat(ChronoUnit.DAYS.between(begin, end) + 1).isLessThanOrEqualTo(DailyStatsBackfill.MAX_DAYS);
+            for (LocalDate date = begin; !date.isAfter(end) && date.isBefore(first.plusDays(10)); date = date.plusDays(1)) {
+                rows.add(DailyStats.builder().statDate(date).build());
+            }
+            return rows;
+        });
+
+        backfill.fillMissingDays();
+
+        verify(dailyStatsMapper, times(30)).aggregateOrders(any(), any());
+        verify(dailyStatsMapper, never()).aggregateOrders(eq(first.atStartOfDay()), any());
+        verify(dailyStatsMapper).aggregateOrders(eq(first.plusDays(10).atStartOfDay()), any());
+        verify(dailyStatsMapper).aggregateOrders(eq(yesterday.atStartOfDay()), any());
+        verify(salesRanking).rebuild(yesterday);
+
+        //都有统计之后只查一次天数
+        when(dailyStatsMapper.countDays(first, yesterday)).thenReturn(40);
+        backfill.fillMissingDays();
+        verify(dailyStatsMapper, times(30)).aggregateOrders(any(), any());
+        verify(dailyStatsMapper, times(2)).listByRange(any(), any());
+    }
+
+    @Test
+    void noActivityNeedsNoFill() {
+        backfill.fillMissingDays();
+
+        verify(dailyStatsMapper, never()).countDays(any(), any());
+        verify(dailyStatsMapper, never()).aggregateOrders(any(), any());
+    }
+
+    private static DailyStats statsOf(LocalDate date) {
+        return argThat(stats -> stats != null && date.equals(stats.getStatDate()));
+    }
+}
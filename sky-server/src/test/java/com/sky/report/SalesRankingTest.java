@@ -0,0 +1,204 @@
+package com.sky.report;
+
+import com.sky.dto.GoodsSalesDTO;
+import com.sky.entity.OrderDetail;
+import com.sky.mapper.OrderDetailMapper;
+import com.sky.support.EmbeddedRedis;
+import org.apache.ibatis.executor.result.DefaultResultContext;
+import org.apache.ibatis.session.ResultHandler;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class SalesRankingTest {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 10, 17);
+    private static final String DAY_KEY = "{sales_rank}:20261017";
+
+    private final StringRedisTemplate stringRedisTemplate = EmbeddedRedis.stringRedisTemplate();
+    private final OrderDetailMapper orderDetailMapper = mock(OrderDetailMapper.class);
+    private final SalesRanking salesRanking = new SalesRanking(stringRedisTemplate, orderDetailMapper);
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+    }
+
+    @Test
+    void rebuildReplacesDayAndLeavesNoTemporaryKeys() {
+        stringRedisTemplate.opsForZSet().add(DAY_KEY, "旧商品", 9);
+        streamSales(new GoodsSalesDTO("宫保鸡丁", 3), new GoodsSalesDTO("米饭", 5));
+
+        salesRanking.rebuild(DATE);
+
+        assertThat(salesRanking.top(DATE, DATE, 10))
+                .containsExactly(new GoodsSalesDTO("米饭", 5), new GoodsSalesDTO("宫保鸡丁", 3));
+        assertThat(stringRedisTemplate.getExpire(DAY_KEY)).isPositive();
+        //临时key改名走了，租约也释放了
+        assertThat(stringRedisTemplate.keys(DAY_KEY + ":*")).isEmpty();
+    }
+
+    @Test
+    void skipsWhileAnotherNodeRebuildsSameDay() {
+        stringRedisTemplate.opsForValue().set(DAY_KEY + ":rebuild_lease", "other", 1, TimeUnit.MINUTES);
+
+        salesRanking.rebuild(DATE);
+        verify(orderDetailMapper, never()).streamSales(any(), any(), any());
+
+        stringRedisTemplate.delete(DAY_KEY + ":rebuild_lease");
+        salesRanking.rebuild(DATE);
+        verify(orderDetailMapper).streamSales(any(), any(), any());
+    }
+
+    @Test
+    void concurrentRebuildsDoNotShareTemporaryKey() throws Exception {
+        CountDownLatch streaming = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            streaming.countDown();
+            proceed.await(5, TimeUnit.SECONDS);
+            ResultHandler<GoodsSalesDTO> handler = invocation.getArgument(2);
+            handler.handleResult(context(new GoodsSalesDTO("米饭", 5)));
+            return null;
+        }).when(orderDetailMapper).streamSales(any(), any(), any());
+        SalesRanking otherNode = new SalesRanking(stringRedisTemplate, orderDetailMapper);
+
+        CompletableFuture<Void> first = CompletableFuture.runAsync(() -> salesRanking.rebuild(DATE));
+        assertThat(streaming.await(5, TimeUnit.SECONDS)).isTrue();
+        //第一个还没写完，另一个节点拿不到租约直接跳过
+        otherNode.rebuild(DATE);
+        proceed.countDown();
+        first.get(5, TimeUnit.SECONDS);
+
+        verify(orderDetailMapper, times(1)).streamSales(any(), any(), any());
+        assertThat(salesRanking.top(DATE, DATE, 10)).containsExactly(new GoodsSalesDTO("米饭", 5));
+        assertThat(stringRedisTemplate.keys(DAY_KEY + ":*")).isEmpty();
+    }
+
+    @Test
+    void redisMatchesDatabaseWhenEveryDayIsComplete() {
+        //前一天按数据库重建，当天重建后又有订单完成，两天的销量在redis和数据库里一致
+        Map<LocalDate, List<GoodsSalesDTO>> table = new HashMap<>();
+        table.put(DATE.minusDays(1), Arrays.asList(new GoodsSalesDTO("米饭", 5), new GoodsSalesDTO("宫保鸡丁", 3)));
+        table.put(DATE, new ArrayList<>(Collections.singletonList(new GoodsSalesDTO("米饭", 1))));
+        streamSalesFrom(table);
+        salesRanking.rebuild(DATE.minusDays(1));
+        salesRanking.rebuild(DATE);
+        salesRanking.orderCompleted(DATE.atTime(19, 0), Arrays.asList(detail("宫保鸡丁", 4), detail("可乐", 2)));
+        table.get(DATE).addAll(Arrays.asList(new GoodsSalesDTO("宫保鸡丁", 4), new GoodsSalesDTO("可乐", 2)));
+
+        List<GoodsSalesDTO> fromRedis = salesRanking.top(DATE.minusDays(1), DATE, 10);
+        verify(orderDetailMapper, times(2)).streamSales(any(), any(), any());
+
+        SalesTopK fromDatabase = new SalesTopK(10);
+        orderDetailMapper.streamSales(DATE.minusDays(1).atStartOfDay(), DATE.plusDays(1).atStartOfDay(), fromDatabase);
+        assertThat(fromRedis).containsExactlyElementsOf(fromDatabase.result());
+        assertThat(fromRedis).containsExactly(
+                new GoodsSalesDTO("宫保鸡丁", 7), new GoodsSalesDTO("米饭", 6), new GoodsSalesDTO("可乐", 2));
+        //只取前两名时完整标记不占名次
+        assertThat(salesRanking.top(DATE.minusDays(1), DATE, 2)).hasSize(2);
+    }
+
+    @Test
+    void dayWithoutCompleteMarkFallsBackToDatabase() {
+        Map<LocalDate, List<GoodsSalesDTO>> table = new HashMap<>();
+        table.put(DATE.minusDays(1), Collections.singletonList(new GoodsSalesDTO("米饭", 8)));
+        table.put(DATE, Collections.singletonList(new GoodsSalesDTO("宫保鸡丁", 3)));
+        streamSalesFrom(table);
+        salesRanking.rebuild(DATE);
+        //上线前的一天：redis里只有上线后完成的那一单，不能当作这天的全部销量
+        salesRanking.orderCompleted(DATE.minusDays(1).atTime(20, 0), Collections.singletonList(detail("米饭", 1)));
+
+        assertThat(salesRanking.top(DATE.minusDays(1), DATE, 10))
+                .containsExactly(new GoodsSalesDTO("米饭", 8), new GoodsSalesDTO("宫保鸡丁", 3));
+        verify(orderDetailMapper).streamSales(eq(DATE.minusDays(1).atStartOfDay()), eq(DATE.plusDays(1).atStartOfDay()), any());
+        //没有合并结果留下，补算之后再查走redis
+        salesRanking.rebuild(DATE.minusDays(1));
+        assertThat(salesRanking.top(DATE.minusDays(1), DATE, 10))
+                .containsExactly(new GoodsSalesDTO("米饭", 8), new GoodsSalesDTO("宫保鸡丁", 3));
+        verify(orderDetailMapper, times(3)).streamSales(any(), any(), any());
+    }
+
+    @Test
+    void dayWithoutSalesIsStillComplete() {
+        streamSalesFrom(Collections.singletonMap(DATE, Collections.singletonList(new GoodsSalesDTO("米饭", 2))));
+        salesRanking.rebuild(DATE.minusDays(1));
+        salesRanking.rebuild(DATE);
+
+        assertThat(salesRanking.top(DATE.minusDays(1), DATE.minusDays(1), 10)).isEmpty();
+        assertThat(salesRanking.top(DATE.minusDays(1), DATE, 10)).containsExactly(new GoodsSalesDTO("米饭", 2));
+        verify(orderDetailMapper, times(2)).streamSales(any(), any(), any());
+    }
+
+    @Test
+    void todayIsCompleteFromMidnight() {
+        LocalDate today = LocalDate.now();
+        salesRanking.startToday();
+        salesRanking.orderCompleted(today.atTime(0, 5), Collections.singletonList(detail("米饭", 3)));
+        salesRanking.startToday();
+
+        assertThat(salesRanking.top(today, today, 10)).containsExactly(new GoodsSalesDTO("米饭", 3));
+        verify(orderDetailMapper, never()).streamSales(any(), any(), any());
+    }
+
+    /**
+     * 按下单日期存放的已完成订单销量，streamSales按[begin, end)把每天的销量按商品名称相加，和sql的group by一样
+     */
+    private void streamSalesFrom(Map<LocalDate, List<GoodsSalesDTO>> table) {
+        doAnswer(invocation -> {
+            LocalDateTime begin = invocation.getArgument(0);
+            LocalDateTime end = invocation.getArgument(1);
+            Map<String, Integer> sales = new LinkedHashMap<>();
+            table.forEach((date, rows) -> {
+                if (!date.atStartOfDay().isBefore(begin) && date.atStartOfDay().isBefore(end)) {
+                    rows.forEach(row -> sales.merge(row.getName(), row.getNumber(), Integer::sum));
+                }
+            });
+            ResultHandler<GoodsSalesDTO> handler = invocation.getArgument(2);
+            sales.forEach((name, number) -> handler.handleResult(context(new GoodsSalesDTO(name, number))));
+            return null;
+        }).when(orderDetailMapper).streamSales(any(), any(), any());
+    }
+
+    private static OrderDetail detail(String name, int number) {
+        return OrderDetail.builder().name(name).number(number).build();
+    }
+
+    private void streamSales(GoodsSalesDTO... rows) {
+        doAnswer(invocation -> {
+            ResultHandler<GoodsSalesDTO> handler = invocation.getArgument(2);
+            for (GoodsSalesDTO row : rows) {
+                handler.handleResult(context(row));
+            }
+            return null;
+        }).when(orderDetailMapper).streamSales(any(), any(), any());
+    }
+
+    private static DefaultResultContext<GoodsSalesDTO> context(GoodsSalesDTO row) {
+        DefaultResultContext<GoodsSalesDTO> context = new DefaultResultContext<>();
+        context.nextResultObject(row);
+        return context;
+    }
+}
@@ -0,0 +1,91 @@
+package com.sky.service.impl;
+
+import com.sky.entity.Dish;
+import com.sky.entity.DishFlavor;
+import com.sky.mapper.DishFlavorMapper;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealDishMapper;
+import com.sky.vo.DishVO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * 菜品口味批量加载：每次调用的sql条数固定，不随菜品数量增加
+ */
+@ExtendWith(MockitoExtension.class)
+class DishServiceImplTest {
+
+    @Mock
+    private DishMapper dishMapper;
+    @Mock
+    private DishFlavorMapper dishFlavorMapper;
+    @Mock
+    private SetmealDishMapper setmealDishMapper;
+    @InjectMocks
+    private DishServiceImpl dishService;
+
+    @Test
+    void listWithFlavorRunsTwoStatementsForWholeCategory() {
+        List<Dish> dishes = new ArrayList<>();
+        List<DishFlavor> flavors = new ArrayList<>();
+        for (long id = 1; id <= 40; id++) {
+            dishes.add(Dish.builder().id(id).categoryId(1L).name("dish" + id).build());
+            if (id % 2 == 0) {
+                flavors.add(DishFlavor.builder().dishId(id).name("辣度").value("[\"不辣\",\"微辣\"]").build());
+                flavors.add(DishFlavor.builder().dishId(id).name("忌口").value("[\"不要葱\"]").build());
+            }
+        }
+        when(dishMapper.list(any(Dish.class))).thenReturn(dishes);
+        when(dishFlavorMapper.getByDishIds(anyList())).thenReturn(flavors);
+
+        List<DishVO> dishVOList = dishService.listWithFlavor(Dish.builder().categoryId(1L).build());
+
+        assertThat(dishVOList).hasSize(40);
+        for (DishVO dishVO : dishVOList) {
+            assertThat(dishVO.getFlavors()).hasSize(dishVO.getId() % 2 == 0 ? 2 : 0)
+                    .allMatch(flavor -> flavor.getDishId().equals(dishVO.getId()));
+        }
+        //一条查菜品、一条查全部口味
+        verify(dishMapper, times(1)).list(any(Dish.class));
+        verify(dishFlavorMapper, times(1)).getByDishIds(anyList());
+        verifyNoMoreInteractions(dishMapper, dishFlavorMapper);
+    }
+
+    @Test
+    void queryByIdWithFlavorUsesBatchLoader() {
+        when(dishMapper.getById(7L)).thenReturn(Dish.builder().id(7L).name("dish7").build());
+        when(dishFlavorMapper.getByDishIds(Collections.singletonList(7L)))
+                .thenReturn(Collections.singletonList(DishFlavor.builder().dishId(7L).name("甜味").build()));
+
+        DishVO dishVO = dishService.queryByIdWithFlavor(7L);
+
+        assertThat(dishVO.getFlavors()).extracting(DishFlavor::getName).containsExactly("甜味");
+        verify(dishMapper, times(1)).getById(7L);
+        verify(dishFlavorMapper, times(1)).getByDishIds(Collections.singletonList(7L));
+        verifyNoMoreInteractions(dishMapper, dishFlavorMapper);
+    }
+
+    @Test
+    void emptyCategoryRunsNoFlavorQuery() {
+        when(dishMapper.list(any(Dish.class))).thenReturn(Collections.emptyList());
+
+        assertThat(dishService.listWithFlavor(new Dish())).isEmpty();
+        verifyNoInteractions(dishFlavorMapper);
+    }
+}
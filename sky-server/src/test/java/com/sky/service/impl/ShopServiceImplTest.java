@@ -0,0 +1,52 @@
+package com.sky.service.impl;
+
+import com.sky.constant.ShopConstant;
+import com.sky.support.EmbeddedRedis;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.RedisTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ShopServiceImplTest {
+
+    private final RedisTemplate redisTemplate = EmbeddedRedis.redisTemplate();
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+    }
+
+    @Test
+    void missingKeyIsSeededAsOpen() {
+        ShopServiceImpl shopService = new ShopServiceImpl(redisTemplate);
+        shopService.init();
+
+        assertThat(shopService.isOpen()).isTrue();
+        assertThat(redisTemplate.opsForValue().get(ShopConstant.STATUS_KEY)).isEqualTo(ShopConstant.OPEN);
+    }
+
+    @Test
+    void existingStatusIsKept() {
+        redisTemplate.opsForValue().set(ShopConstant.STATUS_KEY, ShopConstant.CLOSED);
+
+        ShopServiceImpl shopService = new ShopServiceImpl(redisTemplate);
+        shopService.init();
+
+        assertThat(shopService.isOpen()).isFalse();
+        assertThat(redisTemplate.opsForValue().get(ShopConstant.STATUS_KEY)).isEqualTo(ShopConstant.CLOSED);
+    }
+
+    @Test
+    void keyDeletedLaterFallsBackToOpen() {
+        ShopServiceImpl shopService = new ShopServiceImpl(redisTemplate);
+        shopService.init();
+        shopService.setStatus(ShopConstant.CLOSED);
+        assertThat(shopService.isOpen()).isFalse();
+
+        redisTemplate.delete(ShopConstant.STATUS_KEY);
+        shopService.reload();
+
+        assertThat(shopService.isOpen()).isTrue();
+    }
+}
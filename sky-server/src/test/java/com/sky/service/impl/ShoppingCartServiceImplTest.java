@@ -0,0 +1,267 @@
+package com.sky.service.impl;
+
+import com.sky.context.BaseContext;
+import com.sky.dto.ShoppingCartDTO;
+import com.sky.entity.Dish;
+import com.sky.entity.ShoppingCart;
+import com.sky.mapper.DishMapper;
+import com.sky.mapper.SetmealMapper;
+import com.sky.mapper.ShoppingCartMapper;
+import com.sky.service.ShopService;
+import com.sky.support.EmbeddedRedis;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.atMost;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ShoppingCartServiceImplTest {
+
+    private static final Long USER_ID = 7L;
+
+    private final DishMapper dishMapper = mock(DishMapper.class);
+    private final SetmealMapper setmealMapper = mock(SetmealMapper.class);
+    private final ShoppingCartMapper shoppingCartMapper = mock(ShoppingCartMapper.class);
+    private final ShopService shopService = mock(ShopService.class);
+    private final TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+    private ShoppingCartServiceImpl shoppingCartService;
+
+    @BeforeEach
+    void setUp() {
+        EmbeddedRedis.flushAll();
+        shoppingCartService = new ShoppingCartServiceImpl();
+        ReflectionTestUtils.setField(shoppingCartService, "stringRedisTemplate", EmbeddedRedis.stringRedisTemplate());
+        ReflectionTestUtils.setField(shoppingCartService, "dishMapper", dishMapper);
+        ReflectionTestUtils.setField(shoppingCartService, "setmealMapper", setmealMapper);
+        ReflectionTestUtils.setField(shoppingCartService, "shoppingCartMapper", shoppingCartMapper);
+        ReflectionTestUtils.setField(shoppingCartService, "shopService", shopService);
+        ReflectionTestUtils.setField(shoppingCartService, "transactionTemplate", transactionTemplate);
+        shoppingCartService.init();
+        when(shopService.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            invocation.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        when(dishMapper.getById(anyLong())).thenAnswer(invocation -> Dish.builder()
+                .id(invocation.getArgument(0)).name("水煮鱼").image("fish.png").price(new BigDecimal("58.00")).build());
+    }
+
+    @AfterEach
+    void tearDown() {
+        BaseContext.removeCurrentId();
+    }
+
+    @Test
+    void concurrentAddsOfOneItemAreCountedOnce() throws Exception {
+        int threads = 16;
+        int clicks = 50;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                BaseContext.setCurrentId(USER_ID);
+                start.await();
+                for (int i = 0; i < clicks; i++) {
+                    shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        List<ShoppingCart> cart = shoppingCartService.listByUserId(USER_ID);
+        assertThat(cart).hasSize(1);
+        assertThat(cart.get(0).getNumber()).isEqualTo(threads * clicks);
+        assertThat(cart.get(0).getAmount()).isEqualByComparingTo("58.00");
+        //只有第一次加购时查数据库
+        verify(dishMapper, atMost(threads)).getById(1L);
+    }
+
+    @Test
+    void flushWritesEachDirtyCartOnce() {
+        BaseContext.setCurrentId(USER_ID);
+        for (int i = 0; i < 3; i++) {
+            shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+        }
+        shoppingCartService.addShoppingCart(dishItem(2L, null));
+
+        shoppingCartService.flushDirtyCarts();
+
+        //多次加购合并成一次先删后插
+        verify(shoppingCartMapper).deleteByUserIds(Collections.singletonList(USER_ID));
+        ArgumentCaptor<List<ShoppingCart>> rows = ArgumentCaptor.forClass(List.class);
+        verify(shoppingCartMapper).insertBatch(rows.capture());
+        assertThat(rows.getValue()).extracting(ShoppingCart::getUserId, ShoppingCart::getDishId, ShoppingCart::getNumber)
+                .containsExactlyInAnyOrder(
+                        tuple(USER_ID, 1L, 3),
+                        tuple(USER_ID, 2L, 1));
+
+        //没有新的修改时不访问数据库
+        shoppingCartService.flushDirtyCarts();
+        verify(shoppingCartMapper, times(1)).deleteByUserIds(anyList());
+
+        //清空购物车后写回只删除
+        shoppingCartService.clean(USER_ID);
+        shoppingCartService.flushDirtyCarts();
+        verify(shoppingCartMapper, times(2)).deleteByUserIds(Collections.singletonList(USER_ID));
+        verify(shoppingCartMapper, times(1)).insertBatch(anyList());
+    }
+
+    @Test
+    void reloadsCartFromTableAfterRedisLoss() {
+        when(shoppingCartMapper.listByUserId(USER_ID))
+                .thenReturn(Arrays.asList(row(100L, 1L, "微辣", 5), row(101L, 2L, null, 2)));
+        BaseContext.setCurrentId(USER_ID);
+
+        //redis重启，购物车只剩数据库里的
+        EmbeddedRedis.flushAll();
+        assertThat(shoppingCartService.listByUserId(USER_ID))
+                .extracting(ShoppingCart::getDishId, ShoppingCart::getNumber)
+                .containsExactlyInAnyOrder(
+                        tuple(1L, 5),
+                        tuple(2L, 2));
+
+        //再加购在加载出来的数量上+1，不查菜品
+        EmbeddedRedis.flushAll();
+        shoppingCartService.addShoppingCart(dishItem(2L, null));
+        assertThat(shoppingCartService.listByUserId(USER_ID))
+                .extracting(ShoppingCart::getDishId, ShoppingCart::getNumber)
+                .containsExactlyInAnyOrder(
+                        tuple(1L, 5),
+                        tuple(2L, 3));
+        verify(dishMapper, never()).getById(anyLong());
+        verify(shoppingCartMapper, times(2)).listByUserId(USER_ID);
+    }
+
+    @Test
+    void emptyCartIsLoadedFromTableOnlyOnce() {
+        BaseContext.setCurrentId(USER_ID);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(shoppingCartService.showShoppingCart()).isEmpty();
+        }
+
+        verify(shoppingCartMapper, times(1)).listByUserId(USER_ID);
+    }
+
+    @Test
+    void failedFlushIsRetried() {
+        BaseContext.setCurrentId(USER_ID);
+        shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+        doThrow(new IllegalStateException("数据库不可用")).doNothing()
+                .when(shoppingCartMapper).deleteByUserIds(anyList());
+
+        shoppingCartService.flushDirtyCarts();
+        shoppingCartService.flushDirtyCarts();
+
+        verify(shoppingCartMapper, times(2)).deleteByUserIds(Collections.singletonList(USER_ID));
+        verify(shoppingCartMapper, times(1)).insertBatch(anyList());
+    }
+
+    @Test
+    void evictedDirtyCartKeepsTableRows() {
+        BaseContext.setCurrentId(USER_ID);
+        shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+        //写回之前redis里的购物车被淘汰，表里的数据不能删
+        EmbeddedRedis.stringRedisTemplate().delete("cart:" + USER_ID);
+
+        shoppingCartService.flushDirtyCarts();
+
+        verify(shoppingCartMapper, never()).deleteByUserIds(anyList());
+        verify(shoppingCartMapper, never()).insertBatch(anyList());
+    }
+
+    @Test
+    void checkoutTakesCartOnlyOnce() {
+        BaseContext.setCurrentId(USER_ID);
+        shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+        shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+
+        assertThat(shoppingCartService.checkout(USER_ID, "1001"))
+                .extracting(ShoppingCart::getDishId, ShoppingCart::getNumber)
+                .containsExactly(tuple(1L, 2));
+        //订单还没写库，再次提交拿到的是空购物车，不会重复下单
+        assertThat(shoppingCartService.checkout(USER_ID, "1002")).isEmpty();
+        assertThat(shoppingCartService.showShoppingCart()).isEmpty();
+
+        //订单写库成功，取走的那份删掉，写回时表里也清空
+        shoppingCartService.completeCheckout(USER_ID, "1001");
+        assertThat(EmbeddedRedis.stringRedisTemplate().hasKey("cart:" + USER_ID + ":order:1001")).isFalse();
+        shoppingCartService.flushDirtyCarts();
+        verify(shoppingCartMapper).deleteByUserIds(Collections.singletonList(USER_ID));
+        verify(shoppingCartMapper, never()).insertBatch(anyList());
+    }
+
+    @Test
+    void failedOrderPutsItemsBack() {
+        when(shoppingCartMapper.listByUserId(USER_ID)).thenReturn(Collections.singletonList(row(100L, 1L, "微辣", 5)));
+        BaseContext.setCurrentId(USER_ID);
+
+        //购物车还没加载过，下单时先从表里加载再取走
+        assertThat(shoppingCartService.checkout(USER_ID, "1001"))
+                .extracting(ShoppingCart::getDishId, ShoppingCart::getNumber)
+                .containsExactly(tuple(1L, 5));
+        //订单写库期间又加购了
+        shoppingCartService.addShoppingCart(dishItem(1L, "微辣"));
+        shoppingCartService.addShoppingCart(dishItem(2L, null));
+
+        shoppingCartService.restoreCheckout(USER_ID, "1001");
+        assertThat(shoppingCartService.showShoppingCart())
+                .extracting(ShoppingCart::getDishId, ShoppingCart::getNumber)
+                .containsExactlyInAnyOrder(
+                        tuple(1L, 6),
+                        tuple(2L, 1));
+        //放回过一次，重复放回不会再加数量
+        shoppingCartService.restoreCheckout(USER_ID, "1001");
+        assertThat(shoppingCartService.showShoppingCart())
+                .extracting(ShoppingCart::getNumber)
+                .containsExactlyInAnyOrder(6, 1);
+        verify(shoppingCartMapper, times(1)).listByUserId(USER_ID);
+    }
+
+    private static ShoppingCartDTO dishItem(Long dishId, String flavor) {
+        ShoppingCartDTO shoppingCartDTO = new ShoppingCartDTO();
+        shoppingCartDTO.setDishId(dishId);
+        shoppingCartDTO.setDishFlavor(flavor);
+        return shoppingCartDTO;
+    }
+
+    private static ShoppingCart row(Long id, Long dishId, String flavor, int number) {
+        return ShoppingCart.builder().id(id).userId(USER_ID).dishId(dishId).dishFlavor(flavor)
+                .name("菜品" + dishId).amount(new BigDecimal("20.00")).number(number)
+                .createTime(LocalDateTime.now().minusDays(1)).build();
+    }
+}
@@ -0,0 +1,83 @@
+package com.sky.support;
+
+import com.sky.cache.CacheValueSerializer;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+
+/**
+ * 测试用的本地redis，整个测试进程只启动一次，退出时关闭
+ * 模板的序列化方式和RedisConfiguration一致
+ */
+public final class EmbeddedRedis {
+
+    private static RedisServer server;
+    private static LettuceConnectionFactory connectionFactory;
+
+    private EmbeddedRedis() {
+    }
+
+    public static synchronized LettuceConnectionFactory connectionFactory() {
+        if (connectionFactory == null) {
+            int port = freePort();
+            server = RedisServer.builder().port(port).setting("bind 127.0.0.1").build();
+            server.start();
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration("127.0.0.1", port));
+            connectionFactory.afterPropertiesSet();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                connectionFactory.destroy();
+                server.stop();
+            }));
+        }
+        return connectionFactory;
+    }
+
+    public static RedisTemplate redisTemplate() {
+        CacheValueSerializer serializer = new CacheValueSerializer(CacheValueSerializer.FORMAT_JSON, 1024);
+        RedisTemplate redisTemplate = new RedisTemplate();
+        redisTemplate.setConnectionFactory(connectionFactory());
+        redisTemplate.setKeySerializer(new StringRedisSerializer());
+        redisTemplate.setHashKeySerializer(new StringRedisSerializer());
+        redisTemplate.setValueSerializer(serializer);
+        redisTemplate.setHashValueSerializer(serializer);
+        redisTemplate.afterPropertiesSet();
+        return redisTemplate;
+    }
+
+    public static StringRedisTemplate stringRedisTemplate() {
+        return new StringRedisTemplate(connectionFactory());
+    }
+
+    /**
+     * 订阅频道，相当于一个节点的RedisMessageListenerContainer，用完调用stop
+     */
+    public static RedisMessageListenerContainer subscribe(String channel, MessageListener listener) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory());
+        container.addMessageListener(listener, new ChannelTopic(channel));
+        container.afterPropertiesSet();
+        container.start();
+        return container;
+    }
+
+    public static void flushAll() {
+        connectionFactory().getConnection().serverCommands().flushAll();
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}